@@ -0,0 +1,19 @@
+package api.register.application;
+
+import api.register.domain.User;
+import lombok.*;
+
+@Data
+@ToString
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserBulkResult
+{
+    public enum Status { CREATED, INVALID, DUPLICATE, FAILED }
+
+    private long index;
+    private Status status;
+    private User user;
+    private String message;
+}
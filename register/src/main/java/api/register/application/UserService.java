@@ -1,24 +1,77 @@
 package api.register.application;
 
+import api.register.application.cache.UserLocalCache;
+import api.register.application.cache.UserRedisCache;
+import api.register.application.imei.ImeiAllocator;
+import api.register.application.limit.AdaptiveConcurrencyLimiter;
+import api.register.application.limit.ConcurrencyLimitExceededException;
+import api.register.application.metrics.StageMetrics;
+import api.register.application.outbox.UserOutbox;
+import api.register.application.queue.PendingWrite;
+import api.register.application.queue.PendingWriteQueue;
+import api.register.application.queue.WriteQueuedException;
 import api.register.config.CircuitResilienceListener;
+import api.register.config.logging.LogSafe;
 import api.register.domain.User;
+import api.register.domain.UserEvent;
 import api.register.domain.UserRepository;
-import api.register.presentation.mapper.UserMapper;
+import api.register.domain.UserSearch;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.bulk.BulkWriteError;
+import io.github.resilience4j.bulkhead.annotation.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker.State;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
 import io.github.resilience4j.timelimiter.annotation.TimeLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
-import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+import reactor.util.retry.Retry;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.time.Duration;
 import java.time.LocalDate;
-import java.util.Random;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -33,89 +86,730 @@ public class UserService {
     private CircuitResilienceListener circuitResilienceListener;
     @Autowired
     private TimeLimiterRegistry timeLimiterRegistry;
+
+    @Autowired
+    private UserLocalCache userLocalCache;
+    @Autowired
+    private UserRedisCache userRedisCache;
+    @Autowired
+    private Validator validator;
     @Autowired
-    private UserMapper userMapper;
+    private ImeiAllocator imeiAllocator;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    // Limite adaptativo para las operaciones puntuales en Mongo; los recorridos largos (findAll, export, bulk)
+    // quedan acotados por sus bulkheads, ya que su duracion no refleja congestion
+    @Autowired
+    @Qualifier("mongoLimiter")
+    private AdaptiveConcurrencyLimiter mongoLimiter;
+    @Autowired
+    private StageMetrics stageMetrics;
+    // Outbox de eventos de usuario; solo con user.outbox.enabled (requiere transacciones, es decir replica set)
+    @Autowired(required = false)
+    private UserOutbox userOutbox;
+
+    @Value("${cache.batch-size:500}")
+    private int cacheBatchSize;
+    @Value("${user.bulk.batch-size:500}")
+    private int bulkBatchSize;
+    @Value("${user.write-queue.replay-interval:30s}")
+    private Duration replayInterval;
+    @Value("${user.imei.collision-retries:3}")
+    private int imeiCollisionRetries;
 
     @Autowired
-    private ReactiveHashOperations<String, String, User> hashOperations;
+    private PendingWriteQueue pendingWriteQueue;
+    @Autowired
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+    private Disposable replaySubscription;
+
+    // Reconstruccion de findAll en curso en este nodo; las llamadas concurrentes esperan su resultado
+    private final AtomicReference<Sinks.One<Boolean>> rebuildInFlight = new AtomicReference<>();
 
-    @CircuitBreaker(name = "userCircuit", fallbackMethod = "fallbackGetAllUsers")
-    @TimeLimiter(name = "userTimeLimiter")
+    // Campos que admite PATCH; imei, fecha de registro y version los gestiona el servicio
+    public static final Set<String> PATCHABLE_FIELDS =
+            Set.of("identityDni", "firstName", "lastName", "address", "phone", "email");
+    // Campos que se pueden pedir con fields= en las lecturas proyectadas
+    public static final Set<String> PROJECTABLE_FIELDS = Set.of("id", "identityDni", "firstName", "lastName",
+            "address", "phone", "email", "imei", "dateRegister", "version");
+
+    @CircuitBreaker(name = "userList", fallbackMethod = "fallbackFindAll")
+    @Bulkhead(name = "userList")
+    @TimeLimiter(name = "userList")
     public Flux<User> findAll(){
         log.debug("findAll executed");
 
-        // Intenta obtener todos los usuarios desde el caché de Redis
-        Flux<User> cachedUsers = hashOperations.values("UserRedis")
-                .flatMap(user -> Mono.justOrEmpty((User) user));
+        // Redis solo se usa cuando el hash tiene la marca de snapshot completo; si no, se reconstruye desde Mongo
+        return userRedisCache.isSnapshotComplete()
+                .doOnNext(complete -> stageMetrics.cacheResult(StageMetrics.REDIS, "findAll", complete))
+                .flatMapMany(complete -> complete ? userRedisCache.scanAll() : rebuildCache());
+    }
+
+    // Emite los usuarios de Mongo mientras los guarda por lotes (un HSET por lote) y marca el snapshot al terminar.
+    // Solo una reconstruccion por nodo: el resto espera a que termine y lee de Redis.
+    private Flux<User> rebuildCache() {
+        return Flux.defer(() -> {
+            Sinks.One<Boolean> rebuild = Sinks.one();
+            Sinks.One<Boolean> running = rebuildInFlight.compareAndExchange(null, rebuild);
+            if (running != null) {
+                meterRegistry.counter("user.cache.coalesced", "operation", "findAll").increment();
+                return running.asMono()
+                        .flatMapMany(complete -> complete ? userRedisCache.scanAll() : mongoStream("findAll", userRepository.findAll()));
+            }
+            return userRedisCache.beginSnapshot()
+                    .flatMapMany(version -> mongoStream("findAll", userRepository.findAll())
+                            .buffer(cacheBatchSize)
+                            .concatMap(users -> userRedisCache.putAll(users).thenMany(Flux.fromIterable(users)))
+                            .concatWith(Mono.defer(() -> userRedisCache.completeSnapshot(version))
+                                    .doOnNext(complete -> finishRebuild(rebuild, complete))
+                                    .then(Mono.empty())))
+                    // Si la reconstruccion falla o se cancela, los que esperaban leen directamente de Mongo
+                    .doFinally(signal -> finishRebuild(rebuild, false));
+        });
+    }
+
+    private void finishRebuild(Sinks.One<Boolean> rebuild, boolean complete) {
+        rebuildInFlight.compareAndSet(rebuild, null);
+        rebuild.tryEmitValue(complete);
+    }
+
+    // Sin TimeLimiter: la exportacion es de larga duracion y su ritmo lo marca el cliente
+    @Bulkhead(name = "userExport")
+    public Flux<User> export(){
+        log.debug("export executed");
+        return mongoStream("streamAll", userRepository.streamAll());
+    }
 
-        // Si hay datos en la caché de Redis, retornarlos
-        return cachedUsers.switchIfEmpty(userRepository.findAll()
-                .flatMap(user -> {
-                    // Almacena cada usuario en la caché de Redis
-                    return hashOperations.put("UserRedis", user.getId(), user)
-                            .thenReturn(user);
-                }));
+    @CircuitBreaker(name = "userList")
+    @Bulkhead(name = "userList")
+    @TimeLimiter(name = "userList")
+    public Flux<User> findPage(String after, int size){
+        log.debug("findPage executed {}:{}", LogSafe.value(after), size);
+        PageRequest page = PageRequest.of(0, size);
+        return after == null
+                ? mongoStream("findAllByOrderByIdAsc", userRepository.findAllByOrderByIdAsc(page))
+                : mongoStream("findByIdGreaterThanOrderByIdAsc", userRepository.findByIdGreaterThanOrderByIdAsc(after, page));
     }
 
-    @CircuitBreaker(name = "userCircuit", fallbackMethod = "fallbackFindById")
-    @TimeLimiter(name = "userTimeLimiter")
+    @CircuitBreaker(name = "userRead", fallbackMethod = "fallbackFindById")
+    @Bulkhead(name = "userRead")
+    @TimeLimiter(name = "userRead")
     public Mono<User> findById(String userId)
     {
-        log.debug("findById executed {}" , userId);
-        return  hashOperations.get("UserRedis",userId)
-                .switchIfEmpty(userRepository.findById(userId)
-                        .flatMap(user -> hashOperations.put("UserRedis",user.getId(),user)
-                                .thenReturn(user)));
+        log.debug("findById executed {}", LogSafe.value(userId));
+        // Primero el cache local (L1), sin salto de red; los fallos concurrentes comparten una sola carga
+        return userLocalCache.get(userId, id -> userRedisCache.get(id)
+                .doOnSuccess(cached -> stageMetrics.cacheResult(StageMetrics.REDIS, "findById", cached != null))
+                .switchIfEmpty(Mono.defer(() -> mongo("findById", userRepository.findById(id))
+                        .flatMap(user -> userRedisCache.put(user)
+                                .thenReturn(user)))));
     }
 
-    @CircuitBreaker(name = "userCircuit", fallbackMethod = "fallbackGetAllItems")
-    @TimeLimiter(name = "userTimeLimiter")
+    @CircuitBreaker(name = "userRead", fallbackMethod = "fallbackFindByIdentityDni")
+    @Bulkhead(name = "userRead")
+    @TimeLimiter(name = "userRead")
     public Mono<User> findByIdentityDni(String identityDni){
-        log.debug("findByIdentityDni executed {}" , identityDni);
-        return userRepository.findByIdentityDni(identityDni);
+        log.debug("findByIdentityDni executed {}", LogSafe.dni(identityDni));
+        // Indice DNI -> id en Redis; ante un fallo se consulta Mongo y se guarda el resultado (positivo o negativo)
+        // Un DNI marcado como inexistente tambien es un acierto: no se consulta Mongo
+        return userRedisCache.findByDni(identityDni)
+                .doOnSuccess(cached -> stageMetrics.cacheResult(StageMetrics.REDIS, "findByIdentityDni", cached != null))
+                .switchIfEmpty(Mono.defer(() -> mongo("findByIdentityDni", userRepository.findByIdentityDni(identityDni))
+                        .flatMap(user -> userRedisCache.put(user)
+                                .thenReturn(Optional.of(user)))
+                        .switchIfEmpty(Mono.defer(() -> userRedisCache.markMissingDni(identityDni)
+                                .thenReturn(Optional.empty())))))
+                .flatMap(Mono::justOrEmpty);
+    }
+
+    // Consulta por lote: cache local, un HMGET para el resto, un $in en Mongo para los fallos y un HSET para
+    // reponerlos en Redis. Los resultados salen en el orden pedido; los ids inexistentes se omiten
+    @CircuitBreaker(name = "userRead")
+    @Bulkhead(name = "userRead")
+    @TimeLimiter(name = "userRead")
+    public Flux<User> findAllById(List<String> userIds){
+        log.debug("findAllById executed {}", userIds.size());
+        // Estado por suscripcion
+        return Flux.defer(() -> {
+            List<String> ids = userIds.stream().distinct().collect(Collectors.toList());
+            Map<String, User> found = new HashMap<>();
+            List<String> remote = new ArrayList<>();
+            for (String id : ids) {
+                User cached = userLocalCache.get(id);
+                if (cached != null) {
+                    found.put(id, cached);
+                } else {
+                    remote.add(id);
+                }
+            }
+            stageMetrics.cacheResult(StageMetrics.LOCAL, "findAllById", found.size(), remote.size());
+            Mono<Void> load = remote.isEmpty() ? Mono.empty() : userRedisCache.getAll(remote)
+                    .flatMap(cached -> {
+                        List<String> misses = new ArrayList<>();
+                        for (int i = 0; i < remote.size(); i++) {
+                            if (cached.get(i) != null) {
+                                found.put(remote.get(i), cached.get(i));
+                            } else {
+                                misses.add(remote.get(i));
+                            }
+                        }
+                        stageMetrics.cacheResult(StageMetrics.REDIS, "findAllById",
+                                remote.size() - misses.size(), misses.size());
+                        return misses.isEmpty() ? Mono.empty() : mongo("findAllById", userRepository.findAllById(misses))
+                                .doOnNext(user -> found.put(user.getId(), user))
+                                .collectList()
+                                .flatMap(userRedisCache::putAll);
+                    });
+            return load.thenMany(Flux.defer(() -> Flux.fromIterable(ids)
+                    .filter(found::containsKey)
+                    .map(found::get)));
+        });
+    }
+
+    @CircuitBreaker(name = "userRead")
+    @Bulkhead(name = "userRead")
+    @TimeLimiter(name = "userRead")
+    public Flux<User> findAllByIdentityDni(List<String> identityDnis){
+        log.debug("findAllByIdentityDni executed {}", identityDnis.size());
+        // Estado por suscripcion
+        return Flux.defer(() -> {
+            List<String> dnis = identityDnis.stream().distinct().collect(Collectors.toList());
+            Map<String, User> found = new HashMap<>();
+            Mono<Void> load = userRedisCache.findAllByDni(dnis)
+                    .flatMap(cached -> {
+                        List<String> misses = new ArrayList<>();
+                        for (int i = 0; i < dnis.size(); i++) {
+                            Optional<User> entry = cached.get(i);
+                            if (entry == null) {
+                                misses.add(dnis.get(i));
+                            } else {
+                                // Optional vacio: DNI marcado como inexistente, no se consulta Mongo
+                                entry.ifPresent(user -> found.put(user.getIdentityDni(), user));
+                            }
+                        }
+                        stageMetrics.cacheResult(StageMetrics.REDIS, "findAllByIdentityDni",
+                                dnis.size() - misses.size(), misses.size());
+                        return misses.isEmpty() ? Mono.empty() : mongo("findByIdentityDniIn",
+                                        userRepository.findByIdentityDniIn(misses))
+                                .doOnNext(user -> found.put(user.getIdentityDni(), user))
+                                .collectList()
+                                .flatMap(userRedisCache::putAll);
+                    });
+            return load.thenMany(Flux.defer(() -> Flux.fromIterable(dnis)
+                    .filter(found::containsKey)
+                    .map(found::get)));
+        });
+    }
+
+    // Busqueda por atributos para el back office; cada forma de consulta tiene su indice (ver User y SearchIndexCheck)
+    @CircuitBreaker(name = "userList")
+    @Bulkhead(name = "userList")
+    @TimeLimiter(name = "userList")
+    public Flux<User> search(UserSearch search, int size){
+        log.debug("search executed {}:{}", search, size);
+        return mongoStream("search", userRepository.search(search, size));
+    }
+
+    // Lecturas proyectadas: Mongo devuelve solo los campos pedidos y no se construyen User ni UserModel.
+    // No pasan por Redis, cuyas entradas guardan el usuario completo.
+    @CircuitBreaker(name = "userList")
+    @Bulkhead(name = "userList")
+    @TimeLimiter(name = "userList")
+    public Flux<Map<String, Object>> findAllFields(Set<String> fields){
+        log.debug("findAllFields executed {}", fields);
+        return mongoStream("streamFields", userRepository.streamFields(fields));
+    }
+
+    @CircuitBreaker(name = "userRead")
+    @Bulkhead(name = "userRead")
+    @TimeLimiter(name = "userRead")
+    public Mono<Map<String, Object>> findByIdFields(String userId, Set<String> fields){
+        log.debug("findByIdFields executed {}:{}", LogSafe.value(userId), fields);
+        // Si el usuario ya esta en el cache local se proyecta desde memoria sin salto de red
+        User cached = userLocalCache.get(userId);
+        stageMetrics.cacheResult(StageMetrics.LOCAL, "findByIdFields", cached != null);
+        return cached != null
+                ? Mono.just(projectFields(cached, fields))
+                : mongo("findFieldsBy", userRepository.findFieldsBy("id", userId, fields));
+    }
+
+    @CircuitBreaker(name = "userRead")
+    @Bulkhead(name = "userRead")
+    @TimeLimiter(name = "userRead")
+    public Mono<Map<String, Object>> findByIdentityDniFields(String identityDni, Set<String> fields){
+        log.debug("findByIdentityDniFields executed {}:{}", LogSafe.dni(identityDni), fields);
+        return mongo("findFieldsBy", userRepository.findFieldsBy("identityDni", identityDni, fields));
     }
 
-    @CircuitBreaker(name = "userCircuit", fallbackMethod = "fallbackFindByIdentityDni")
-    @TimeLimiter(name = "userTimeLimiter")
+    // Llamada puntual a Mongo: pasa por el limite adaptativo y se mide como etapa "mongo"
+    private <T> Mono<T> mongo(String operation, Mono<T> call) {
+        return stageMetrics.mono(StageMetrics.MONGO, operation, mongoLimiter.mono(call));
+    }
+
+    private <T> Flux<T> mongo(String operation, Flux<T> call) {
+        return stageMetrics.flux(StageMetrics.MONGO, operation, mongoLimiter.flux(call));
+    }
+
+    // Con el outbox activo, la escritura en users y el evento que registra se confirman en una misma transaccion
+    private <T> Mono<T> atomically(Mono<T> write) {
+        return userOutbox == null ? write : userOutbox.atomically(write);
+    }
+
+    private Mono<Void> recordEvent(UserEvent.Type type, User user) {
+        return userOutbox == null ? Mono.empty() : userOutbox.record(type, user);
+    }
+
+    private Mono<Void> recordEvents(UserEvent.Type type, List<User> users) {
+        return userOutbox == null ? Mono.empty() : userOutbox.recordAll(type, users);
+    }
+
+    // Recorridos largos: sin limite adaptativo (los acota su bulkhead), solo se miden
+    private <T> Flux<T> mongoStream(String operation, Flux<T> call) {
+        return stageMetrics.flux(StageMetrics.MONGO, operation, call);
+    }
+
+    private Map<String, Object> projectFields(User user, Set<String> fields) {
+        BeanWrapper source = PropertyAccessorFactory.forBeanPropertyAccess(user);
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (String field : fields) {
+            values.put(field, source.getPropertyValue(field));
+        }
+        return values;
+    }
+
+    @CircuitBreaker(name = "userWrite", fallbackMethod = "fallbackCreate")
+    @Bulkhead(name = "userWrite")
+    @TimeLimiter(name = "userWrite")
     public Mono<User> create(User user){
-        log.debug("create executed {}",user);
-        String randomIMEI = generateRandomIMEI();
-        user.setImei(randomIMEI);
-        user.setDateRegister(LocalDate.now());
-        return userRepository.save(user);
-    }
-
-    @CircuitBreaker(name = "userCircuit", fallbackMethod = "fallbackCreateUser")
-    @TimeLimiter(name = "userTimeLimiter")
-    private String generateRandomIMEI() {
-        Random random = new Random();
-        StringBuilder imei = new StringBuilder("35");
-        for (int i = 0; i < 13; i++) {
-            imei.append(random.nextInt(10));
+        log.debug("create executed {}", LogSafe.user(user));
+        // Cada reintento por colision de IMEI pide un numero nuevo
+        return Mono.defer(imeiAllocator::allocate)
+                .flatMap(imei -> {
+                    user.setImei(imei);
+                    user.setDateRegister(LocalDate.now());
+                    // La reserva de IMEI queda fuera de la transaccion: revertirla repetiria numeros ya entregados
+                    return atomically(Mono.defer(() -> {
+                                // Cada intento es un alta nueva: sin el id ni la version del cuerpo o del intento
+                                // abortado (save asigna ambos), que harian de la insercion una actualizacion
+                                user.setId(null);
+                                user.setVersion(null);
+                                return mongo("save", userRepository.save(user));
+                            })
+                            .flatMap(saved -> recordEvent(UserEvent.Type.CREATED, saved).thenReturn(saved)));
+                })
+                // IMEI ya emitido (antes del contador se asignaban al azar): se repite el alta con el siguiente numero
+                .retryWhen(Retry.max(imeiCollisionRetries)
+                        .filter(UserService::isImeiCollision)
+                        .doBeforeRetry(signal -> meterRegistry.counter("user.imei.collisions").increment())
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+                .flatMap(saved -> userRedisCache.put(saved).thenReturn(saved));
+    }
+
+    // Sin TimeLimiter: el tiempo total depende del tamaño del lote enviado por el cliente
+    @CircuitBreaker(name = "userBulk")
+    @Bulkhead(name = "userBulk")
+    public Flux<UserBulkResult> createAll(Flux<User> users){
+        log.debug("createAll executed");
+        return users.index()
+                .buffer(bulkBatchSize)
+                .concatMap(this::insertBatch);
+    }
+
+    private Flux<UserBulkResult> insertBatch(List<Tuple2<Long, User>> batch) {
+        UserBulkResult[] results = new UserBulkResult[batch.size()];
+        List<User> valid = new ArrayList<>(batch.size());
+        List<Integer> positions = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            User user = batch.get(i).getT2();
+            Set<ConstraintViolation<User>> violations = validator.validate(user);
+            if (!violations.isEmpty()) {
+                results[i] = bulkResult(batch.get(i), UserBulkResult.Status.INVALID, violations.stream()
+                        .map(v -> v.getPropertyPath() + " " + v.getMessage())
+                        .collect(Collectors.joining(", ")));
+                continue;
+            }
+            user.setId(null);
+            user.setVersion(null);
+            user.setDateRegister(LocalDate.now());
+            valid.add(user);
+            positions.add(i);
         }
-        return imei.toString();
+        // Con el outbox, las altas y sus eventos se confirman juntos; sin el no hay eventos que escribir
+        return (userOutbox == null ? insertWithImeis(valid, 0) : insertAtomically(valid))
+                .flatMap(errors -> {
+                    List<User> inserted = new ArrayList<>(valid.size());
+                    for (int j = 0; j < valid.size(); j++) {
+                        int i = positions.get(j);
+                        BulkWriteError error = errors.get(j);
+                        if (error == null) {
+                            results[i] = bulkResult(batch.get(i), UserBulkResult.Status.CREATED, null);
+                            inserted.add(valid.get(j));
+                        } else if (ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY) {
+                            results[i] = bulkResult(batch.get(i), UserBulkResult.Status.DUPLICATE, error.getMessage());
+                        } else {
+                            results[i] = bulkResult(batch.get(i), UserBulkResult.Status.FAILED, error.getMessage());
+                        }
+                    }
+                    // Un solo HSET con todos los usuarios insertados del lote
+                    return userRedisCache.putAll(inserted).thenReturn(true);
+                })
+                .onErrorResume(e -> {
+                    log.error("bulk insert failed: {}", e.getMessage());
+                    for (int i : positions) {
+                        if (results[i] == null) {
+                            results[i] = bulkResult(batch.get(i), UserBulkResult.Status.FAILED, e.getMessage());
+                        }
+                    }
+                    return Mono.just(false);
+                })
+                // Diferido: fromArray de un solo elemento lo lee al ensamblar, antes de que haya resultado
+                .thenMany(Flux.defer(() -> Flux.fromArray(results)));
     }
 
-    @CircuitBreaker(name = "userCircuit", fallbackMethod = "fallbackUpdateUser")
-    @TimeLimiter(name = "userTimeLimiter")
-    public Mono<User> update(String userId, User user){
-        log.debug("update executed {}:{}", userId, user);
-        return userRepository.findById(userId)
-                .flatMap(dbUser -> {
-                    user.setImei(dbUser.getImei());
-                    user.setDateRegister(dbUser.getDateRegister());
-                    userMapper.update(dbUser, user);
-                    return userRepository.save(dbUser);
+    // Asigna IMEI e inserta; los usuarios cuyo IMEI ya existia se reintentan con numeros nuevos, hasta
+    // imeiCollisionRetries veces. Los errores quedan indexados por la posicion en users
+    private Mono<Map<Integer, BulkWriteError>> insertWithImeis(List<User> users, int attempt) {
+        return Flux.fromIterable(users)
+                .concatMap(user -> imeiAllocator.allocate().doOnNext(user::setImei))
+                .then(Mono.defer(() -> stageMetrics.mono(StageMetrics.MONGO, "insertUnordered",
+                        userRepository.insertUnordered(users))))
+                .flatMap(errors -> {
+                    List<Integer> collisions = errors.entrySet().stream()
+                            .filter(error -> isImeiDuplicate(error.getValue().getMessage()))
+                            .map(Map.Entry::getKey)
+                            .sorted()
+                            .collect(Collectors.toList());
+                    if (collisions.isEmpty() || attempt >= imeiCollisionRetries) {
+                        return Mono.just(errors);
+                    }
+                    meterRegistry.counter("user.imei.collisions").increment(collisions.size());
+                    return insertWithImeis(collisions.stream().map(users::get).collect(Collectors.toList()), attempt + 1)
+                            .map(retryErrors -> {
+                                Map<Integer, BulkWriteError> merged = new HashMap<>(errors);
+                                collisions.forEach(merged::remove);
+                                retryErrors.forEach((j, error) -> merged.put(collisions.get(j), error));
+                                return merged;
+                            });
                 });
     }
 
-    @CircuitBreaker(name = "userCircuit", fallbackMethod = "fallbackDeleteUser")
-    @TimeLimiter(name = "userTimeLimiter")
+    // Inserta el lote y registra sus eventos en una transaccion. Dentro de una transaccion cualquier error de escritura
+    // (duplicado, IMEI ya emitido) la aborta entera: se deshace y se repite sin los usuarios rechazados, o con un IMEI
+    // nuevo para los que solo repitieron el IMEI. Un lote con k rechazos cuesta hasta k + 1 transacciones.
+    // Los errores quedan indexados por la posicion en users
+    private Mono<Map<Integer, BulkWriteError>> insertAtomically(List<User> users) {
+        return Flux.fromIterable(users)
+                .concatMap(user -> imeiAllocator.allocate().doOnNext(user::setImei))
+                .then(Mono.defer(() -> insertAtomically(users, new HashMap<>(), new int[users.size()])));
+    }
+
+    private Mono<Map<Integer, BulkWriteError>> insertAtomically(List<User> users, Map<Integer, BulkWriteError> rejected,
+                                                                int[] imeiCollisions) {
+        List<Integer> pending = new ArrayList<>(users.size());
+        for (int i = 0; i < users.size(); i++) {
+            if (!rejected.containsKey(i)) {
+                pending.add(i);
+            }
+        }
+        if (pending.isEmpty()) {
+            return Mono.just(rejected);
+        }
+        List<User> batch = pending.stream().map(users::get).collect(Collectors.toList());
+        return atomically(Mono.defer(() -> stageMetrics.mono(StageMetrics.MONGO, "insertUnordered",
+                                userRepository.insertUnordered(batch)))
+                        .flatMap(errors -> errors.isEmpty()
+                                ? recordEvents(UserEvent.Type.CREATED, batch).thenReturn(rejected)
+                                // Sin el error la transaccion, ya abortada en Mongo, se intentaria confirmar
+                                : Mono.error(new BulkInsertRejected(errors))))
+                .onErrorResume(BulkInsertRejected.class, e -> Flux.fromIterable(e.errors.entrySet())
+                        .concatMap(error -> {
+                            int i = pending.get(error.getKey());
+                            if (isImeiDuplicate(error.getValue().getMessage()) && imeiCollisions[i] < imeiCollisionRetries) {
+                                imeiCollisions[i]++;
+                                meterRegistry.counter("user.imei.collisions").increment();
+                                return imeiAllocator.allocate().doOnNext(users.get(i)::setImei);
+                            }
+                            rejected.put(i, error.getValue());
+                            return Mono.empty();
+                        })
+                        .then(Mono.defer(() -> insertAtomically(users, rejected, imeiCollisions))));
+    }
+
+    // Errores de escritura de un lote transaccional, para deshacer la transaccion y repetirla sin esos usuarios
+    private static final class BulkInsertRejected extends RuntimeException {
+        private final transient Map<Integer, BulkWriteError> errors;
+
+        private BulkInsertRejected(Map<Integer, BulkWriteError> errors) {
+            super(errors.size() + " users rejected", null, false, false);
+            this.errors = errors;
+        }
+    }
+
+    static boolean isImeiCollision(Throwable e) {
+        return e instanceof DuplicateKeyException && isImeiDuplicate(e.getMessage());
+    }
+
+    private static boolean isImeiDuplicate(String message) {
+        return message != null && message.contains("index: " + User.IMEI_INDEX + " ");
+    }
+
+    private UserBulkResult bulkResult(Tuple2<Long, User> item, UserBulkResult.Status status, String message) {
+        return UserBulkResult.builder()
+                .index(item.getT1())
+                .status(status)
+                .user(item.getT2())
+                .message(message)
+                .build();
+    }
+
+    @CircuitBreaker(name = "userWrite", fallbackMethod = "fallbackUpdate")
+    @Bulkhead(name = "userWrite")
+    @TimeLimiter(name = "userWrite")
+    public Mono<User> update(String userId, User user){
+        log.debug("update executed {}:{}", LogSafe.value(userId), LogSafe.user(user));
+        // Un solo viaje a Mongo: $set de los campos editables condicionado a la version enviada, si la hay.
+        // Devuelve el documento guardado, que es lo que se cachea y se responde
+        return atomically(mongo("findAndSet", userRepository.findAndSet(userId, user.getVersion(), user))
+                        .flatMap(stored -> recordEvent(UserEvent.Type.UPDATED, stored).thenReturn(stored)))
+                // El cache se actualiza despues de confirmar la transaccion. El DNI anterior, para mover su indice,
+                // sale de la copia en Redis que se va a reemplazar; sin copia no hay indice que dependa de ella
+                .flatMap(stored -> userRedisCache.get(stored.getId())
+                        .map(User::getIdentityDni)
+                        .defaultIfEmpty(stored.getIdentityDni())
+                        .flatMap(previousDni -> writeThrough(previousDni, stored))
+                        .thenReturn(stored));
+    }
+
+    @CircuitBreaker(name = "userWrite", fallbackMethod = "fallbackPatch")
+    @Bulkhead(name = "userWrite")
+    @TimeLimiter(name = "userWrite")
+    public Mono<User> patch(String userId, User changes, Set<String> fields){
+        log.debug("patch executed {}:{}", LogSafe.value(userId), fields);
+        // $set solo de los campos enviados y solo si alguno cambia; sin cambios no hay escritura en Mongo ni en Redis
+        return atomically(mongo("findAndPatch", userRepository.findAndPatch(userId, changes.getVersion(), changes, fields))
+                        .flatMap(previous -> {
+                            User patched = applyFields(previous, changes, fields);
+                            patched.setVersion(previous.getVersion() == null ? 1L : previous.getVersion() + 1);
+                            return recordEvent(UserEvent.Type.UPDATED, patched).thenReturn(Tuples.of(previous, patched));
+                        }))
+                .flatMap(written -> {
+                    meterRegistry.counter("user.patch", "result", "applied").increment();
+                    return writeThrough(written.getT1().getIdentityDni(), written.getT2()).thenReturn(written.getT2());
+                })
+                .switchIfEmpty(Mono.defer(() -> mongo("findById", userRepository.findById(userId))
+                        .flatMap(current -> {
+                            if (changes.getVersion() != null && !changes.getVersion().equals(current.getVersion())) {
+                                return Mono.error(new OptimisticLockingFailureException(
+                                        "User " + userId + " no longer has version " + changes.getVersion()));
+                            }
+                            meterRegistry.counter("user.patch", "result", "noop").increment();
+                            return Mono.just(current);
+                        })));
+    }
+
+    // Copia sobre el documento anterior solo los campos del parche, sin volver a leer Mongo
+    private User applyFields(User previous, User changes, Set<String> fields) {
+        User patched = new User();
+        BeanUtils.copyProperties(previous, patched);
+        BeanWrapper source = PropertyAccessorFactory.forBeanPropertyAccess(changes);
+        BeanWrapper target = PropertyAccessorFactory.forBeanPropertyAccess(patched);
+        for (String field : fields) {
+            target.setPropertyValue(field, source.getPropertyValue(field));
+        }
+        return patched;
+    }
+
+    @CircuitBreaker(name = "userWrite", fallbackMethod = "fallbackDelete")
+    @Bulkhead(name = "userWrite")
+    @TimeLimiter(name = "userWrite")
     public Mono<User>delete(String userId){
-        log.debug("delete executed {}",userId);
-        return userRepository.findById(userId)
-                .flatMap(existingUser -> userRepository.delete(existingUser)
-                        .then(Mono.just(existingUser)));
+        log.debug("delete executed {}", LogSafe.value(userId));
+        return atomically(mongo("findAndRemoveById", userRepository.findAndRemoveById(userId))
+                        .flatMap(existingUser -> recordEvent(UserEvent.Type.DELETED, existingUser).thenReturn(existingUser)))
+                .doOnNext(existingUser -> userLocalCache.evictStale(existingUser.getId()))
+                .flatMap(existingUser -> userRedisCache.remove(existingUser)
+                        .then(userLocalCache.invalidate(existingUser.getId()))
+                        .thenReturn(existingUser));
+    }
+
+    // ---- Fallbacks: se aplican solo cuando la dependencia no esta disponible; los errores de negocio se propagan
+
+    private Flux<User> fallbackFindAll(Throwable e) {
+        if (!isUnavailable(e)) {
+            return Flux.error(e);
+        }
+        // Lo que haya en el hash, aunque no este marcado como snapshot completo
+        return countFallback("findAll", userRedisCache.scanAll()
+                .onErrorResume(redisError -> Flux.empty()))
+                .switchIfEmpty(Flux.error(e));
+    }
+
+    private Mono<User> fallbackFindById(String userId, Throwable e) {
+        if (!isUnavailable(e)) {
+            return Mono.error(e);
+        }
+        return countFallback("findById", Mono.justOrEmpty(userLocalCache.getStale(userId))
+                .switchIfEmpty(Mono.defer(() -> userRedisCache.get(userId))))
+                .switchIfEmpty(Mono.error(e));
+    }
+
+    private Mono<User> fallbackFindByIdentityDni(String identityDni, Throwable e) {
+        if (!isUnavailable(e)) {
+            return Mono.error(e);
+        }
+        // Optional vacio: el DNI se sabe inexistente y se responde 404 aun en modo degradado
+        return countFallback("findByIdentityDni", userRedisCache.findByDni(identityDni)
+                .switchIfEmpty(Mono.error(e)))
+                .flatMap(Mono::justOrEmpty);
+    }
+
+    private Mono<User> fallbackCreate(User user, Throwable e) {
+        return enqueue(PendingWrite.Operation.CREATE, null, newUser(user), null, e);
+    }
+
+    private Mono<User> fallbackUpdate(String userId, User user, Throwable e) {
+        return enqueue(PendingWrite.Operation.UPDATE, userId, user, null, e);
+    }
+
+    private Mono<User> fallbackPatch(String userId, User changes, Set<String> fields, Throwable e) {
+        // El diario guarda solo lo que la reproduccion necesita: los campos del parche y la version esperada
+        User journaled = applyFields(new User(), changes, fields);
+        journaled.setVersion(changes.getVersion());
+        return enqueue(PendingWrite.Operation.PATCH, userId, journaled, fields, e);
+    }
+
+    private Mono<User> fallbackDelete(String userId, Throwable e) {
+        return enqueue(PendingWrite.Operation.DELETE, userId, null, null, e);
+    }
+
+    private <T> Flux<T> countFallback(String operation, Flux<T> stale) {
+        return stale.doOnSubscribe(s -> meterRegistry.counter("user.fallback", "operation", operation).increment());
+    }
+
+    private <T> Mono<T> countFallback(String operation, Mono<T> stale) {
+        return stale.doOnSubscribe(s -> meterRegistry.counter("user.fallback", "operation", operation).increment());
+    }
+
+    // Guarda la escritura en la cola durable y responde WriteQueuedException (202); si la cola esta llena, el error original
+    private Mono<User> enqueue(PendingWrite.Operation operation, String userId, User user, Set<String> fields, Throwable e) {
+        if (!isUnavailable(e)) {
+            return Mono.error(e);
+        }
+        PendingWrite write = PendingWrite.builder()
+                .id(UUID.randomUUID().toString())
+                .operation(operation)
+                .userId(userId)
+                .user(user)
+                .fields(fields)
+                .queuedAt(System.currentTimeMillis())
+                .build();
+        return Mono.fromCallable(() -> pendingWriteQueue.offer(write))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(accepted -> Mono.<User>error(accepted ? new WriteQueuedException(write.getId(), e) : e));
+    }
+
+    // Copia de un alta sin id ni version: el save que vencio puede seguir en curso y asignarselos al original,
+    // y con version el alta repetida seria una actualizacion que Mongo rechaza por version desactualizada
+    private static User newUser(User user) {
+        User copy = new User();
+        BeanUtils.copyProperties(user, copy);
+        copy.setId(null);
+        copy.setVersion(null);
+        return copy;
+    }
+
+    // Mongo caido, lento o circuito abierto. Las escrituras rechazadas por sobrecarga (bulkhead, limite) no se encolan
+    static boolean isUnavailable(Throwable e) {
+        return e instanceof CallNotPermittedException
+                || e instanceof TimeoutException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof TransientDataAccessResourceException
+                || e instanceof QueryTimeoutException
+                || e instanceof MongoSocketException
+                || e instanceof MongoTimeoutException;
+    }
+
+    @PostConstruct
+    public void scheduleReplay() {
+        // Se reproduce al cerrarse el circuito de escrituras y, por si algo quedo a medias, cada replayInterval
+        circuitBreakerRegistry.circuitBreaker("userWrite").getEventPublisher()
+                .onStateTransition(event -> {
+                    if (event.getStateTransition().getToState() == State.CLOSED) {
+                        replayPendingWrites().subscribe();
+                    }
+                });
+        replaySubscription = Flux.interval(Duration.ZERO, replayInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> replayPendingWrites())
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void cancelReplay() {
+        if (replaySubscription != null) {
+            replaySubscription.dispose();
+        }
+    }
+
+    /**
+     * Aplica las escrituras encoladas llamando directamente a los metodos del servicio (sin pasar por el proxy,
+     * para que un nuevo fallo no vuelva a encolarlas). Los conflictos y duplicados se descartan con un aviso.
+     */
+    public Mono<Integer> replayPendingWrites() {
+        if (circuitBreakerRegistry.circuitBreaker("userWrite").getState() == State.OPEN) {
+            return Mono.just(0);
+        }
+        return pendingWriteQueue.replay(this::replay)
+                .doOnNext(resolved -> {
+                    if (resolved > 0) {
+                        log.info("{} pending writes replayed, {} left", resolved, pendingWriteQueue.size());
+                    }
+                })
+                .onErrorResume(e -> {
+                    log.warn("pending write replay failed: {}", e.getMessage());
+                    return Mono.just(0);
+                });
+    }
+
+    private Mono<Boolean> replay(PendingWrite write) {
+        Mono<User> call;
+        switch (write.getOperation()) {
+            case CREATE:
+                // Las entradas encoladas antes de limpiar la copia pueden traer la version 0 del save que vencio
+                call = create(newUser(write.getUser()));
+                break;
+            case UPDATE:
+                call = update(write.getUserId(), write.getUser());
+                break;
+            case PATCH:
+                call = patch(write.getUserId(), write.getUser(), write.getFields());
+                break;
+            default:
+                call = delete(write.getUserId());
+        }
+        return call.then(Mono.fromCallable(() -> {
+                    meterRegistry.counter("user.write-queue.replayed", "result", "applied").increment();
+                    return true;
+                }))
+                .onErrorResume(e -> {
+                    if (isUnavailable(e) || e instanceof ConcurrencyLimitExceededException) {
+                        return Mono.just(false);
+                    }
+                    log.warn("dropping pending {} {} for {}: {}", write.getOperation(), write.getId(),
+                            write.getUserId(), e.getMessage());
+                    meterRegistry.counter("user.write-queue.replayed", "result", "dropped").increment();
+                    return Mono.just(true);
+                });
+    }
+
+    // Reescribe la entrada en Redis (moviendo el indice si cambio el DNI) e invalida el cache local en todos los nodos
+    private Mono<Void> writeThrough(String previousDni, User saved) {
+        Mono<Void> removePrevious = Objects.equals(previousDni, saved.getIdentityDni())
+                ? Mono.empty()
+                : userRedisCache.removeDni(previousDni);
+        return removePrevious
+                .then(userRedisCache.put(saved))
+                .then(userLocalCache.invalidate(saved.getId()));
     }
 
 }
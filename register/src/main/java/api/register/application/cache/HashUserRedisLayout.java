@@ -0,0 +1,121 @@
+package api.register.application.cache;
+
+import api.register.domain.User;
+import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisElementReader;
+import org.springframework.data.redis.serializer.RedisElementWriter;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Estructura original: todos los usuarios en el hash "UserRedis", sin expiracion por entrada.
+ * Ocupa un solo slot de Redis Cluster y su borrado es O(N); se mantiene para migrar a la estructura por buckets.
+ */
+public class HashUserRedisLayout implements UserRedisLayout {
+
+    public static final String USERS_KEY = "UserRedis";
+    public static final String SNAPSHOT_KEY = "UserRedis:snapshot";
+    public static final String SNAPSHOT_VERSION_KEY = "UserRedis:snapshot:version";
+
+    // Resuelve DNI -> id -> usuario en un solo viaje a Redis
+    private static final RedisScript<byte[]> FIND_BY_DNI_SCRIPT = RedisScript.of(
+            "local id = redis.call('GET', KEYS[1]) "
+                    + "if not id then return false end "
+                    + "if id == ARGV[1] then return id end "
+                    + "return redis.call('HGET', KEYS[2], id)",
+            byte[].class);
+
+    private final ReactiveHashOperations<String, String, User> hashOperations;
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final RedisSerializer<User> userRedisSerializer;
+    private final int scanCount;
+
+    public HashUserRedisLayout(ReactiveHashOperations<String, String, User> hashOperations,
+                               ReactiveStringRedisTemplate redisTemplate,
+                               RedisSerializer<User> userRedisSerializer,
+                               int scanCount) {
+        this.hashOperations = hashOperations;
+        this.redisTemplate = redisTemplate;
+        this.userRedisSerializer = userRedisSerializer;
+        this.scanCount = scanCount;
+    }
+
+    @Override
+    public Mono<User> get(String userId) {
+        return hashOperations.get(USERS_KEY, userId);
+    }
+
+    @Override
+    public Mono<List<User>> getAll(List<String> userIds) {
+        return hashOperations.multiGet(USERS_KEY, userIds);
+    }
+
+    @Override
+    public Mono<Optional<User>> findByDni(String dniKey, String negativeMarker) {
+        byte[] marker = negativeMarker.getBytes(StandardCharsets.UTF_8);
+        return redisTemplate.execute(FIND_BY_DNI_SCRIPT, Arrays.asList(dniKey, USERS_KEY),
+                        Collections.singletonList(negativeMarker),
+                        RedisElementWriter.from(RedisSerializer.string()),
+                        RedisElementReader.from(RedisSerializer.byteArray()))
+                .next()
+                .map(bytes -> Arrays.equals(bytes, marker)
+                        ? Optional.<User>empty()
+                        : Optional.ofNullable(userRedisSerializer.deserialize(bytes)));
+    }
+
+    /**
+     * Recorre el hash con HSCAN para emitir los usuarios a medida que llegan.
+     */
+    @Override
+    public Flux<User> scanAll() {
+        return hashOperations.scan(USERS_KEY, ScanOptions.scanOptions().count(scanCount).build())
+                .map(Map.Entry::getValue);
+    }
+
+    @Override
+    public Mono<Void> putAll(Map<String, User> users) {
+        return hashOperations.putAll(USERS_KEY, users).then();
+    }
+
+    @Override
+    public Mono<Void> indexDnis(Map<String, String> dniIndex) {
+        return redisTemplate.opsForValue().multiSet(dniIndex).then();
+    }
+
+    @Override
+    public Mono<Void> removeAll(List<String> userIds) {
+        return hashOperations.remove(USERS_KEY, userIds.toArray()).then();
+    }
+
+    @Override
+    public Mono<Void> clear() {
+        return redisTemplate.delete(USERS_KEY).then();
+    }
+
+    @Override
+    public String snapshotKey() {
+        return SNAPSHOT_KEY;
+    }
+
+    @Override
+    public String snapshotVersionKey() {
+        return SNAPSHOT_VERSION_KEY;
+    }
+
+    @Override
+    public Duration snapshotTtl() {
+        return null;
+    }
+}
@@ -0,0 +1,210 @@
+package api.register.application.cache;
+
+import api.register.domain.User;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ReactiveValueOperations;
+import org.springframework.data.redis.core.ScanOptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Una clave por usuario, "UserRedis:{bucket}:user:id", con TTL propio (ttl mas un jitter aleatorio para que
+ * no expiren todas a la vez), y por cada bucket el conjunto "UserRedis:{bucket}:ids" para poder recorrerlas.
+ *
+ * El bucket sale del hash del id. Va entre llaves (hash tag de Redis Cluster): las claves de un bucket comparten
+ * slot, de modo que cada MGET/DEL es de un solo bucket y los buckets se reparten entre los nodos del cluster.
+ * Cambiar la cantidad de buckets reubica las claves: requiere vaciar el cache.
+ * Los comandos de varios buckets se lanzan a la vez y el cliente los envia en pipeline por la misma conexion.
+ */
+public class ShardedUserRedisLayout implements UserRedisLayout {
+
+    public static final String KEY_PREFIX = "UserRedis:{";
+    public static final String SNAPSHOT_KEY = "UserRedis:{snapshot}:sharded";
+    public static final String SNAPSHOT_VERSION_KEY = "UserRedis:{snapshot}:sharded:version";
+
+    private final ReactiveValueOperations<String, User> userOperations;
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final int buckets;
+    private final Duration ttl;
+    private final Duration ttlJitter;
+    private final int scanCount;
+    private final int readConcurrency;
+
+    public ShardedUserRedisLayout(ReactiveValueOperations<String, User> userOperations,
+                                  ReactiveStringRedisTemplate redisTemplate,
+                                  int buckets,
+                                  Duration ttl,
+                                  Duration ttlJitter,
+                                  int scanCount,
+                                  int readConcurrency) {
+        if (buckets < 1) {
+            throw new IllegalArgumentException("cache.sharded.buckets must be positive");
+        }
+        this.userOperations = userOperations;
+        this.redisTemplate = redisTemplate;
+        this.buckets = buckets;
+        this.ttl = ttl;
+        this.ttlJitter = ttlJitter;
+        this.scanCount = scanCount;
+        this.readConcurrency = readConcurrency;
+    }
+
+    int bucket(String userId) {
+        return Math.floorMod(userId.hashCode(), buckets);
+    }
+
+    static String userKey(int bucket, String userId) {
+        return KEY_PREFIX + bucket + "}:user:" + userId;
+    }
+
+    static String idsKey(int bucket) {
+        return KEY_PREFIX + bucket + "}:ids";
+    }
+
+    Duration entryTtl() {
+        long jitter = ttlJitter.toMillis();
+        return jitter <= 0 ? ttl : ttl.plusMillis(ThreadLocalRandom.current().nextLong(jitter + 1));
+    }
+
+    @Override
+    public Mono<User> get(String userId) {
+        return userOperations.get(userKey(bucket(userId), userId));
+    }
+
+    /**
+     * Un MGET por bucket, todos en paralelo; el resultado se reordena segun userIds.
+     */
+    @Override
+    public Mono<List<User>> getAll(List<String> userIds) {
+        Map<Integer, List<Integer>> positions = new LinkedHashMap<>();
+        for (int i = 0; i < userIds.size(); i++) {
+            positions.computeIfAbsent(bucket(userIds.get(i)), bucket -> new ArrayList<>()).add(i);
+        }
+        User[] result = new User[userIds.size()];
+        return Flux.fromIterable(positions.entrySet())
+                .flatMap(group -> {
+                    List<String> keys = group.getValue().stream()
+                            .map(i -> userKey(group.getKey(), userIds.get(i)))
+                            .collect(Collectors.toList());
+                    return userOperations.multiGet(keys).doOnNext(users -> {
+                        for (int i = 0; i < users.size(); i++) {
+                            result[group.getValue().get(i)] = users.get(i);
+                        }
+                    });
+                }, readConcurrency)
+                .then(Mono.fromSupplier(() -> Arrays.asList(result)));
+    }
+
+    // El indice DNI y la entrada del usuario estan en slots distintos: dos viajes en lugar de un script
+    @Override
+    public Mono<Optional<User>> findByDni(String dniKey, String negativeMarker) {
+        return redisTemplate.opsForValue().get(dniKey)
+                .flatMap(id -> negativeMarker.equals(id) ? Mono.just(Optional.<User>empty()) : get(id).map(Optional::of));
+    }
+
+    /**
+     * Recorre los buckets (readConcurrency a la vez) con SSCAN de sus ids y un MGET por lote.
+     * Los ids cuyas entradas ya expiraron se quitan del conjunto al encontrarlos.
+     */
+    @Override
+    public Flux<User> scanAll() {
+        return Flux.range(0, buckets).flatMap(this::scanBucket, readConcurrency);
+    }
+
+    private Flux<User> scanBucket(int bucket) {
+        return redisTemplate.opsForSet().scan(idsKey(bucket), ScanOptions.scanOptions().count(scanCount).build())
+                .buffer(scanCount)
+                .concatMap(ids -> userOperations.multiGet(ids.stream()
+                                .map(id -> userKey(bucket, id))
+                                .collect(Collectors.toList()))
+                        .flatMapMany(users -> {
+                            List<Object> expired = new ArrayList<>();
+                            for (int i = 0; i < users.size(); i++) {
+                                if (users.get(i) == null) {
+                                    expired.add(ids.get(i));
+                                }
+                            }
+                            Mono<Long> prune = expired.isEmpty() ? Mono.empty()
+                                    : redisTemplate.opsForSet().remove(idsKey(bucket), expired.toArray());
+                            return prune.thenMany(Flux.fromIterable(users).filter(user -> user != null));
+                        }));
+    }
+
+    /**
+     * Un SET con TTL por usuario y un SADD por bucket, todos en pipeline.
+     */
+    @Override
+    public Mono<Void> putAll(Map<String, User> users) {
+        Map<Integer, List<String>> byBucket = users.keySet().stream()
+                .collect(Collectors.groupingBy(this::bucket));
+        return Mono.when(
+                Flux.fromIterable(users.entrySet())
+                        .flatMap(entry -> userOperations.set(userKey(bucket(entry.getKey()), entry.getKey()),
+                                entry.getValue(), entryTtl())),
+                Flux.fromIterable(byBucket.entrySet())
+                        .flatMap(group -> redisTemplate.opsForSet().add(idsKey(group.getKey()),
+                                group.getValue().toArray(new String[0]))));
+    }
+
+    // Las claves del indice DNI tambien expiran, con el mismo TTL que los usuarios
+    @Override
+    public Mono<Void> indexDnis(Map<String, String> dniIndex) {
+        return Flux.fromIterable(dniIndex.entrySet())
+                .flatMap(entry -> redisTemplate.opsForValue().set(entry.getKey(), entry.getValue(), entryTtl()))
+                .then();
+    }
+
+    @Override
+    public Mono<Void> removeAll(List<String> userIds) {
+        Map<Integer, List<String>> byBucket = userIds.stream().collect(Collectors.groupingBy(this::bucket));
+        return Flux.fromIterable(byBucket.entrySet())
+                .flatMap(group -> Mono.when(
+                        redisTemplate.delete(group.getValue().stream()
+                                .map(id -> userKey(group.getKey(), id))
+                                .toArray(String[]::new)),
+                        redisTemplate.opsForSet().remove(idsKey(group.getKey()), group.getValue().toArray())))
+                .then();
+    }
+
+    /**
+     * Borra bucket por bucket y por lotes, sin comandos O(N) sobre una sola clave grande.
+     */
+    @Override
+    public Mono<Void> clear() {
+        return Flux.range(0, buckets)
+                .flatMap(bucket -> redisTemplate.opsForSet()
+                        .scan(idsKey(bucket), ScanOptions.scanOptions().count(scanCount).build())
+                        .buffer(scanCount)
+                        .concatMap(ids -> redisTemplate.delete(ids.stream()
+                                .map(id -> userKey(bucket, id))
+                                .toArray(String[]::new)))
+                        .then(redisTemplate.delete(idsKey(bucket))), readConcurrency)
+                .then();
+    }
+
+    @Override
+    public String snapshotKey() {
+        return SNAPSHOT_KEY;
+    }
+
+    @Override
+    public String snapshotVersionKey() {
+        return SNAPSHOT_VERSION_KEY;
+    }
+
+    // Sin jitter: la marca vence antes que la primera entrada escrita por la reconstruccion
+    @Override
+    public Duration snapshotTtl() {
+        return ttl;
+    }
+}
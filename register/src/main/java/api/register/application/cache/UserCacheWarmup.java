@@ -0,0 +1,191 @@
+package api.register.application.cache;
+
+import api.register.application.metrics.StageMetrics;
+import api.register.domain.User;
+import api.register.domain.UserRepository;
+import com.netflix.appinfo.ApplicationInfoManager;
+import com.netflix.appinfo.InstanceInfo.InstanceStatus;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Precarga de "UserRedis" y del cache local al arrancar, antes de recibir trafico.
+ *
+ * Si Redis ya tiene un snapshot completo (otro nodo lo construyo) solo se llena el cache local con HSCAN;
+ * si no, se recorren los usuarios de Mongo por lotes, escribiendo varios lotes en paralelo a un ritmo acotado,
+ * y al terminar se marca el snapshot que usa findAll.
+ * Mientras dura, readinessState informa REFUSING_TRAFFIC y el nodo figura en Eureka como STARTING
+ * (ambos en CacheWarmupReadinessConfig), de modo que los clientes no lo eligen.
+ * Al terminar, agotar el timeout o fallar pasa a UP: la precarga nunca impide que el nodo reciba trafico.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = {"cache.enabled", "cache.warmup.enabled"}, havingValue = "true")
+public class UserCacheWarmup {
+
+    enum State { PENDING, RUNNING, COMPLETED, TIMEOUT, FAILED }
+
+    private final UserRepository userRepository;
+    private final UserRedisCache userRedisCache;
+    private final UserLocalCache userLocalCache;
+    private final StageMetrics stageMetrics;
+    private final MeterRegistry meterRegistry;
+    private final long maxEntries;
+    private final int batchSize;
+    private final int parallelism;
+    private final int rate;
+    private final Duration timeout;
+    private final ObjectProvider<ApplicationInfoManager> eurekaInstance;
+
+    private final AtomicLong entries = new AtomicLong();
+    private volatile State state = State.PENDING;
+    private volatile String source;
+    private volatile long startedAt;
+    private volatile Duration duration;
+    private Disposable warmup;
+
+    public UserCacheWarmup(UserRepository userRepository,
+                           UserRedisCache userRedisCache,
+                           UserLocalCache userLocalCache,
+                           StageMetrics stageMetrics,
+                           MeterRegistry meterRegistry,
+                           @Value("${cache.warmup.max-entries:0}") long maxEntries,
+                           @Value("${cache.warmup.batch-size:500}") int batchSize,
+                           @Value("${cache.warmup.parallelism:4}") int parallelism,
+                           @Value("${cache.warmup.rate:20000}") int rate,
+                           @Value("${cache.warmup.timeout:60s}") Duration timeout,
+                           ObjectProvider<ApplicationInfoManager> eurekaInstance) {
+        this.userRepository = userRepository;
+        this.userRedisCache = userRedisCache;
+        this.userLocalCache = userLocalCache;
+        this.stageMetrics = stageMetrics;
+        this.meterRegistry = meterRegistry;
+        this.maxEntries = maxEntries;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+        this.rate = rate;
+        this.timeout = timeout;
+        this.eurekaInstance = eurekaInstance;
+        meterRegistry.gauge("user.cache.warmup.entries", entries);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        warmup = warmUp().subscribe();
+    }
+
+    @PreDestroy
+    public void cancel() {
+        if (warmup != null) {
+            warmup.dispose();
+        }
+    }
+
+    /**
+     * Ejecuta la precarga; nunca falla, el resultado queda en el estado y en las metricas.
+     */
+    Mono<Void> warmUp() {
+        return Mono.defer(() -> {
+                    state = State.RUNNING;
+                    startedAt = System.nanoTime();
+                    return userRedisCache.isSnapshotComplete();
+                })
+                .flatMap(complete -> complete ? fromRedis() : fromMongo())
+                .timeout(timeout)
+                .doOnSuccess(done -> finish(State.COMPLETED, null))
+                .onErrorResume(e -> {
+                    finish(e instanceof TimeoutException ? State.TIMEOUT : State.FAILED, e);
+                    return Mono.empty();
+                });
+    }
+
+    // Redis ya esta completo: solo falta el cache local de este nodo
+    private Mono<Void> fromRedis() {
+        source = StageMetrics.REDIS;
+        return limit(userRedisCache.scanAll())
+                .doOnNext(this::loadLocal)
+                .then();
+    }
+
+    // Un lote por HSET/MSET, hasta parallelism lotes en vuelo y a lo sumo rate usuarios por segundo
+    private Mono<Void> fromMongo() {
+        source = StageMetrics.MONGO;
+        Flux<List<User>> read = limit(stageMetrics.flux(StageMetrics.MONGO, "warmup", userRepository.streamAll()))
+                .buffer(batchSize);
+        Flux<List<User>> batches = rate > 0
+                ? read.delayElements(Duration.ofNanos(Duration.ofSeconds(1).toNanos() * batchSize / rate))
+                : read;
+        return userRedisCache.beginSnapshot()
+                .flatMap(version -> batches
+                        .flatMap(users -> userRedisCache.putAll(users)
+                                .then(Mono.fromRunnable(() -> users.forEach(this::loadLocal))), parallelism)
+                        // Con max-entries puede faltar parte de la coleccion: no es un snapshot completo
+                        .then(Mono.defer(() -> maxEntries > 0 ? Mono.empty() : userRedisCache.completeSnapshot(version)))
+                        .then());
+    }
+
+    private Flux<User> limit(Flux<User> users) {
+        return maxEntries > 0 ? users.take(maxEntries) : users;
+    }
+
+    private void loadLocal(User user) {
+        userLocalCache.put(user);
+        entries.incrementAndGet();
+    }
+
+    private void finish(State outcome, Throwable error) {
+        duration = Duration.ofNanos(System.nanoTime() - startedAt);
+        state = outcome;
+        eurekaInstance.ifAvailable(instance -> instance.setInstanceStatus(InstanceStatus.UP));
+        Timer.builder("user.cache.warmup.duration")
+                .tag("source", source == null ? "none" : source)
+                .tag("outcome", outcome.name().toLowerCase())
+                .register(meterRegistry)
+                .record(duration);
+        if (error == null) {
+            log.info("cache warm-up loaded {} users from {} in {} ms", entries.get(), source, duration.toMillis());
+        } else {
+            log.warn("cache warm-up {} after {} users in {} ms: {}", outcome.name().toLowerCase(), entries.get(),
+                    duration.toMillis(), error.getMessage());
+        }
+    }
+
+    State state() {
+        return state;
+    }
+
+    public boolean isFinished() {
+        return state != State.PENDING && state != State.RUNNING;
+    }
+
+    public Map<String, Object> details() {
+        Map<String, Object> details = new LinkedHashMap<>();
+        details.put("state", state);
+        details.put("entries", entries.get());
+        if (source != null) {
+            details.put("source", source);
+        }
+        if (duration != null) {
+            details.put("durationMs", duration.toMillis());
+        }
+        return details;
+    }
+}
@@ -0,0 +1,213 @@
+package api.register.application.cache;
+
+import api.register.domain.User;
+import com.mongodb.MongoException;
+import com.mongodb.client.model.changestream.OperationType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Mantiene "UserRedis" y el cache local al dia con el change stream de la coleccion users, de modo que tambien
+ * se reflejan las escrituras que no pasan por UserService (scripts, otros servicios).
+ *
+ * Los eventos se agrupan por lotes (batch-size o batch-window) y se quedan solo con el ultimo cambio de cada usuario;
+ * cada lote se aplica con un HSET/MSET para las altas y modificaciones y un HDEL/DEL para los borrados.
+ * Tras aplicar un lote se guarda su resume token en Redis; al reiniciar (o reconectar) se continua desde ahi.
+ * Si Mongo ya no tiene ese punto del oplog o la coleccion se invalida, se vacia el cache y se empieza desde el presente.
+ *
+ * Cada nodo sigue el stream: las escrituras en Redis son idempotentes y asi cada uno actualiza su propio cache local.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = {"cache.enabled", "cache.change-stream.enabled"}, havingValue = "true")
+public class UserChangeStreamSync {
+
+    // ChangeStreamHistoryLost y ChangeStreamFatalError: el resume token ya no sirve
+    private static final Set<Integer> HISTORY_LOST_CODES = Set.of(286, 280);
+    private static final Set<OperationType> INVALIDATING = Set.of(OperationType.INVALIDATE, OperationType.DROP,
+            OperationType.RENAME, OperationType.DROP_DATABASE);
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final UserRedisCache userRedisCache;
+    private final UserLocalCache userLocalCache;
+    private final int batchSize;
+    private final Duration batchWindow;
+    private final MeterRegistry meterRegistry;
+    private final Timer lag;
+    private final DistributionSummary batches;
+    private final Counter coalesced;
+    private Disposable subscription;
+
+    public UserChangeStreamSync(ReactiveMongoTemplate mongoTemplate,
+                                UserRedisCache userRedisCache,
+                                UserLocalCache userLocalCache,
+                                @Value("${cache.change-stream.batch-size:500}") int batchSize,
+                                @Value("${cache.change-stream.batch-window:100ms}") Duration batchWindow,
+                                MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.userRedisCache = userRedisCache;
+        this.userLocalCache = userLocalCache;
+        this.batchSize = batchSize;
+        this.batchWindow = batchWindow;
+        this.meterRegistry = meterRegistry;
+        this.lag = Timer.builder("user.change-stream.lag")
+                .description("Tiempo entre la escritura en Mongo y su aplicacion en el cache")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.batches = DistributionSummary.builder("user.change-stream.batch.size")
+                .baseUnit("events")
+                .register(meterRegistry);
+        this.coalesced = meterRegistry.counter("user.change-stream.coalesced");
+    }
+
+    @PostConstruct
+    public void start() {
+        // Igual que la suscripcion de invalidaciones: se reintenta en segundo plano sin bloquear el arranque
+        subscription = Flux.defer(this::tail)
+                .doOnError(e -> log.warn("users change stream failed: {}", e.getMessage()))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    // Sigue el stream desde el ultimo checkpoint; un stream invalidado termina y se vuelve a abrir desde el presente
+    private Flux<Void> tail() {
+        return userRedisCache.loadResumeToken()
+                .map(token -> ChangeStreamOptions.builder().returnFullDocumentOnUpdate()
+                        .resumeAfter(BsonDocument.parse(token)).build())
+                .defaultIfEmpty(ChangeStreamOptions.builder().returnFullDocumentOnUpdate().build())
+                .flatMapMany(options -> mongoTemplate.changeStream(mongoTemplate.getCollectionName(User.class),
+                        options, User.class))
+                .map(UserChangeStreamSync::toChange)
+                .bufferTimeout(batchSize, batchWindow)
+                .concatMap(this::apply)
+                .onErrorResume(this::isHistoryLost, e -> {
+                    log.warn("users change stream cannot resume ({}), clearing cache", e.getMessage());
+                    return restartFromNow().thenMany(Flux.error(e));
+                })
+                .repeatWhen(completed -> completed.delayElements(Duration.ofSeconds(1)));
+    }
+
+    /**
+     * Aplica un lote: coalesce por usuario, escribe en Redis y en el cache local y guarda el checkpoint.
+     */
+    Mono<Void> apply(List<Change> changes) {
+        if (changes.isEmpty()) {
+            return Mono.empty();
+        }
+        batches.record(changes.size());
+        Change last = changes.get(changes.size() - 1);
+        if (changes.stream().anyMatch(change -> INVALIDATING.contains(change.operation))) {
+            log.warn("users collection invalidated the change stream ({}), clearing cache", last.operation);
+            return restartFromNow();
+        }
+        Map<String, Change> latest = new LinkedHashMap<>();
+        for (Change change : changes) {
+            if (change.userId != null) {
+                latest.remove(change.userId);
+                latest.put(change.userId, change);
+            }
+            meterRegistry.counter("user.change-stream.events", "operation",
+                    change.operation == null ? "unknown" : change.operation.getValue()).increment();
+        }
+        coalesced.increment(changes.size() - latest.size());
+        List<User> upserts = new ArrayList<>();
+        List<String> deletes = new ArrayList<>();
+        latest.values().forEach(change -> {
+            if (change.user != null) {
+                upserts.add(change.user);
+            } else {
+                deletes.add(change.userId);
+            }
+        });
+        Instant oldest = changes.get(0).clusterTime;
+        return Mono.when(userRedisCache.putAll(upserts), userRedisCache.removeAll(deletes))
+                .then(Mono.fromRunnable(() -> {
+                    upserts.forEach(userLocalCache::refresh);
+                    deletes.forEach(userLocalCache::evict);
+                }))
+                .then(userRedisCache.saveResumeToken(last.resumeToken))
+                .doOnSuccess(done -> {
+                    if (oldest != null) {
+                        lag.record(Duration.between(oldest, Instant.now()));
+                    }
+                });
+    }
+
+    private Mono<Void> restartFromNow() {
+        return userRedisCache.clear().then(userRedisCache.saveResumeToken(null));
+    }
+
+    private boolean isHistoryLost(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoException && HISTORY_LOST_CODES.contains(((MongoException) cause).getCode())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static Change toChange(ChangeStreamEvent<User> event) {
+        BsonDocument key = event.getRaw() == null ? null : event.getRaw().getDocumentKey();
+        BsonValue id = key == null ? null : key.get("_id");
+        String userId = id == null ? null
+                : id.isObjectId() ? id.asObjectId().getValue().toHexString()
+                : id.isString() ? id.asString().getValue() : id.toString();
+        // Una modificacion cuyo documento ya no existe (borrado despues) se aplica como borrado
+        User user = event.getOperationType() == OperationType.DELETE ? null : event.getBody();
+        BsonValue token = event.getResumeToken();
+        return new Change(event.getOperationType(), userId, user,
+                token == null ? null : token.asDocument().toJson(), event.getTimestamp());
+    }
+
+    /**
+     * Cambio de un usuario: user null significa que ya no existe.
+     */
+    static final class Change {
+
+        final OperationType operation;
+        final String userId;
+        final User user;
+        final String resumeToken;
+        final Instant clusterTime;
+
+        Change(OperationType operation, String userId, User user, String resumeToken, Instant clusterTime) {
+            this.operation = operation;
+            this.userId = userId;
+            this.user = user;
+            this.resumeToken = resumeToken;
+            this.clusterTime = clusterTime;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package api.register.application.cache;
+
+import api.register.application.metrics.StageMetrics;
+import api.register.domain.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Cache L1 en memoria delante del hash "UserRedis".
+ * Las invalidaciones se propagan al resto de nodos mediante Redis pub/sub y
+ * las cargas concurrentes de un mismo id se comparten (single-flight).
+ *
+ * Ademas guarda la ultima version conocida de cada usuario (last-known-good), con un tiempo de vida mucho mayor
+ * y sin afectarse por las invalidaciones, para responder en modo degradado cuando Mongo y Redis no estan disponibles.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "cache.enabled", havingValue = "true")
+public class UserLocalCache {
+
+    public static final String INVALIDATION_CHANNEL = "UserRedis:invalidate";
+
+    private final Cache<String, User> cache;
+    private final Cache<String, User> lastKnownGood;
+    private final Map<String, Mono<User>> inFlight = new ConcurrentHashMap<>();
+    private final Counter coalesced;
+    private final Counter hits;
+    private final Counter misses;
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private Disposable subscription;
+
+    public UserLocalCache(@Value("${cache.local.maximum-size:10000}") long maximumSize,
+                          @Value("${cache.local.expire-after-write:30s}") Duration expireAfterWrite,
+                          @Value("${cache.stale.maximum-size:100000}") long staleMaximumSize,
+                          @Value("${cache.stale.max-age:1h}") Duration staleMaxAge,
+                          ReactiveStringRedisTemplate redisTemplate,
+                          MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        this.lastKnownGood = Caffeine.newBuilder()
+                .maximumSize(staleMaximumSize)
+                .expireAfterWrite(staleMaxAge)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "userLocalCache");
+        CaffeineCacheMetrics.monitor(meterRegistry, lastKnownGood, "userLastKnownGood");
+        this.coalesced = meterRegistry.counter("user.cache.coalesced", "operation", "findById");
+        // Caffeine ya cuenta aciertos del cache completo; estos son los de findById, comparables con los de Redis
+        this.hits = meterRegistry.counter(StageMetrics.CACHE_REQUESTS,
+                "cache", StageMetrics.LOCAL, "operation", "findById", "result", "hit");
+        this.misses = meterRegistry.counter(StageMetrics.CACHE_REQUESTS,
+                "cache", StageMetrics.LOCAL, "operation", "findById", "result", "miss");
+    }
+
+    public User get(String userId) {
+        return cache.getIfPresent(userId);
+    }
+
+    /**
+     * Devuelve el usuario del cache local o lo carga con el loader; las llamadas concurrentes
+     * para el mismo id mientras la carga esta en curso reciben el mismo resultado.
+     */
+    public Mono<User> get(String userId, Function<String, Mono<User>> loader) {
+        return Mono.defer(() -> {
+            User cached = cache.getIfPresent(userId);
+            if (cached != null) {
+                hits.increment();
+                return Mono.just(cached);
+            }
+            misses.increment();
+            AtomicBoolean owner = new AtomicBoolean();
+            Mono<User> load = inFlight.computeIfAbsent(userId, id -> {
+                owner.set(true);
+                return loader.apply(id)
+                        .doOnNext(this::put)
+                        .doFinally(signal -> inFlight.remove(id))
+                        .cache();
+            });
+            if (!owner.get()) {
+                coalesced.increment();
+            }
+            return load;
+        });
+    }
+
+    public void put(User user) {
+        cache.put(user.getId(), user);
+        lastKnownGood.put(user.getId(), user);
+    }
+
+    /**
+     * Ultima version conocida del usuario, aunque haya sido invalidada; solo para respuestas degradadas.
+     */
+    public User getStale(String userId) {
+        return lastKnownGood.getIfPresent(userId);
+    }
+
+    /**
+     * Olvida la ultima version conocida (el usuario fue borrado en este nodo).
+     */
+    public void evictStale(String userId) {
+        lastKnownGood.invalidate(userId);
+    }
+
+    /**
+     * Reemplaza la entrada solo si ya estaba en memoria (cambio llegado por el change stream):
+     * no se cargan usuarios que este nodo no esta leyendo.
+     */
+    public void refresh(User user) {
+        cache.asMap().computeIfPresent(user.getId(), (id, cached) -> user);
+        lastKnownGood.asMap().computeIfPresent(user.getId(), (id, cached) -> user);
+    }
+
+    /**
+     * Olvida el usuario solo en este nodo, incluida su ultima version conocida (fue borrado).
+     */
+    public void evict(String userId) {
+        cache.invalidate(userId);
+        lastKnownGood.invalidate(userId);
+    }
+
+    /**
+     * Invalida la entrada local y notifica al resto de nodos.
+     */
+    public Mono<Void> invalidate(String userId) {
+        cache.invalidate(userId);
+        return redisTemplate.convertAndSend(INVALIDATION_CHANNEL, userId)
+                .doOnError(e -> log.warn("invalidation publish failed for {}: {}", userId, e.getMessage()))
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        // La suscripcion se reintenta en segundo plano para no bloquear el arranque si Redis no responde
+        subscription = Flux.defer(() -> redisTemplate.listenToChannel(INVALIDATION_CHANNEL))
+                .map(ReactiveSubscription.Message::getMessage)
+                .doOnError(e -> log.warn("invalidation channel error: {}", e.getMessage()))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)))
+                .subscribe(cache::invalidate);
+    }
+
+    @PreDestroy
+    public void unsubscribe() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+}
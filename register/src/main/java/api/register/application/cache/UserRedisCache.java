@@ -0,0 +1,340 @@
+package api.register.application.cache;
+
+import api.register.application.limit.AdaptiveConcurrencyLimiter;
+import api.register.application.limit.ConcurrencyLimitExceededException;
+import api.register.application.metrics.StageMetrics;
+import api.register.config.logging.LogSafe;
+import api.register.domain.User;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Acceso al cache de usuarios en Redis: las entradas (segun la estructura de cache.layout, ver UserRedisLayout),
+ * el indice secundario DNI -> id y la marca de snapshot completo que usa findAll.
+ * Los fallos de Redis se registran y se tratan como fallos de cache para no afectar a Mongo.
+ * Las lecturas pasan por el limite adaptativo y por el circuito "userRedis": si se rechazan cuentan como
+ * fallo de cache, de modo que con Redis caido se va directo a Mongo sin esperar sus timeouts.
+ * Las escrituras no se limitan, porque descartarlas dejaria entradas obsoletas en el hash.
+ * Cada comando se mide como etapa "redis" de user.stage.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "cache.enabled", havingValue = "true")
+public class UserRedisCache {
+
+    public static final String DNI_KEY_PREFIX = "UserRedis:dni:";
+    public static final String RESUME_TOKEN_KEY = "UserRedis:changeStream:resumeToken";
+    static final String NEGATIVE_MARKER = "-";
+    static final String REDIS_CIRCUIT = "userRedis";
+
+    // Marca el snapshot como completo solo si nadie lo invalido mientras se reconstruia.
+    // ARGV[2], si viene, es el tiempo de vida de la marca en milisegundos (entradas con TTL)
+    private static final RedisScript<Long> COMPLETE_SNAPSHOT_SCRIPT = RedisScript.of(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then "
+                    + "if ARGV[2] then redis.call('SET', KEYS[2], ARGV[1], 'PX', ARGV[2]) "
+                    + "else redis.call('SET', KEYS[2], ARGV[1]) end "
+                    + "return 1 end "
+                    + "return 0",
+            Long.class);
+
+    private final UserRedisLayout layout;
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final Duration negativeTtl;
+    private final AdaptiveConcurrencyLimiter redisLimiter;
+    private final CircuitBreaker redisBreaker;
+    private final StageMetrics stageMetrics;
+    // Inicio de cada reconstruccion de este nodo, para acotar la marca de snapshot cuando las entradas expiran
+    private final Map<Long, Long> snapshotStarts = new ConcurrentHashMap<>();
+
+    public UserRedisCache(UserRedisLayout layout,
+                          ReactiveStringRedisTemplate redisTemplate,
+                          @Value("${cache.dni.negative-ttl:30s}") Duration negativeTtl,
+                          @Qualifier("redisLimiter") AdaptiveConcurrencyLimiter redisLimiter,
+                          CircuitBreakerRegistry circuitBreakerRegistry,
+                          StageMetrics stageMetrics) {
+        this.stageMetrics = stageMetrics;
+        this.redisLimiter = redisLimiter;
+        this.redisBreaker = circuitBreakerRegistry.circuitBreaker(REDIS_CIRCUIT);
+        this.layout = layout;
+        this.redisTemplate = redisTemplate;
+        this.negativeTtl = negativeTtl;
+    }
+
+    public Mono<User> get(String userId) {
+        return read("get", layout.get(userId))
+                .onErrorResume(e -> logFailure("get", LogSafe.value(userId), e));
+    }
+
+    /**
+     * Un solo HMGET para todos los ids; la lista conserva el orden y trae null en los fallos.
+     * Si Redis falla, todos cuentan como fallos.
+     */
+    public Mono<List<User>> getAll(List<String> userIds) {
+        return read("getAll", layout.getAll(userIds))
+                .onErrorResume(e -> logFailure("multiGet", userIds.size() + " users", e))
+                .defaultIfEmpty(Collections.nCopies(userIds.size(), null));
+    }
+
+    /**
+     * Resuelve los DNI con un MGET sobre el indice y un HMGET sobre el hash.
+     * Por cada DNI: usuario, Optional vacio si se sabe que no existe, o null si no esta en cache.
+     */
+    public Mono<List<Optional<User>>> findAllByDni(List<String> identityDnis) {
+        List<String> keys = identityDnis.stream().map(UserRedisCache::dniKey).collect(Collectors.toList());
+        return read("findAllByDni", redisTemplate.opsForValue().multiGet(keys))
+                .onErrorResume(e -> logFailure("dni multiGet", identityDnis.size() + " dnis", e))
+                .defaultIfEmpty(Collections.nCopies(keys.size(), null))
+                .flatMap(ids -> {
+                    List<String> cachedIds = ids.stream()
+                            .filter(id -> id != null && !NEGATIVE_MARKER.equals(id))
+                            .collect(Collectors.toList());
+                    Mono<List<User>> users = cachedIds.isEmpty() ? Mono.just(Collections.emptyList()) : getAll(cachedIds);
+                    return users.map(found -> {
+                        List<Optional<User>> result = new ArrayList<>(ids.size());
+                        int next = 0;
+                        for (int i = 0; i < ids.size(); i++) {
+                            String id = ids.get(i);
+                            if (id == null) {
+                                result.add(null);
+                            } else if (NEGATIVE_MARKER.equals(id)) {
+                                result.add(Optional.empty());
+                            } else {
+                                // Indice presente pero entrada del hash ausente o con otro DNI: se trata como fallo
+                                User user = found.get(next++);
+                                boolean current = user != null && identityDnis.get(i).equals(user.getIdentityDni());
+                                result.add(current ? Optional.of(user) : null);
+                            }
+                        }
+                        return result;
+                    });
+                });
+    }
+
+    /**
+     * Recorre todas las entradas (HSCAN o SSCAN + MGET por bucket) emitiendo los usuarios a medida que llegan.
+     */
+    public Flux<User> scanAll() {
+        return stageMetrics.flux(StageMetrics.REDIS, "scanAll", layout.scanAll());
+    }
+
+    /**
+     * Escritura directa (write-through) de un usuario y de su entrada en el indice DNI.
+     * Si falla se borra la entrada anterior, para que no se siga sirviendo despues de la escritura en Mongo.
+     */
+    public Mono<Void> put(User user) {
+        return timed("put", layout.putAll(Map.of(user.getId(), user)))
+                .then(indexDni(user))
+                .onErrorResume(e -> invalidateAfterFailure("put", user.getId(), e)
+                        .then(evictAfterFailure("put", List.of(user.getId()))));
+    }
+
+    /**
+     * Todo el lote de una vez (un HSET o los SET de cada bucket en pipeline) y luego sus DNI.
+     */
+    public Mono<Void> putAll(Collection<User> users) {
+        if (users.isEmpty()) {
+            return Mono.empty();
+        }
+        Map<String, User> byId = users.stream()
+                .collect(Collectors.toMap(User::getId, Function.identity(), (a, b) -> b));
+        Map<String, String> dniIndex = users.stream()
+                .collect(Collectors.toMap(user -> dniKey(user.getIdentityDni()), User::getId, (a, b) -> b));
+        return timed("putAll", layout.putAll(byId))
+                .then(timed("indexDnis", layout.indexDnis(dniIndex)))
+                .onErrorResume(e -> invalidateAfterFailure("putAll", users.size() + " users", e)
+                        .then(evictAfterFailure("putAll", new ArrayList<>(byId.keySet()))));
+    }
+
+    /**
+     * Borra la entrada del hash y su DNI (delete-on-write).
+     */
+    public Mono<Void> remove(User user) {
+        return timed("remove", layout.removeAll(List.of(user.getId())))
+                .then(removeDni(user.getIdentityDni()))
+                .onErrorResume(e -> invalidateAfterFailure("remove", user.getId(), e));
+    }
+
+    /**
+     * Borra varias entradas: las lee para conocer sus DNI y borra a la vez las entradas y los DNI.
+     */
+    public Mono<Void> removeAll(Collection<String> userIds) {
+        if (userIds.isEmpty()) {
+            return Mono.empty();
+        }
+        List<String> ids = new ArrayList<>(userIds);
+        return timed("getAll", layout.getAll(ids))
+                .flatMap(users -> {
+                    List<String> dniKeys = users.stream()
+                            .filter(user -> user != null && user.getIdentityDni() != null)
+                            .map(user -> dniKey(user.getIdentityDni()))
+                            .collect(Collectors.toList());
+                    Mono<Long> removeDnis = dniKeys.isEmpty() ? Mono.just(0L)
+                            : timed("removeDnis", redisTemplate.delete(dniKeys.toArray(new String[0])));
+                    return Mono.when(timed("removeAll", layout.removeAll(ids)), removeDnis);
+                })
+                .onErrorResume(e -> invalidateAfterFailure("removeAll", ids.size() + " users", e));
+    }
+
+    /**
+     * Vacia las entradas y el snapshot; las lecturas volveran a llenarlo desde Mongo.
+     */
+    public Mono<Void> clear() {
+        return timed("clear", layout.clear())
+                .then(invalidateSnapshot())
+                .onErrorResume(e -> logFailure("clear", "users", e));
+    }
+
+    /**
+     * Ultimo resume token aplicado del change stream de users (JSON), o vacio si no hay.
+     */
+    public Mono<String> loadResumeToken() {
+        return timed("loadResumeToken", redisTemplate.opsForValue().get(RESUME_TOKEN_KEY));
+    }
+
+    public Mono<Void> saveResumeToken(String token) {
+        return timed("saveResumeToken", token == null
+                ? redisTemplate.delete(RESUME_TOKEN_KEY).then()
+                : redisTemplate.opsForValue().set(RESUME_TOKEN_KEY, token).then());
+    }
+
+    /**
+     * Mono vacio: el DNI no esta en cache. Optional vacio: se sabe que el DNI no existe.
+     */
+    public Mono<Optional<User>> findByDni(String identityDni) {
+        return read("findByDni", layout.findByDni(dniKey(identityDni), NEGATIVE_MARKER))
+                // Indice desactualizado (el DNI cambio fuera del servicio): se trata como fallo
+                .filter(user -> user.isEmpty() || identityDni.equals(user.get().getIdentityDni()))
+                .onErrorResume(e -> logFailure("dni lookup", LogSafe.dni(identityDni), e));
+    }
+
+    public Mono<Void> indexDni(User user) {
+        return timed("indexDni", layout.indexDnis(Map.of(dniKey(user.getIdentityDni()), user.getId())))
+                .onErrorResume(e -> logFailure("dni index", LogSafe.dni(user.getIdentityDni()), e));
+    }
+
+    public Mono<Void> markMissingDni(String identityDni) {
+        return timed("markMissingDni", redisTemplate.opsForValue().set(dniKey(identityDni), NEGATIVE_MARKER, negativeTtl))
+                .then()
+                .onErrorResume(e -> logFailure("dni negative", LogSafe.dni(identityDni), e));
+    }
+
+    public Mono<Void> removeDni(String identityDni) {
+        return timed("removeDni", redisTemplate.delete(dniKey(identityDni)))
+                .then()
+                .onErrorResume(e -> logFailure("dni remove", LogSafe.dni(identityDni), e));
+    }
+
+    /**
+     * true solo cuando el hash fue reconstruido por completo y ninguna escritura fallida lo invalido despues.
+     */
+    public Mono<Boolean> isSnapshotComplete() {
+        return timed("isSnapshotComplete", redisTemplate.hasKey(layout.snapshotKey()))
+                .onErrorResume(e -> logFailure("snapshot check", layout.snapshotKey(), e).thenReturn(false));
+    }
+
+    /**
+     * Inicia una reconstruccion y devuelve su version; -1 si Redis no esta disponible.
+     */
+    public Mono<Long> beginSnapshot() {
+        return redisTemplate.opsForValue().increment(layout.snapshotVersionKey())
+                .doOnNext(version -> {
+                    if (layout.snapshotTtl() != null) {
+                        long now = System.nanoTime();
+                        // Las reconstrucciones que nunca terminaron ya no pueden marcarse: se olvidan
+                        snapshotStarts.values().removeIf(start -> now - start > layout.snapshotTtl().toNanos());
+                        snapshotStarts.put(version, now);
+                    }
+                })
+                .onErrorResume(e -> logFailure("snapshot begin", layout.snapshotVersionKey(), e).thenReturn(-1L));
+    }
+
+    public Mono<Boolean> completeSnapshot(long version) {
+        if (version < 0) {
+            return Mono.just(false);
+        }
+        List<String> args = new ArrayList<>(List.of(String.valueOf(version)));
+        Duration snapshotTtl = layout.snapshotTtl();
+        if (snapshotTtl != null) {
+            // La marca no puede durar mas que la primera entrada escrita por la reconstruccion
+            Long started = snapshotStarts.remove(version);
+            long remaining = started == null ? 0 : snapshotTtl.toMillis() - (System.nanoTime() - started) / 1_000_000;
+            if (remaining <= 0) {
+                return Mono.just(false);
+            }
+            args.add(String.valueOf(remaining));
+        }
+        return redisTemplate.execute(COMPLETE_SNAPSHOT_SCRIPT,
+                        Arrays.asList(layout.snapshotVersionKey(), layout.snapshotKey()), args)
+                .next()
+                .map(updated -> updated == 1L)
+                .onErrorResume(e -> logFailure("snapshot complete", layout.snapshotKey(), e).thenReturn(false));
+    }
+
+    /**
+     * Sube la version y borra la marca: findAll volvera a Mongo y cualquier reconstruccion en curso no se marcara completa.
+     */
+    public Mono<Void> invalidateSnapshot() {
+        return redisTemplate.opsForValue().increment(layout.snapshotVersionKey())
+                .then(redisTemplate.delete(layout.snapshotKey()))
+                .then()
+                .onErrorResume(e -> logFailure("snapshot invalidate", layout.snapshotKey(), e));
+    }
+
+    private <T> Mono<T> read(String operation, Mono<T> call) {
+        return stageMetrics.mono(StageMetrics.REDIS, operation, redisLimiter.mono(call))
+                .transformDeferred(CircuitBreakerOperator.of(redisBreaker))
+                // Circuito abierto o limite de concurrencia lleno: fallo de cache silencioso, sin registrar cada
+                // llamada (en sobrecarga llenaria la cola de logs); los rechazos cuentan en user.concurrency.rejected
+                .onErrorResume(CallNotPermittedException.class, e -> Mono.empty())
+                .onErrorResume(ConcurrencyLimitExceededException.class, e -> Mono.empty());
+    }
+
+    // Escrituras y marcas del snapshot: sin limite ni circuito, solo se miden
+    private <T> Mono<T> timed(String operation, Mono<T> call) {
+        return stageMetrics.mono(StageMetrics.REDIS, operation, call);
+    }
+
+    private static String dniKey(String identityDni) {
+        return DNI_KEY_PREFIX + identityDni;
+    }
+
+    private Mono<Void> invalidateAfterFailure(String operation, Object target, Throwable e) {
+        // El hash pudo quedar a medio escribir: deja de considerarse un snapshot completo
+        return logFailure(operation, target, e).then(invalidateSnapshot());
+    }
+
+    // Las entradas que no se pudieron reescribir se borran para que la siguiente lectura vaya a Mongo (en la
+    // estructura hash no expiran nunca). Best effort, por el mismo limite y circuito que las lecturas
+    private Mono<Void> evictAfterFailure(String operation, List<String> userIds) {
+        return read("evict", layout.removeAll(userIds))
+                .onErrorResume(e -> logFailure(operation + " evict", userIds.size() + " users", e));
+    }
+
+    private <T> Mono<T> logFailure(String operation, Object target, Throwable e) {
+        log.warn("redis {} failed for {}: {}", operation, target, e.getMessage());
+        return Mono.empty();
+    }
+}
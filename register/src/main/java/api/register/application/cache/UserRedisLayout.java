@@ -0,0 +1,58 @@
+package api.register.application.cache;
+
+import api.register.domain.User;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Como se guardan los usuarios en Redis (cache.layout): un solo hash "UserRedis" o una clave por usuario
+ * repartida en buckets. UserRedisCache aplica encima las metricas, el limite, el circuito y el manejo de fallos;
+ * aqui solo estan los comandos, que pueden fallar.
+ */
+public interface UserRedisLayout {
+
+    Mono<User> get(String userId);
+
+    /**
+     * Conserva el orden de userIds, con null para los que no estan.
+     */
+    Mono<List<User>> getAll(List<String> userIds);
+
+    /**
+     * Resuelve la clave del indice DNI: vacio si no esta en cache, Optional vacio si contiene el marcador negativo.
+     */
+    Mono<Optional<User>> findByDni(String dniKey, String negativeMarker);
+
+    Flux<User> scanAll();
+
+    Mono<Void> putAll(Map<String, User> users);
+
+    /**
+     * Escribe las entradas clave DNI -> id del indice secundario.
+     */
+    Mono<Void> indexDnis(Map<String, String> dniIndex);
+
+    Mono<Void> removeAll(List<String> userIds);
+
+    /**
+     * Borra todos los usuarios de esta estructura.
+     */
+    Mono<Void> clear();
+
+    /**
+     * Marca de snapshot completo de findAll y su contador de versiones, propios de cada estructura.
+     */
+    String snapshotKey();
+
+    String snapshotVersionKey();
+
+    /**
+     * Cuanto puede durar la marca de snapshot desde que empezo la reconstruccion; null si las entradas no expiran.
+     */
+    Duration snapshotTtl();
+}
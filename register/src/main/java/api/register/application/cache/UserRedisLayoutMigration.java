@@ -0,0 +1,85 @@
+package api.register.application.cache;
+
+import api.register.domain.User;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Paso de la estructura anterior (el hash "UserRedis") a la de buckets, cuando cache.layout es sharded.
+ *
+ * El hash no se copia: dejo de recibir escrituras y borrados al cambiar de estructura, asi que copiarlo podria
+ * reponer versiones viejas o usuarios ya borrados. Se descarta y las lecturas repueblan los buckets desde Mongo.
+ * Se recorre con HSCAN y se vacia por lotes con HDEL, en lugar de un DEL O(N) que bloquearia Redis; al terminar
+ * se borran el hash y su marca de snapshot.
+ * Es idempotente: si se interrumpe, el siguiente arranque continua con lo que quede en el hash.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = {"cache.enabled", "cache.sharded.migrate-legacy"}, havingValue = "true")
+public class UserRedisLayoutMigration {
+
+    private final UserRedisLayout layout;
+    private final ReactiveHashOperations<String, String, User> hashOperations;
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final int batchSize;
+    private Disposable migration;
+
+    public UserRedisLayoutMigration(UserRedisLayout layout,
+                                    ReactiveHashOperations<String, String, User> hashOperations,
+                                    ReactiveStringRedisTemplate redisTemplate,
+                                    @Value("${cache.batch-size:500}") int batchSize) {
+        this.layout = layout;
+        this.hashOperations = hashOperations;
+        this.redisTemplate = redisTemplate;
+        this.batchSize = batchSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (layout instanceof ShardedUserRedisLayout) {
+            migration = migrate()
+                    .subscribe(removed -> {
+                        if (removed > 0) {
+                            log.info("dropped {} users of the legacy {} hash, the sharded layout reloads them from Mongo",
+                                    removed, HashUserRedisLayout.USERS_KEY);
+                        }
+                    }, e -> log.warn("cache layout migration stopped: {}", e.getMessage()));
+        }
+    }
+
+    @PreDestroy
+    public void cancel() {
+        if (migration != null) {
+            migration.dispose();
+        }
+    }
+
+    /**
+     * Vacia y borra el hash anterior; devuelve cuantos usuarios quito.
+     */
+    Mono<Long> migrate() {
+        return hashOperations.scan(HashUserRedisLayout.USERS_KEY, ScanOptions.scanOptions().count(batchSize).build())
+                .map(Map.Entry::getKey)
+                .buffer(batchSize)
+                .concatMap(ids -> hashOperations.remove(HashUserRedisLayout.USERS_KEY, ids.toArray()))
+                .reduce(0L, Long::sum)
+                .flatMap(removed -> Flux.fromIterable(List.of(HashUserRedisLayout.USERS_KEY,
+                                HashUserRedisLayout.SNAPSHOT_KEY, HashUserRedisLayout.SNAPSHOT_VERSION_KEY))
+                        .concatMap(redisTemplate::delete)
+                        .then(Mono.just(removed)));
+    }
+}
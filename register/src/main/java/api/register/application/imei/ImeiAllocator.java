@@ -0,0 +1,155 @@
+package api.register.application.imei;
+
+import api.register.domain.ImeiSequenceRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Genera IMEI unicos de 15 digitos: TAC (8) + numero de serie (6) + digito de control Luhn.
+ *
+ * Cada nodo reserva en Mongo bloques de blockSize posiciones del contador global y los reparte
+ * localmente sin bloqueos; la posicion p corresponde al TAC p / 1000000 y al serie p % 1000000.
+ * El siguiente bloque se pide cuando el actual entra en su ultimo 20%, para no esperar a Mongo.
+ */
+@Slf4j
+@Component
+public class ImeiAllocator {
+
+    static final int IMEI_LENGTH = 15;
+    static final long SERIALS_PER_TAC = 1_000_000L;
+
+    private final ImeiSequenceRepository imeiSequenceRepository;
+    private final char[][] tacs;
+    private final long blockSize;
+
+    private final AtomicReference<Block> current = new AtomicReference<>(Block.EMPTY);
+    private final AtomicReference<Block> spare = new AtomicReference<>();
+    private final AtomicReference<Mono<Block>> reserving = new AtomicReference<>();
+
+    private final Counter allocated;
+    private final Counter reserved;
+    private final Timer reserveTimer;
+
+    public ImeiAllocator(ImeiSequenceRepository imeiSequenceRepository,
+                         @Value("${user.imei.tacs:35328945}") List<String> tacs,
+                         @Value("${user.imei.block-size:1000}") long blockSize,
+                         MeterRegistry meterRegistry) {
+        if (tacs.isEmpty() || tacs.stream().anyMatch(tac -> !tac.matches("\\d{8}"))) {
+            throw new IllegalArgumentException("user.imei.tacs must be a list of 8-digit TACs: " + tacs);
+        }
+        if (blockSize <= 0 || SERIALS_PER_TAC % blockSize != 0) {
+            throw new IllegalArgumentException("user.imei.block-size must divide " + SERIALS_PER_TAC + ": " + blockSize);
+        }
+        this.imeiSequenceRepository = imeiSequenceRepository;
+        this.tacs = tacs.stream().map(String::toCharArray).toArray(char[][]::new);
+        this.blockSize = blockSize;
+        this.allocated = meterRegistry.counter("user.imei.allocated");
+        this.reserved = meterRegistry.counter("user.imei.blocks.reserved");
+        this.reserveTimer = meterRegistry.timer("user.imei.block.reserve");
+        Gauge.builder("user.imei.block.remaining", current, ref -> ref.get().remaining())
+                .register(meterRegistry);
+    }
+
+    public Mono<String> allocate() {
+        return Mono.defer(() -> {
+            Block block = current.get();
+            long position = block.cursor.getAndIncrement();
+            if (position < block.end) {
+                if (position == block.prefetchAt) {
+                    reserve().subscribe(next -> { }, e -> { });
+                }
+                allocated.increment();
+                return Mono.just(format(position));
+            }
+            // Bloque agotado: se pasa al de reserva o se espera a la reserva en curso
+            Block next = spare.getAndSet(null);
+            if (next != null) {
+                if (!current.compareAndSet(block, next)) {
+                    spare.compareAndSet(null, next);
+                }
+                return allocate();
+            }
+            return reserve().then(allocate());
+        });
+    }
+
+    // Una sola reserva en curso por nodo; el bloque obtenido queda como reserva hasta que se agote el actual
+    private Mono<Block> reserve() {
+        return reserving.updateAndGet(inFlight -> inFlight != null ? inFlight : Mono.defer(() -> {
+                    Timer.Sample sample = Timer.start();
+                    return imeiSequenceRepository.reserve(blockSize)
+                            .doFinally(signal -> sample.stop(reserveTimer));
+                })
+                .map(start -> new Block(start, start + blockSize))
+                .doOnNext(block -> {
+                    spare.set(block);
+                    reserved.increment();
+                    log.debug("imei block reserved [{}, {})", block.start, block.end);
+                })
+                .doOnError(e -> log.warn("imei block reservation failed: {}", e.getMessage()))
+                .doFinally(signal -> reserving.set(null))
+                .cache());
+    }
+
+    String format(long position) {
+        int tacIndex = (int) (position / SERIALS_PER_TAC);
+        if (tacIndex >= tacs.length) {
+            throw new IllegalStateException("IMEI serial range exhausted for configured TACs");
+        }
+        char[] imei = new char[IMEI_LENGTH];
+        System.arraycopy(tacs[tacIndex], 0, imei, 0, 8);
+        long serial = position % SERIALS_PER_TAC;
+        for (int i = 13; i >= 8; i--) {
+            imei[i] = (char) ('0' + serial % 10);
+            serial /= 10;
+        }
+        imei[14] = (char) ('0' + luhnCheckDigit(imei));
+        return new String(imei);
+    }
+
+    // Luhn sobre los 14 primeros digitos: se duplican los de posicion impar (contando desde 0 por la izquierda)
+    static int luhnCheckDigit(char[] digits) {
+        int sum = 0;
+        for (int i = 0; i < IMEI_LENGTH - 1; i++) {
+            int digit = digits[i] - '0';
+            if ((i & 1) == 1) {
+                digit *= 2;
+                if (digit > 9) {
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+        }
+        return (10 - sum % 10) % 10;
+    }
+
+    private static final class Block {
+        static final Block EMPTY = new Block(0, 0);
+
+        private final long start;
+        private final long end;
+        private final long prefetchAt;
+        private final AtomicLong cursor;
+
+        Block(long start, long end) {
+            this.start = start;
+            this.end = end;
+            this.prefetchAt = end - (end - start) / 5;
+            this.cursor = new AtomicLong(start);
+        }
+
+        long remaining() {
+            return Math.max(0, end - cursor.get());
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package api.register.application.limit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limite de llamadas concurrentes a un almacen (Mongo, Redis) que se ajusta con la latencia observada (AIMD).
+ *
+ * Cada llamada que termina por debajo de latencyThreshold sube el limite en 1/limite (+1 por ventana completa),
+ * siempre que se este usando al menos la mitad; una llamada lenta o un timeout lo multiplica por BACKOFF_RATIO.
+ * Las llamadas que superan el limite se rechazan al instante con ConcurrencyLimitExceededException,
+ * de modo que la sobrecarga se descarta en lugar de encolarse.
+ */
+@Slf4j
+public class AdaptiveConcurrencyLimiter {
+
+    static final double BACKOFF_RATIO = 0.9;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Counter rejected;
+    private final Counter decreased;
+    private volatile double limit;
+
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit,
+                                      Duration latencyThreshold, MeterRegistry meterRegistry) {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("concurrency limits for " + name
+                    + " must satisfy 1 <= min <= initial <= max: " + minLimit + ", " + initialLimit + ", " + maxLimit);
+        }
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+        this.limit = initialLimit;
+        this.rejected = meterRegistry.counter("user.concurrency.rejected", "store", name);
+        this.decreased = meterRegistry.counter("user.concurrency.decreased", "store", name);
+        Gauge.builder("user.concurrency.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                .tag("store", name)
+                .register(meterRegistry);
+        Gauge.builder("user.concurrency.inflight", inFlight, AtomicInteger::get)
+                .tag("store", name)
+                .register(meterRegistry);
+    }
+
+    public <T> Mono<T> mono(Mono<T> call) {
+        return Mono.defer(() -> {
+            if (!tryAcquire()) {
+                return Mono.error(rejection());
+            }
+            Permit permit = new Permit();
+            return call.doOnEach(signal -> {
+                        if (signal.isOnComplete() || signal.isOnError()) {
+                            permit.release(signal.getType());
+                        }
+                    })
+                    .doOnCancel(() -> permit.release(SignalType.CANCEL));
+        });
+    }
+
+    public <T> Flux<T> flux(Flux<T> call) {
+        return Flux.defer(() -> {
+            if (!tryAcquire()) {
+                return Flux.error(rejection());
+            }
+            Permit permit = new Permit();
+            return call.doOnEach(signal -> {
+                        if (signal.isOnComplete() || signal.isOnError()) {
+                            permit.release(signal.getType());
+                        }
+                    })
+                    .doOnCancel(() -> permit.release(SignalType.CANCEL));
+        });
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private ConcurrencyLimitExceededException rejection() {
+        rejected.increment();
+        return new ConcurrencyLimitExceededException(name, (int) limit);
+    }
+
+    // Se libera antes de propagar la señal, para que quien espera el resultado ya vea el permiso devuelto
+    private final class Permit {
+
+        private final long start = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        // Solo la lentitud cuenta como congestion, incluida la cancelacion por timeout del TimeLimiter.
+        // Los errores rapidos (duplicados, version) y las cancelaciones rapidas no mueven el limite
+        void release(SignalType signal) {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            int used = inFlight.getAndDecrement();
+            if (System.nanoTime() - start > latencyThresholdNanos) {
+                decrease();
+            } else if (signal == SignalType.ON_COMPLETE && used * 2 >= limit) {
+                increase();
+            }
+        }
+    }
+
+    private synchronized void increase() {
+        limit = Math.min(maxLimit, limit + 1 / limit);
+    }
+
+    private synchronized void decrease() {
+        double reduced = Math.max(minLimit, limit * BACKOFF_RATIO);
+        if (reduced < limit) {
+            log.debug("concurrency limit for {} reduced to {}", name, (int) reduced);
+            decreased.increment();
+        }
+        limit = reduced;
+    }
+}
@@ -0,0 +1,11 @@
+package api.register.application.limit;
+
+/**
+ * La llamada se rechazo sin ejecutarse porque el almacen ya tiene tantas llamadas en curso como su limite actual.
+ */
+public class ConcurrencyLimitExceededException extends RuntimeException {
+
+    public ConcurrencyLimitExceededException(String name, int limit) {
+        super("concurrency limit " + limit + " reached for " + name);
+    }
+}
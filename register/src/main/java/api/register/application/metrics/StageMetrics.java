@@ -0,0 +1,132 @@
+package api.register.application.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tiempos por etapa de una peticion (servicio, Redis, Mongo) y aciertos de cache por operacion.
+ *
+ * Todas las etapas comparten el timer "user.stage" con etiquetas stage, operation y outcome; operation es el
+ * metodo del servicio, el comando de Redis o el metodo del repositorio, nunca un id, para mantener baja la
+ * cardinalidad. La etapa del controlador es el http.server.requests de Spring.
+ * Las llamadas a Mongo y Redis se cuentan ademas en el StoreCalls de la peticion, si el contexto trae uno.
+ */
+@Component
+public class StageMetrics {
+
+    public static final String STAGE_TIMER = "user.stage";
+    public static final String CACHE_REQUESTS = "user.cache.requests";
+    public static final String SERVICE = "service";
+    public static final String REDIS = "redis";
+    public static final String MONGO = "mongo";
+    public static final String LOCAL = "local";
+
+    private final MeterRegistry meterRegistry;
+
+    public StageMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public <T> Mono<T> mono(String stage, String operation, Mono<T> call) {
+        return Mono.deferContextual(context -> {
+            StoreCalls.count(context, stage);
+            Measurement measurement = new Measurement(stage, operation);
+            return call.doOnSuccess(value -> measurement.stop("success"))
+                    .doOnError(e -> measurement.stop("error"))
+                    .doOnCancel(() -> measurement.stop("cancelled"));
+        });
+    }
+
+    public <T> Flux<T> flux(String stage, String operation, Flux<T> call) {
+        return Flux.deferContextual(context -> {
+            StoreCalls.count(context, stage);
+            Measurement measurement = new Measurement(stage, operation);
+            return call.doOnComplete(() -> measurement.stop("success"))
+                    .doOnError(e -> measurement.stop("error"))
+                    .doOnCancel(() -> measurement.stop("cancelled"));
+        });
+    }
+
+    /**
+     * Suma aciertos y fallos de un nivel de cache (local, redis) para una operacion.
+     */
+    public void cacheResult(String cache, String operation, int hits, int misses) {
+        if (hits > 0) {
+            meterRegistry.counter(CACHE_REQUESTS, "cache", cache, "operation", operation, "result", "hit")
+                    .increment(hits);
+        }
+        if (misses > 0) {
+            meterRegistry.counter(CACHE_REQUESTS, "cache", cache, "operation", operation, "result", "miss")
+                    .increment(misses);
+        }
+    }
+
+    public void cacheResult(String cache, String operation, boolean hit) {
+        cacheResult(cache, operation, hit ? 1 : 0, hit ? 0 : 1);
+    }
+
+    // Un Mono puede cancelarse despues de emitir su valor: solo cuenta la primera senal de fin
+    private final class Measurement {
+
+        private final String stage;
+        private final String operation;
+        private final Timer.Sample sample = Timer.start(meterRegistry);
+        private final AtomicBoolean stopped = new AtomicBoolean();
+
+        private Measurement(String stage, String operation) {
+            this.stage = stage;
+            this.operation = operation;
+        }
+
+        private void stop(String outcome) {
+            if (stopped.compareAndSet(false, true)) {
+                sample.stop(Timer.builder(STAGE_TIMER)
+                        .tag("stage", stage)
+                        .tag("operation", operation)
+                        .tag("outcome", outcome)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofMillis(1))
+                        .maximumExpectedValue(Duration.ofSeconds(30))
+                        .register(meterRegistry));
+            }
+        }
+    }
+
+    /**
+     * Llamadas a Mongo y Redis hechas durante una peticion; viaja en el contexto de Reactor.
+     */
+    public static final class StoreCalls {
+
+        private final AtomicInteger mongo = new AtomicInteger();
+        private final AtomicInteger redis = new AtomicInteger();
+
+        public Context putIn(Context context) {
+            return context.put(StoreCalls.class, this);
+        }
+
+        public int getMongo() {
+            return mongo.get();
+        }
+
+        public int getRedis() {
+            return redis.get();
+        }
+
+        static void count(ContextView context, String stage) {
+            if (!MONGO.equals(stage) && !REDIS.equals(stage)) {
+                return;
+            }
+            context.<StoreCalls>getOrEmpty(StoreCalls.class).ifPresent(calls ->
+                    (MONGO.equals(stage) ? calls.mongo : calls.redis).incrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package api.register.application.outbox;
+
+import api.register.domain.UserEvent;
+import api.register.domain.UserEventRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.ConnectableFlux;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Destino por defecto del outbox: las suscripciones SSE de /v1/user/events en todos los nodos.
+ *
+ * Solo el nodo con el lease publica, asi que cada lote se difunde como un unico mensaje JSON por Redis pub/sub
+ * y cada nodo lo reparte a sus suscriptores locales. Un suscriptor que se reconecta con la secuencia del ultimo
+ * evento recibido (Last-Event-ID) recibe primero desde Mongo los posteriores a ella y luego sigue en vivo;
+ * si no consume al ritmo de los eventos se le cierra la conexion para que se reconecte desde donde quedo.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = {"user.outbox.enabled", "user.outbox.sse.enabled"}, havingValue = "true")
+public class UserEventBroadcast implements UserEventSink {
+
+    public static final String CHANNEL = "UserEvents:broadcast";
+    private static final TypeReference<List<UserEvent>> BATCH = new TypeReference<>() { };
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final UserEventRepository userEventRepository;
+    private final ObjectMapper objectMapper;
+    private final int subscriberBuffer;
+    private final Sinks.Many<UserEvent> events = Sinks.many().multicast().directBestEffort();
+    private Disposable subscription;
+
+    public UserEventBroadcast(ReactiveStringRedisTemplate redisTemplate,
+                              UserEventRepository userEventRepository,
+                              ObjectMapper objectMapper,
+                              @Value("${user.outbox.sse.subscriber-buffer:10000}") int subscriberBuffer) {
+        this.redisTemplate = redisTemplate;
+        this.userEventRepository = userEventRepository;
+        this.objectMapper = objectMapper;
+        this.subscriberBuffer = subscriberBuffer;
+    }
+
+    @Override
+    public String name() {
+        return "sse";
+    }
+
+    @Override
+    public Mono<Void> publish(List<UserEvent> batch) {
+        return Mono.fromCallable(() -> objectMapper.writeValueAsString(batch))
+                .flatMap(json -> redisTemplate.convertAndSend(CHANNEL, json))
+                .then();
+    }
+
+    /**
+     * Eventos para un suscriptor, en vivo o a partir del evento siguiente a lastEventId si es una secuencia valida.
+     */
+    public Flux<UserEvent> stream(String lastEventId) {
+        Flux<UserEvent> live = events.asFlux().onBackpressureBuffer(subscriberBuffer);
+        Long after = sequence(lastEventId);
+        if (after == null) {
+            return live;
+        }
+        return Flux.defer(() -> {
+            // Lo que llegue en vivo mientras se lee Mongo queda retenido y se descarta si ya salio en la lectura
+            ConnectableFlux<UserEvent> pending = live.publish();
+            Disposable connection = pending.connect();
+            AtomicLong last = new AtomicLong(after);
+            return userEventRepository.findPublishedAfter(after)
+                    .doOnNext(event -> last.set(event.getSequence()))
+                    .concatWith(pending.filter(event -> event.getSequence() != null && event.getSequence() > last.get()))
+                    .doFinally(signal -> connection.dispose());
+        });
+    }
+
+    private static Long sequence(String lastEventId) {
+        if (lastEventId == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(lastEventId);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        // Igual que las invalidaciones del cache local: se reintenta en segundo plano si Redis no responde
+        subscription = Flux.defer(() -> redisTemplate.listenToChannel(CHANNEL))
+                .map(ReactiveSubscription.Message::getMessage)
+                .doOnError(e -> log.warn("user events channel error: {}", e.getMessage()))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)))
+                .subscribe(this::emit);
+    }
+
+    @PreDestroy
+    public void unsubscribe() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    void emit(String message) {
+        List<UserEvent> batch;
+        try {
+            batch = objectMapper.readValue(message, BATCH);
+        } catch (JsonProcessingException e) {
+            log.warn("discarding unreadable user events message: {}", e.getMessage());
+            return;
+        }
+        // Un solo hilo entrega los mensajes del canal: no hay emisiones concurrentes
+        batch.forEach(events::tryEmitNext);
+    }
+}
@@ -0,0 +1,19 @@
+package api.register.application.outbox;
+
+import api.register.domain.UserEvent;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Destino de los eventos del outbox (un broker, un webhook, las suscripciones SSE locales).
+ * UserOutboxPublisher entrega cada lote a todos los destinos, en orden, y solo lo marca como publicado cuando
+ * todos completaron: ante un fallo el lote se reenvia entero, de modo que un destino puede recibir duplicados
+ * y debe descartarlos por id de evento o por version del usuario.
+ */
+public interface UserEventSink {
+
+    String name();
+
+    Mono<Void> publish(List<UserEvent> events);
+}
@@ -0,0 +1,81 @@
+package api.register.application.outbox;
+
+import api.register.domain.User;
+import api.register.domain.UserEvent;
+import api.register.domain.UserEventRepository;
+import com.mongodb.MongoException;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Escritura de los eventos de usuario en el outbox (coleccion userEvents).
+ * UserService ejecuta cada escritura en users dentro de atomically y registra su evento con record, de modo que
+ * ambos documentos se confirman o se descartan juntos.
+ */
+@Component
+@ConditionalOnProperty(name = "user.outbox.enabled", havingValue = "true")
+public class UserOutbox {
+
+    private final UserEventRepository userEventRepository;
+    private final TransactionalOperator transaction;
+    private final int transactionRetries;
+
+    public UserOutbox(UserEventRepository userEventRepository,
+                      @Qualifier("userOutboxTransaction") TransactionalOperator transaction,
+                      @Value("${user.outbox.transaction-retries:3}") int transactionRetries) {
+        this.userEventRepository = userEventRepository;
+        this.transaction = transaction;
+        this.transactionRetries = transactionRetries;
+    }
+
+    /**
+     * Ejecuta write en una transaccion. Dos escrituras concurrentes sobre el mismo usuario chocan (WriteConflict,
+     * TransientTransactionError): se repite la transaccion completa, que vuelve a aplicar la comprobacion de version.
+     */
+    public <T> Mono<T> atomically(Mono<T> write) {
+        return transaction.transactional(write)
+                .retryWhen(Retry.max(transactionRetries)
+                        .filter(UserOutbox::isTransient)
+                        // Agotados los reintentos sale el error de Mongo, no un RetryExhaustedException
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+    }
+
+    public Mono<Void> record(UserEvent.Type type, User user) {
+        return recordAll(type, List.of(user));
+    }
+
+    public Mono<Void> recordAll(UserEvent.Type type, List<User> users) {
+        if (users.isEmpty()) {
+            return Mono.empty();
+        }
+        Instant now = Instant.now();
+        return userEventRepository.append(users.stream()
+                .map(user -> UserEvent.builder()
+                        .type(type)
+                        .userId(user.getId())
+                        .version(user.getVersion())
+                        .user(user)
+                        .occurredAt(now)
+                        .build())
+                .collect(Collectors.toList()));
+    }
+
+    static boolean isTransient(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoException
+                    && ((MongoException) cause).hasErrorLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
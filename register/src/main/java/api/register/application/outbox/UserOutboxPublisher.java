@@ -0,0 +1,120 @@
+package api.register.application.outbox;
+
+import api.register.domain.UserEvent;
+import api.register.domain.UserEventRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Vacia el outbox hacia los UserEventSink, con entrega al menos una vez y en orden de secuencia.
+ *
+ * Cada poll-interval la replica que tiene el lease (una sola a la vez, renovado antes de cada lote) lee hasta
+ * batch-size eventos pendientes, les asigna y guarda la secuencia de publicacion, los entrega a todos los destinos
+ * y los marca como publicados con un updateMulti; mientras los lotes salen llenos continua sin esperar.
+ * La secuencia se asigna al publicar y no al confirmar la escritura: un evento confirmado tarde (con un ObjectId
+ * menor que otros ya publicados) sale con un numero mayor, asi que quien reanuda desde una secuencia no lo pierde.
+ * Si un destino falla el lote queda pendiente y se reintenta en el siguiente ciclo, entero y con secuencias nuevas.
+ * Los publicados se borran por TTL pasado retention.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "user.outbox.enabled", havingValue = "true")
+public class UserOutboxPublisher {
+
+    private final UserEventRepository userEventRepository;
+    private final List<UserEventSink> sinks;
+    private final MeterRegistry meterRegistry;
+    private final int batchSize;
+    private final Duration pollInterval;
+    private final Duration leaseDuration;
+    private final Duration retention;
+    private final String owner = UUID.randomUUID().toString();
+    private Disposable polling;
+
+    public UserOutboxPublisher(UserEventRepository userEventRepository,
+                               ObjectProvider<UserEventSink> sinks,
+                               MeterRegistry meterRegistry,
+                               @Value("${user.outbox.batch-size:500}") int batchSize,
+                               @Value("${user.outbox.poll-interval:200ms}") Duration pollInterval,
+                               @Value("${user.outbox.lease:10s}") Duration leaseDuration,
+                               @Value("${user.outbox.retention:7d}") Duration retention) {
+        this.userEventRepository = userEventRepository;
+        this.sinks = sinks.orderedStream().collect(Collectors.toList());
+        this.meterRegistry = meterRegistry;
+        this.batchSize = batchSize;
+        this.pollInterval = pollInterval;
+        this.leaseDuration = leaseDuration;
+        this.retention = retention;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (sinks.isEmpty()) {
+            log.warn("user outbox has no sinks: events will be marked as published without being delivered");
+        } else {
+            log.info("user outbox publishing to {}", sinks.stream().map(UserEventSink::name).collect(Collectors.toList()));
+        }
+        polling = userEventRepository.ensureIndexes(retention)
+                .doOnError(e -> log.warn("user outbox indexes not created: {}", e.getMessage()))
+                .onErrorResume(e -> Mono.empty())
+                .thenMany(Flux.interval(Duration.ZERO, pollInterval))
+                .onBackpressureDrop()
+                .concatMap(tick -> drain()
+                        .onErrorResume(e -> {
+                            log.warn("user outbox publish failed: {}", e.getMessage());
+                            return Mono.just(0);
+                        }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (polling != null) {
+            polling.dispose();
+        }
+    }
+
+    /**
+     * Publica lotes mientras haya pendientes y este nodo tenga el lease; devuelve cuantos eventos publico.
+     */
+    Mono<Integer> drain() {
+        return publishBatch()
+                .expand(published -> published == batchSize ? publishBatch() : Mono.empty())
+                .reduce(0, Integer::sum);
+    }
+
+    private Mono<Integer> publishBatch() {
+        return userEventRepository.acquireLease(owner, leaseDuration)
+                .flatMap(leader -> !leader ? Mono.just(0) : userEventRepository.findPending(batchSize)
+                        .collectList()
+                        .flatMap(batch -> batch.isEmpty() ? Mono.just(0) : userEventRepository.assignSequences(batch)
+                                .thenMany(Flux.fromIterable(sinks).concatMap(sink -> publish(sink, batch)))
+                                .then(Mono.defer(() -> userEventRepository.markPublished(batch.stream()
+                                        .map(UserEvent::getId)
+                                        .collect(Collectors.toList()), Instant.now())))
+                                .thenReturn(batch.size())));
+    }
+
+    private Mono<Void> publish(UserEventSink sink, List<UserEvent> batch) {
+        return sink.publish(batch)
+                .doOnSuccess(done -> meterRegistry.counter("user.outbox.published", "sink", sink.name())
+                        .increment(batch.size()))
+                .doOnError(e -> meterRegistry.counter("user.outbox.failures", "sink", sink.name()).increment());
+    }
+}
@@ -0,0 +1,26 @@
+package api.register.application.queue;
+
+import api.register.domain.User;
+import lombok.*;
+
+import java.util.Set;
+
+/**
+ * Escritura aceptada mientras Mongo no estaba disponible, pendiente de aplicarse.
+ */
+@Data
+@ToString
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class PendingWrite
+{
+    public enum Operation { CREATE, UPDATE, PATCH, DELETE }
+
+    private String id;
+    private Operation operation;
+    private String userId;
+    private User user;
+    private Set<String> fields;
+    private long queuedAt;
+}
@@ -0,0 +1,224 @@
+package api.register.application.queue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Cola local y acotada de escrituras pendientes, respaldada por un diario en disco (una linea JSON por escritura)
+ * para no perderlas si el nodo se reinicia antes de que Mongo vuelva.
+ *
+ * Las escrituras se aplican en el orden en que llegaron; la reproduccion se detiene en la primera que
+ * vuelve a fallar por indisponibilidad y se reanuda en el siguiente intento.
+ *
+ * El diario contiene datos personales: vive en un directorio configurado expresamente (un volumen persistente,
+ * no el temporal del sistema) y solo el usuario del proceso puede leerlo.
+ */
+@Slf4j
+@Component
+public class PendingWriteQueue {
+
+    static final String JOURNAL_FILE = "register-pending-writes.jsonl";
+
+    private static final Set<PosixFilePermission> OWNER_ONLY_FILE = PosixFilePermissions.fromString("rw-------");
+    private static final Set<PosixFilePermission> OWNER_ONLY_DIRECTORY = PosixFilePermissions.fromString("rwx------");
+
+    private final Path journal;
+    private final int capacity;
+    private final ObjectMapper objectMapper;
+    private final Deque<PendingWrite> pending = new ArrayDeque<>();
+    private final AtomicBoolean replaying = new AtomicBoolean();
+    private final Counter enqueued;
+    private final Counter rejected;
+
+    public PendingWriteQueue(@Value("${user.write-queue.directory:}") String directory,
+                             @Value("${user.write-queue.capacity:10000}") int capacity,
+                             ObjectMapper objectMapper,
+                             MeterRegistry meterRegistry) {
+        if (directory == null || directory.isBlank()) {
+            throw new IllegalStateException("user.write-queue.directory is required: a durable data directory "
+                    + "for the pending write journal");
+        }
+        this.journal = Path.of(directory).resolve(JOURNAL_FILE);
+        this.capacity = capacity;
+        this.objectMapper = objectMapper;
+        this.enqueued = meterRegistry.counter("user.write-queue.enqueued");
+        this.rejected = meterRegistry.counter("user.write-queue.rejected");
+        Gauge.builder("user.write-queue.size", this, PendingWriteQueue::size)
+                .register(meterRegistry);
+        createJournal();
+        load();
+    }
+
+    /**
+     * Guarda la escritura en el diario (con sync) y en memoria; false si la cola esta llena.
+     * Hace E/S bloqueante: llamar desde un scheduler elastico.
+     */
+    public synchronized boolean offer(PendingWrite write) {
+        if (pending.size() >= capacity) {
+            rejected.increment();
+            return false;
+        }
+        try {
+            Files.write(journal, line(write), StandardOpenOption.CREATE, StandardOpenOption.APPEND,
+                    StandardOpenOption.DSYNC);
+        } catch (IOException e) {
+            log.error("pending write journal {} not writable: {}", journal, e.getMessage());
+            rejected.increment();
+            return false;
+        }
+        pending.addLast(write);
+        enqueued.increment();
+        return true;
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * Aplica en orden las escrituras pendientes con apply, que devuelve true si la escritura quedo resuelta
+     * (aplicada o descartada) y false si hay que reintentarla mas tarde. Devuelve cuantas se resolvieron.
+     * Si ya hay una reproduccion en curso no hace nada.
+     */
+    public Mono<Integer> replay(Function<PendingWrite, Mono<Boolean>> apply) {
+        return Mono.defer(() -> {
+            if (size() == 0 || !replaying.compareAndSet(false, true)) {
+                return Mono.just(0);
+            }
+            return Flux.fromIterable(snapshot())
+                    .concatMap(apply)
+                    .takeWhile(Boolean::booleanValue)
+                    .count()
+                    .publishOn(Schedulers.boundedElastic())
+                    .map(resolved -> {
+                        removeFirst(resolved.intValue());
+                        return resolved.intValue();
+                    })
+                    .doFinally(signal -> replaying.set(false));
+        });
+    }
+
+    private synchronized List<PendingWrite> snapshot() {
+        return new ArrayList<>(pending);
+    }
+
+    // Quita las escrituras resueltas y reescribe el diario de forma atomica con las que quedan
+    private synchronized void removeFirst(int resolved) {
+        if (resolved == 0) {
+            return;
+        }
+        for (int i = 0; i < resolved; i++) {
+            pending.pollFirst();
+        }
+        try {
+            Path rewritten = journal.resolveSibling(journal.getFileName() + ".tmp");
+            Files.deleteIfExists(rewritten);
+            createOwnerOnly(rewritten);
+            List<byte[]> lines = new ArrayList<>(pending.size());
+            for (PendingWrite write : pending) {
+                lines.add(line(write));
+            }
+            Files.write(rewritten, concat(lines), StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.DSYNC);
+            Files.move(rewritten, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // El diario conserva escrituras ya aplicadas; al reiniciar se reintentaran y fallaran como duplicadas
+            log.error("pending write journal {} could not be compacted: {}", journal, e.getMessage());
+        }
+    }
+
+    // Crea directorio y diario solo para el propietario; un diario anterior con permisos mas amplios se restringe
+    private void createJournal() {
+        try {
+            Path directory = journal.getParent();
+            if (!Files.isDirectory(directory)) {
+                Files.createDirectories(directory);
+                if (isPosix()) {
+                    Files.setPosixFilePermissions(directory, OWNER_ONLY_DIRECTORY);
+                }
+            }
+            if (!Files.exists(journal)) {
+                createOwnerOnly(journal);
+            } else if (isPosix()) {
+                Files.setPosixFilePermissions(journal, OWNER_ONLY_FILE);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("pending write journal " + journal + " could not be created", e);
+        }
+    }
+
+    private void createOwnerOnly(Path file) throws IOException {
+        if (isPosix()) {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(OWNER_ONLY_FILE));
+        } else {
+            Files.createFile(file);
+        }
+    }
+
+    private boolean isPosix() {
+        return journal.getFileSystem().supportedFileAttributeViews().contains("posix");
+    }
+
+    private void load() {
+        try {
+            for (String line : Files.readAllLines(journal, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    pending.addLast(objectMapper.readValue(line, PendingWrite.class));
+                } catch (IOException e) {
+                    log.warn("skipping unreadable pending write in {}: {}", journal, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("pending write journal " + journal + " not readable", e);
+        }
+        if (!pending.isEmpty()) {
+            log.info("{} pending writes recovered from {}", pending.size(), journal);
+        }
+    }
+
+    private byte[] line(PendingWrite write) {
+        try {
+            return (objectMapper.writeValueAsString(write) + "\n").getBytes(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] concat(List<byte[]> lines) {
+        int length = lines.stream().mapToInt(line -> line.length).sum();
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        for (byte[] line : lines) {
+            System.arraycopy(line, 0, bytes, offset, line.length);
+            offset += line.length;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,18 @@
+package api.register.application.queue;
+
+/**
+ * La escritura no se aplico todavia: quedo en la cola local y se aplicara cuando Mongo vuelva (202 Accepted).
+ */
+public class WriteQueuedException extends RuntimeException {
+
+    private final String pendingWriteId;
+
+    public WriteQueuedException(String pendingWriteId, Throwable cause) {
+        super("write queued as " + pendingWriteId + ": " + cause.getMessage(), cause);
+        this.pendingWriteId = pendingWriteId;
+    }
+
+    public String getPendingWriteId() {
+        return pendingWriteId;
+    }
+}
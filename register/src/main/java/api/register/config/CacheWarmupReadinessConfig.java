@@ -0,0 +1,57 @@
+package api.register.config;
+
+import api.register.application.cache.UserCacheWarmup;
+import com.netflix.appinfo.InstanceInfo.InstanceStatus;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.actuate.availability.ReadinessStateHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.AvailabilityState;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.cloud.netflix.eureka.EurekaInstanceConfigBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// La precarga del cache es parte de la readiness: readinessState informa REFUSING_TRAFFIC y Eureka STARTING
+// hasta que termina (UserCacheWarmup pasa el nodo a UP).
+// Reemplaza el indicador de Spring Boot (mismo nombre de bean). Spring Boot 2.7 no permite sacar un indicador del
+// grupo principal, asi que /actuator/health tambien informa OUT_OF_SERVICE (503) mientras dura la precarga
+@Configuration
+@ConditionalOnProperty(name = {"cache.enabled", "cache.warmup.enabled"}, havingValue = "true")
+public class CacheWarmupReadinessConfig {
+
+    // Antes de que exista ApplicationInfoManager y de que EurekaServiceRegistry registre el nodo con el estado
+    // inicial, sea cual sea el orden de creacion de los beans. Estatico para no adelantar esta configuracion
+    @Bean
+    public static BeanPostProcessor eurekaStartingStatus() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof EurekaInstanceConfigBean) {
+                    ((EurekaInstanceConfigBean) bean).setInitialStatus(InstanceStatus.STARTING);
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public ReadinessStateHealthIndicator readinessStateHealthIndicator(ApplicationAvailability availability,
+                                                                       UserCacheWarmup userCacheWarmup) {
+        return new ReadinessStateHealthIndicator(availability) {
+            @Override
+            protected AvailabilityState getState(ApplicationAvailability applicationAvailability) {
+                return userCacheWarmup.isFinished()
+                        ? super.getState(applicationAvailability)
+                        : ReadinessState.REFUSING_TRAFFIC;
+            }
+
+            @Override
+            protected void doHealthCheck(Health.Builder builder) throws Exception {
+                super.doHealthCheck(builder);
+                builder.withDetail("cacheWarmup", userCacheWarmup.details());
+            }
+        };
+    }
+}
@@ -0,0 +1,32 @@
+package api.register.config;
+
+import api.register.application.limit.AdaptiveConcurrencyLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+// Un limite adaptativo por almacen: la sobrecarga de Redis no consume el margen de Mongo y viceversa
+@Configuration
+public class ConcurrencyLimitConfig {
+
+    @Bean
+    public AdaptiveConcurrencyLimiter mongoLimiter(@Value("${user.limits.mongo.initial:20}") int initial,
+                                                   @Value("${user.limits.mongo.min:2}") int min,
+                                                   @Value("${user.limits.mongo.max:200}") int max,
+                                                   @Value("${user.limits.mongo.latency-threshold:250ms}") Duration latencyThreshold,
+                                                   MeterRegistry meterRegistry) {
+        return new AdaptiveConcurrencyLimiter("mongo", initial, min, max, latencyThreshold, meterRegistry);
+    }
+
+    @Bean
+    public AdaptiveConcurrencyLimiter redisLimiter(@Value("${user.limits.redis.initial:50}") int initial,
+                                                   @Value("${user.limits.redis.min:4}") int min,
+                                                   @Value("${user.limits.redis.max:500}") int max,
+                                                   @Value("${user.limits.redis.latency-threshold:50ms}") Duration latencyThreshold,
+                                                   MeterRegistry meterRegistry) {
+        return new AdaptiveConcurrencyLimiter("redis", initial, min, max, latencyThreshold, meterRegistry);
+    }
+}
@@ -0,0 +1,74 @@
+package api.register.config;
+
+import api.register.domain.User;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+
+/**
+ * Crea al arrancar el indice unico de imei declarado en User (auto-index-creation esta deshabilitado).
+ * Sin el, un IMEI repetido se insertaria sin error y UserService.create nunca pediria el siguiente numero; por eso
+ * no depende de SearchIndexCheck, que se puede deshabilitar. Si Mongo no responde se reintenta en segundo plano;
+ * si ya hay IMEIs repetidos el indice no se puede crear y queda registrado como ERROR.
+ */
+@Slf4j
+@Component
+public class ImeiIndexInitializer {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final MongoMappingContext mappingContext;
+    private Disposable creation;
+
+    public ImeiIndexInitializer(ReactiveMongoTemplate mongoTemplate, MongoMappingContext mappingContext) {
+        this.mongoTemplate = mongoTemplate;
+        this.mappingContext = mappingContext;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        creation = ensureIndex()
+                .subscribe(name -> log.info("imei unique index {} ready", name),
+                        e -> log.error("imei unique index could not be created, duplicate IMEIs are not rejected: {}",
+                                e.getMessage()));
+    }
+
+    @PreDestroy
+    public void cancel() {
+        if (creation != null) {
+            creation.dispose();
+        }
+    }
+
+    Mono<String> ensureIndex() {
+        return Flux.fromIterable(new MongoPersistentEntityIndexResolver(mappingContext).resolveIndexFor(User.class))
+                .filter(index -> User.IMEI_INDEX.equals(index.getIndexOptions().getString("name")))
+                .next()
+                .switchIfEmpty(Mono.error(new IllegalStateException("User declares no " + User.IMEI_INDEX + " index")))
+                .flatMap(this::create);
+    }
+
+    private Mono<String> create(IndexDefinition index) {
+        return Mono.defer(() -> mongoTemplate.indexOps(User.class).ensureIndex(index))
+                // Solo se reintenta si Mongo no esta disponible; un conflicto con los datos no se resuelve solo
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofMinutes(1))
+                        .filter(e -> e instanceof DataAccessResourceFailureException
+                                || e instanceof TransientDataAccessException)
+                        .doBeforeRetry(signal -> log.warn("imei index creation retrying: {}",
+                                signal.failure().getMessage())));
+    }
+}
@@ -0,0 +1,53 @@
+package api.register.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * Envuelve un serializador de Redis y registra el tamaño de cada valor escrito y leido
+ * ("user.redis.payload.bytes" por direccion y formato).
+ */
+public class MeteredRedisSerializer<T> implements RedisSerializer<T> {
+
+    public static final String PAYLOAD_BYTES = "user.redis.payload.bytes";
+
+    private final RedisSerializer<T> delegate;
+    private final DistributionSummary written;
+    private final DistributionSummary read;
+
+    public MeteredRedisSerializer(RedisSerializer<T> delegate, String format, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.written = summary("write", format, meterRegistry);
+        this.read = summary("read", format, meterRegistry);
+    }
+
+    @Override
+    public byte[] serialize(T value) throws SerializationException {
+        byte[] bytes = delegate.serialize(value);
+        if (bytes != null) {
+            written.record(bytes.length);
+        }
+        return bytes;
+    }
+
+    @Override
+    public T deserialize(byte[] bytes) throws SerializationException {
+        if (bytes != null) {
+            read.record(bytes.length);
+        }
+        return delegate.deserialize(bytes);
+    }
+
+    private static DistributionSummary summary(String direction, String format, MeterRegistry meterRegistry) {
+        return DistributionSummary.builder(PAYLOAD_BYTES)
+                .baseUnit("bytes")
+                .tag("direction", direction)
+                .tag("format", format)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(16.0)
+                .maximumExpectedValue(64.0 * 1024)
+                .register(meterRegistry);
+    }
+}
@@ -1,30 +1,85 @@
 package api.register.config;
 
+import api.register.application.cache.HashUserRedisLayout;
+import api.register.application.cache.ShardedUserRedisLayout;
+import api.register.application.cache.UserRedisLayout;
 import api.register.domain.User;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
 import org.springframework.data.redis.core.ReactiveHashOperations;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ReactiveValueOperations;
 import org.springframework.data.redis.serializer.GenericToStringSerializer;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.time.Duration;
+
 @Configuration
 @ConditionalOnProperty(name = "cache.enabled", havingValue = "true")
 public class RedisCacheConfig {
 
+    // cache.serializer: json | binary. El binario sigue leyendo las entradas JSON existentes.
+    // Se mide el tamaño de cada valor para comparar formatos y vigilar el umbral de compresion.
+    @Bean
+    public RedisSerializer<User> userRedisSerializer(@Value("${cache.serializer:json}") String format,
+                                                     @Value("${cache.compression-threshold:1024}") int compressionThreshold,
+                                                     MeterRegistry meterRegistry){
+        RedisSerializer<User> json = new Jackson2JsonRedisSerializer<>(User.class);
+        boolean binary = "binary".equalsIgnoreCase(format);
+        return new MeteredRedisSerializer<>(binary ? new UserBinaryRedisSerializer(json, compressionThreshold) : json,
+                binary ? "binary" : "json", meterRegistry);
+    }
+
     @Bean
-    public ReactiveHashOperations<String, String, User> hashOperations(ReactiveRedisConnectionFactory redisConnectionFactory){
+    public ReactiveHashOperations<String, String, User> hashOperations(ReactiveRedisConnectionFactory redisConnectionFactory,
+                                                                       RedisSerializer<User> userRedisSerializer){
         var template = new ReactiveRedisTemplate<>(
                 redisConnectionFactory,
                 RedisSerializationContext.<String, User>newSerializationContext(new StringRedisSerializer())
                         .hashKey(new GenericToStringSerializer<>(String.class))
-                        .hashValue(new Jackson2JsonRedisSerializer<>(User.class))
+                        .hashValue(userRedisSerializer)
                         .build()
         );
         return template.opsForHash();
     }
-}
\ No newline at end of file
+
+    // Valores sueltos serializados como User: una clave por usuario en la estructura por buckets
+    @Bean
+    public ReactiveValueOperations<String, User> userValueOperations(ReactiveRedisConnectionFactory redisConnectionFactory,
+                                                                     RedisSerializer<User> userRedisSerializer){
+        var template = new ReactiveRedisTemplate<>(
+                redisConnectionFactory,
+                RedisSerializationContext.<String, User>newSerializationContext(new StringRedisSerializer())
+                        .value(userRedisSerializer)
+                        .build()
+        );
+        return template.opsForValue();
+    }
+
+    // cache.layout: hash (el hash unico "UserRedis") | sharded (una clave con TTL por usuario, repartidas en buckets)
+    @Bean
+    public UserRedisLayout userRedisLayout(@Value("${cache.layout:hash}") String layout,
+                                           @Value("${cache.batch-size:500}") int scanCount,
+                                           @Value("${cache.sharded.buckets:64}") int buckets,
+                                           @Value("${cache.sharded.ttl:6h}") Duration ttl,
+                                           @Value("${cache.sharded.ttl-jitter:30m}") Duration ttlJitter,
+                                           @Value("${cache.sharded.read-concurrency:64}") int readConcurrency,
+                                           ReactiveHashOperations<String, String, User> hashOperations,
+                                           ReactiveValueOperations<String, User> userValueOperations,
+                                           ReactiveStringRedisTemplate redisTemplate,
+                                           RedisSerializer<User> userRedisSerializer){
+        if ("sharded".equalsIgnoreCase(layout)) {
+            return new ShardedUserRedisLayout(userValueOperations, redisTemplate, buckets, ttl, ttlJitter,
+                    scanCount, readConcurrency);
+        }
+        return new HashUserRedisLayout(hashOperations, redisTemplate, userRedisSerializer, scanCount);
+    }
+}
@@ -0,0 +1,146 @@
+package api.register.config;
+
+import api.register.domain.User;
+import api.register.domain.UserRepository;
+import api.register.domain.UserSearch;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Al arrancar crea los indices declarados en User (auto-index-creation esta deshabilitado) y pide a Mongo el plan
+ * de cada forma de consulta de /v1/user/search. Las que caerian en un recorrido completo (COLLSCAN) se registran
+ * como WARN. Corre en segundo plano: si Mongo no responde solo se registra y el arranque no se retrasa.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "user.search.index-check.enabled", havingValue = "true", matchIfMissing = true)
+public class SearchIndexCheck {
+
+    private static final int SAMPLE_LIMIT = 50;
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final MongoMappingContext mappingContext;
+    private final UserRepository userRepository;
+    private final boolean ensureIndexes;
+    private final Duration timeout;
+    private Disposable check;
+
+    public SearchIndexCheck(ReactiveMongoTemplate mongoTemplate,
+                            MongoMappingContext mappingContext,
+                            UserRepository userRepository,
+                            @Value("${user.search.index-check.ensure-indexes:true}") boolean ensureIndexes,
+                            @Value("${user.search.index-check.timeout:30s}") Duration timeout) {
+        this.mongoTemplate = mongoTemplate;
+        this.mappingContext = mappingContext;
+        this.userRepository = userRepository;
+        this.ensureIndexes = ensureIndexes;
+        this.timeout = timeout;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void checkOnStartup() {
+        check = ensureIndexes()
+                .thenMany(Flux.fromIterable(shapes().entrySet()))
+                .concatMap(shape -> Mono.defer(() -> userRepository.explainSearch(shape.getValue(), SAMPLE_LIMIT))
+                        .doOnNext(plan -> report(shape.getKey(), plan)))
+                .then()
+                .timeout(timeout)
+                .subscribe(null, e -> log.warn("search index check could not run: {}", e.getMessage()));
+    }
+
+    @PreDestroy
+    public void cancel() {
+        if (check != null) {
+            check.dispose();
+        }
+    }
+
+    private Mono<Void> ensureIndexes() {
+        if (!ensureIndexes) {
+            return Mono.empty();
+        }
+        List<IndexDefinition> indexes = new ArrayList<>();
+        new MongoPersistentEntityIndexResolver(mappingContext).resolveIndexFor(User.class).forEach(indexes::add);
+        return Flux.fromIterable(indexes)
+                .concatMap(index -> mongoTemplate.indexOps(User.class).ensureIndex(index)
+                        // Un indice unico que choca con datos existentes no impide revisar el resto
+                        .onErrorResume(e -> {
+                            log.warn("index {} could not be created: {}", index.getIndexKeys(), e.getMessage());
+                            return Mono.empty();
+                        }))
+                .then();
+    }
+
+    // Una muestra de cada combinacion que admite la API, con y sin cursor
+    static Map<String, UserSearch> shapes() {
+        LocalDate from = LocalDate.of(2020, 1, 1);
+        LocalDate to = LocalDate.of(2020, 12, 31);
+        String id = "000000000000000000000000";
+        Map<String, UserSearch> shapes = new LinkedHashMap<>();
+        shapes.put("email", UserSearch.builder().email("check@example.com").build());
+        shapes.put("phone", UserSearch.builder().phone(900000000).build());
+        shapes.put("lastName prefix", UserSearch.builder().lastNamePrefix("A").build());
+        shapes.put("lastName prefix after cursor",
+                UserSearch.builder().lastNamePrefix("A").afterKey("A").afterId(id).build());
+        shapes.put("lastName prefix and dateRegister range",
+                UserSearch.builder().lastNamePrefix("A").registeredFrom(from).registeredTo(to).build());
+        shapes.put("dateRegister range", UserSearch.builder().registeredFrom(from).registeredTo(to).build());
+        shapes.put("dateRegister range after cursor",
+                UserSearch.builder().registeredFrom(from).afterKey(from.toString()).afterId(id).build());
+        return shapes;
+    }
+
+    private void report(String shape, Document plan) {
+        Set<String> stages = new TreeSet<>();
+        Set<String> indexes = new TreeSet<>();
+        Document planner = plan.get("queryPlanner", Document.class);
+        collect(planner == null ? plan : planner.get("winningPlan"), stages, indexes);
+        if (stages.contains("COLLSCAN")) {
+            log.warn("search by {} falls back to a collection scan (plan stages {})", shape, stages);
+        } else if (stages.contains("SORT")) {
+            log.warn("search by {} sorts in memory with indexes {}", shape, indexes);
+        } else {
+            log.info("search by {} uses indexes {}", shape, indexes);
+        }
+    }
+
+    // Recorre el plan (inputStage, inputStages, shards...) reuniendo etapas e indices
+    static void collect(Object node, Set<String> stages, Set<String> indexes) {
+        if (node instanceof Document) {
+            Document document = (Document) node;
+            Object stage = document.get("stage");
+            if (stage != null) {
+                stages.add(stage.toString());
+            }
+            Object indexName = document.get("indexName");
+            if (indexName != null) {
+                indexes.add(indexName.toString());
+            }
+            document.values().forEach(value -> collect(value, stages, indexes));
+        } else if (node instanceof List) {
+            ((List<?>) node).forEach(value -> collect(value, stages, indexes));
+        }
+    }
+}
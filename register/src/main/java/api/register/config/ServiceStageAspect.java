@@ -0,0 +1,37 @@
+package api.register.config;
+
+import api.register.application.metrics.StageMetrics;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Etapa "service" de user.stage para los metodos reactivos de UserService.
+ * Va por fuera de los aspectos de resilience4j, asi que incluye esperas, rechazos y fallbacks.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ServiceStageAspect {
+
+    private final StageMetrics stageMetrics;
+
+    public ServiceStageAspect(StageMetrics stageMetrics) {
+        this.stageMetrics = stageMetrics;
+    }
+
+    @Around("execution(public reactor.core.publisher.Mono api.register.application.UserService.*(..))")
+    public Object timeMono(ProceedingJoinPoint joinPoint) throws Throwable {
+        return stageMetrics.mono(StageMetrics.SERVICE, joinPoint.getSignature().getName(), (Mono<?>) joinPoint.proceed());
+    }
+
+    @Around("execution(public reactor.core.publisher.Flux api.register.application.UserService.*(..))")
+    public Object timeFlux(ProceedingJoinPoint joinPoint) throws Throwable {
+        return stageMetrics.flux(StageMetrics.SERVICE, joinPoint.getSignature().getName(), (Flux<?>) joinPoint.proceed());
+    }
+}
@@ -0,0 +1,56 @@
+package api.register.config;
+
+import api.register.application.metrics.StageMetrics.StoreCalls;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Registra cuantas llamadas a Mongo y Redis hizo cada peticion ("user.request.store.calls"),
+ * etiquetadas por metodo y patron de ruta (/v1/user/findById/{id}, no la ruta concreta).
+ */
+@Component
+public class StoreCallsWebFilter implements WebFilter {
+
+    public static final String STORE_CALLS = "user.request.store.calls";
+
+    private final MeterRegistry meterRegistry;
+
+    public StoreCallsWebFilter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        StoreCalls calls = new StoreCalls();
+        return chain.filter(exchange)
+                .contextWrite(calls::putIn)
+                .doFinally(signal -> record(exchange, calls));
+    }
+
+    private void record(ServerWebExchange exchange, StoreCalls calls) {
+        Object pattern = exchange.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        // Sin patron (404, recursos estaticos) o actuator: no aportan y solo sumarian series
+        if (pattern == null || pattern.toString().startsWith("/actuator")) {
+            return;
+        }
+        String method = exchange.getRequest().getMethodValue();
+        summary("mongo", method, pattern.toString()).record(calls.getMongo());
+        summary("redis", method, pattern.toString()).record(calls.getRedis());
+    }
+
+    private DistributionSummary summary(String store, String method, String uri) {
+        return DistributionSummary.builder(STORE_CALLS)
+                .baseUnit("calls")
+                .tag("store", store)
+                .tag("method", method)
+                .tag("uri", uri)
+                .serviceLevelObjectives(1, 2, 3, 5, 10)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,336 @@
+package api.register.config;
+
+import api.register.domain.User;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Serializador binario compacto para los usuarios guardados en Redis.
+ *
+ * Formato: [magic][version de esquema][flags]([tamaño sin comprimir])[mascara de campos][campos...].
+ * Los enteros usan varint, el id de Mongo se guarda en sus 12 bytes y el IMEI numerico como varint.
+ * Los valores que superan compressionThreshold se comprimen con Deflate.
+ * Los campos nuevos se escriben al final con un bit nuevo: los lectores anteriores los ignoran sin cambiar de version.
+ * Las entradas JSON antiguas (empiezan con '{') se leen con el serializador JSON de respaldo.
+ */
+public class UserBinaryRedisSerializer implements RedisSerializer<User> {
+
+    static final byte MAGIC = (byte) 0xB5;
+    static final byte SCHEMA_VERSION = 1;
+    private static final int FLAG_DEFLATED = 1;
+
+    private static final int F_ID = 1;
+    private static final int F_ID_OBJECT_ID = 1 << 1;
+    private static final int F_IDENTITY_DNI = 1 << 2;
+    private static final int F_FIRST_NAME = 1 << 3;
+    private static final int F_LAST_NAME = 1 << 4;
+    private static final int F_ADDRESS = 1 << 5;
+    private static final int F_PHONE = 1 << 6;
+    private static final int F_EMAIL = 1 << 7;
+    private static final int F_IMEI = 1 << 8;
+    private static final int F_IMEI_NUMERIC = 1 << 9;
+    private static final int F_DATE_REGISTER = 1 << 10;
+    private static final int F_VERSION = 1 << 11;
+
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+    private static final ThreadLocal<Output> OUTPUT = ThreadLocal.withInitial(() -> new Output(256));
+
+    private final RedisSerializer<User> jsonFallback;
+    private final int compressionThreshold;
+
+    public UserBinaryRedisSerializer(RedisSerializer<User> jsonFallback, int compressionThreshold) {
+        this.jsonFallback = jsonFallback;
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    @Override
+    public byte[] serialize(User user) throws SerializationException {
+        if (user == null) {
+            return new byte[0];
+        }
+        Output out = OUTPUT.get();
+        out.reset();
+        int mask = mask(user);
+        out.writeVarLong(mask);
+        if ((mask & F_ID_OBJECT_ID) != 0) {
+            out.writeHex(user.getId());
+        } else if ((mask & F_ID) != 0) {
+            out.writeString(user.getId());
+        }
+        if ((mask & F_IDENTITY_DNI) != 0) out.writeString(user.getIdentityDni());
+        if ((mask & F_FIRST_NAME) != 0) out.writeString(user.getFirstName());
+        if ((mask & F_LAST_NAME) != 0) out.writeString(user.getLastName());
+        if ((mask & F_ADDRESS) != 0) out.writeString(user.getAddress());
+        if ((mask & F_PHONE) != 0) out.writeVarLong(user.getPhone() & 0xFFFFFFFFL);
+        if ((mask & F_EMAIL) != 0) out.writeString(user.getEmail());
+        if ((mask & F_IMEI_NUMERIC) != 0) {
+            out.writeVarLong(Long.parseLong(user.getImei()));
+        } else if ((mask & F_IMEI) != 0) {
+            out.writeString(user.getImei());
+        }
+        if ((mask & F_DATE_REGISTER) != 0) out.writeVarLong(user.getDateRegister().toEpochDay());
+        if ((mask & F_VERSION) != 0) out.writeVarLong(user.getVersion());
+
+        byte[] result = out.length() > compressionThreshold ? deflate(out) : plain(out);
+        if (out.buf.length > MAX_RETAINED_BUFFER) {
+            OUTPUT.remove();
+        }
+        return result;
+    }
+
+    @Override
+    public User deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != MAGIC) {
+            return jsonFallback.deserialize(bytes);
+        }
+        if (bytes.length < 3) {
+            throw new SerializationException("Truncated user entry of " + bytes.length + " bytes");
+        }
+        if (bytes[1] > SCHEMA_VERSION) {
+            throw new SerializationException("Unsupported user schema version " + bytes[1]);
+        }
+        Input in = new Input(bytes, 3);
+        if ((bytes[2] & FLAG_DEFLATED) != 0) {
+            int length = (int) in.readVarLong();
+            in = new Input(inflate(bytes, in.pos, length), 0);
+        }
+        int mask = (int) in.readVarLong();
+        User user = new User();
+        if ((mask & F_ID_OBJECT_ID) != 0) {
+            user.setId(in.readHex(12));
+        } else if ((mask & F_ID) != 0) {
+            user.setId(in.readString());
+        }
+        if ((mask & F_IDENTITY_DNI) != 0) user.setIdentityDni(in.readString());
+        if ((mask & F_FIRST_NAME) != 0) user.setFirstName(in.readString());
+        if ((mask & F_LAST_NAME) != 0) user.setLastName(in.readString());
+        if ((mask & F_ADDRESS) != 0) user.setAddress(in.readString());
+        if ((mask & F_PHONE) != 0) user.setPhone((int) in.readVarLong());
+        if ((mask & F_EMAIL) != 0) user.setEmail(in.readString());
+        if ((mask & F_IMEI_NUMERIC) != 0) {
+            user.setImei(Long.toString(in.readVarLong()));
+        } else if ((mask & F_IMEI) != 0) {
+            user.setImei(in.readString());
+        }
+        if ((mask & F_DATE_REGISTER) != 0) user.setDateRegister(LocalDate.ofEpochDay(in.readVarLong()));
+        if ((mask & F_VERSION) != 0) user.setVersion(in.readVarLong());
+        return user;
+    }
+
+    private static int mask(User user) {
+        int mask = 0;
+        if (user.getId() != null) mask |= isObjectId(user.getId()) ? F_ID | F_ID_OBJECT_ID : F_ID;
+        if (user.getIdentityDni() != null) mask |= F_IDENTITY_DNI;
+        if (user.getFirstName() != null) mask |= F_FIRST_NAME;
+        if (user.getLastName() != null) mask |= F_LAST_NAME;
+        if (user.getAddress() != null) mask |= F_ADDRESS;
+        if (user.getPhone() != null) mask |= F_PHONE;
+        if (user.getEmail() != null) mask |= F_EMAIL;
+        if (user.getImei() != null) mask |= isCompactNumber(user.getImei()) ? F_IMEI | F_IMEI_NUMERIC : F_IMEI;
+        if (user.getDateRegister() != null) mask |= F_DATE_REGISTER;
+        if (user.getVersion() != null && user.getVersion() >= 0) mask |= F_VERSION;
+        return mask;
+    }
+
+    private static boolean isObjectId(String id) {
+        if (id.length() != 24) {
+            return false;
+        }
+        for (int i = 0; i < 24; i++) {
+            char c = id.charAt(i);
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Solo digitos, sin cero a la izquierda y dentro de un long: se reconstruye identico con Long.toString
+    private static boolean isCompactNumber(String value) {
+        if (value.isEmpty() || value.length() > 18 || value.charAt(0) == '0') {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] plain(Output out) {
+        byte[] result = new byte[out.length() + 3];
+        result[0] = MAGIC;
+        result[1] = SCHEMA_VERSION;
+        result[2] = 0;
+        System.arraycopy(out.buf, 0, result, 3, out.length());
+        return result;
+    }
+
+    private static byte[] deflate(Output out) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(out.buf, 0, out.length());
+            deflater.finish();
+            Output compressed = new Output(out.length() + 16);
+            compressed.buf[0] = MAGIC;
+            compressed.buf[1] = SCHEMA_VERSION;
+            compressed.buf[2] = FLAG_DEFLATED;
+            compressed.pos = 3;
+            compressed.writeVarLong(out.length());
+            while (!deflater.finished()) {
+                compressed.ensure(256);
+                compressed.pos += deflater.deflate(compressed.buf, compressed.pos, compressed.buf.length - compressed.pos);
+            }
+            return Arrays.copyOf(compressed.buf, compressed.pos);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes, int offset, int length) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, offset, bytes.length - offset);
+            byte[] result = new byte[length];
+            int read = 0;
+            while (read < length && !inflater.finished()) {
+                int inflated = inflater.inflate(result, read, length - read);
+                // Entrada truncada o corrupta: sin esta comprobacion el bucle no termina nunca
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new SerializationException("Truncated compressed user entry");
+                }
+                read += inflated;
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new SerializationException("Corrupted compressed user entry", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static final class Output {
+        private byte[] buf;
+        private int pos;
+
+        Output(int size) {
+            buf = new byte[size];
+        }
+
+        void reset() {
+            pos = 0;
+        }
+
+        int length() {
+            return pos;
+        }
+
+        void ensure(int extra) {
+            if (pos + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + extra));
+            }
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos++] = (byte) value;
+        }
+
+        // Codifica UTF-8 directamente en el buffer, sin pasar por String.getBytes
+        void writeString(String value) {
+            int length = value.length();
+            int start = pos;
+            ensure(5 + length * 3);
+            pos += 5;
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    buf[pos++] = (byte) c;
+                } else if (c < 0x800) {
+                    buf[pos++] = (byte) (0xC0 | (c >> 6));
+                    buf[pos++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, value.charAt(++i));
+                    buf[pos++] = (byte) (0xF0 | (cp >> 18));
+                    buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+                } else {
+                    buf[pos++] = (byte) (0xE0 | (c >> 12));
+                    buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            // Reubica los bytes tras el prefijo de longitud real (varint de 1 a 5 bytes)
+            int byteLength = pos - start - 5;
+            pos = start;
+            writeVarLong(byteLength);
+            int prefix = pos - start;
+            System.arraycopy(buf, start + 5, buf, start + prefix, byteLength);
+            pos = start + prefix + byteLength;
+        }
+
+        void writeHex(String hex) {
+            ensure(hex.length() / 2);
+            for (int i = 0; i < hex.length(); i += 2) {
+                buf[pos++] = (byte) ((Character.digit(hex.charAt(i), 16) << 4) | Character.digit(hex.charAt(i + 1), 16));
+            }
+        }
+    }
+
+    private static final class Input {
+        private static final char[] HEX = "0123456789abcdef".toCharArray();
+        private final byte[] buf;
+        private int pos;
+
+        Input(byte[] buf, int pos) {
+            this.buf = buf;
+            this.pos = pos;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buf[pos++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        String readString() {
+            int length = (int) readVarLong();
+            String value = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+
+        String readHex(int length) {
+            char[] chars = new char[length * 2];
+            for (int i = 0; i < length; i++) {
+                int b = buf[pos++] & 0xFF;
+                chars[i * 2] = HEX[b >> 4];
+                chars[i * 2 + 1] = HEX[b & 0x0F];
+            }
+            return new String(chars);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package api.register.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.ReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.ReactiveMongoTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+// Transacciones de Mongo (requieren replica set) solo para escribir el usuario y su evento del outbox.
+// El ReactiveTransactionManager no se registra como bean: activaria el @Transactional de clase de UserService
+// y con el todas las lecturas y recorridos pasarian a ser transaccionales
+@Configuration
+@ConditionalOnProperty(name = "user.outbox.enabled", havingValue = "true")
+public class UserOutboxConfig {
+
+    @Bean
+    public TransactionalOperator userOutboxTransaction(ReactiveMongoDatabaseFactory databaseFactory) {
+        return TransactionalOperator.create(new ReactiveMongoTransactionManager(databaseFactory));
+    }
+}
@@ -0,0 +1,38 @@
+package api.register.config.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Deja pasar solo uno de cada rate eventos DEBUG/TRACE de los loggers que los tienen habilitados.
+ *
+ * Se evalua antes de construir el evento, asi que los descartados no formatean el mensaje ni llaman a toString.
+ * Los eventos con excepcion y los de nivel INFO o superior no se muestrean.
+ */
+public class DebugSamplingTurboFilter extends TurboFilter {
+
+    private int rate = 1;
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        // format null: es una consulta isDebugEnabled(); se muestrea solo la llamada real para no aplicarlo dos veces
+        if (rate <= 1 || format == null || t != null || level.isGreaterOrEqual(Level.INFO)
+                || !level.isGreaterOrEqual(logger.getEffectiveLevel())) {
+            return FilterReply.NEUTRAL;
+        }
+        return ThreadLocalRandom.current().nextInt(rate) == 0 ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+
+    public void setRate(int rate) {
+        this.rate = rate;
+    }
+
+    public int getRate() {
+        return rate;
+    }
+}
@@ -0,0 +1,73 @@
+package api.register.config.logging;
+
+import api.register.domain.User;
+
+import java.util.function.Supplier;
+
+/**
+ * Argumentos seguros para los logs: enmascaran los datos personales y recortan los valores que envia el cliente.
+ *
+ * Devuelven objetos perezosos cuyo toString solo se ejecuta si el evento se llega a escribir,
+ * de modo que un log DEBUG deshabilitado o descartado por muestreo no construye ninguna cadena.
+ */
+public final class LogSafe {
+
+    static final int MAX_LENGTH = 64;
+
+    private LogSafe() {
+    }
+
+    /**
+     * Usuario con id y version; DNI y correo enmascarados, sin nombre, direccion, telefono ni IMEI.
+     */
+    public static Object user(User user) {
+        return lazy(() -> user == null ? "null" : "User(id=" + truncate(user.getId())
+                + ", identityDni=" + mask(user.getIdentityDni(), 2)
+                + ", email=" + maskEmail(user.getEmail())
+                + ", version=" + user.getVersion() + ")");
+    }
+
+    public static Object dni(String identityDni) {
+        return lazy(() -> mask(identityDni, 2));
+    }
+
+    /**
+     * Valor enviado por el cliente (ids, nombres de campo): recortado y sin saltos de linea.
+     */
+    public static Object value(Object value) {
+        return lazy(() -> truncate(String.valueOf(value)));
+    }
+
+    static String mask(String value, int visible) {
+        if (value == null) {
+            return "null";
+        }
+        int shown = Math.min(visible, value.length() / 2);
+        return value.substring(0, shown) + "*".repeat(Math.min(value.length(), MAX_LENGTH) - shown);
+    }
+
+    static String maskEmail(String email) {
+        if (email == null) {
+            return "null";
+        }
+        int at = email.indexOf('@');
+        return at < 0 ? mask(email, 1) : mask(email.substring(0, at), 1) + truncate(email.substring(at));
+    }
+
+    static String truncate(String value) {
+        if (value == null) {
+            return "null";
+        }
+        String line = value.replace('\r', ' ').replace('\n', ' ');
+        return line.length() <= MAX_LENGTH ? line : line.substring(0, MAX_LENGTH) + "...(" + line.length() + ")";
+    }
+
+    private static Object lazy(Supplier<String> message) {
+        return new Object() {
+            @Override
+            public String toString() {
+                return message.get();
+            }
+        };
+    }
+}
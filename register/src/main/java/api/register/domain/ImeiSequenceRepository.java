@@ -0,0 +1,36 @@
+package api.register.domain;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+/**
+ * Contador global de numeros de serie de IMEI, compartido por todas las replicas.
+ */
+@Repository
+public class ImeiSequenceRepository
+{
+    static final String COLLECTION = "imeiSequences";
+    static final String SEQUENCE_ID = "imei";
+    static final String NEXT_FIELD = "next";
+
+    @Autowired
+    private ReactiveMongoTemplate mongoTemplate;
+
+    /**
+     * Reserva de forma atomica blockSize posiciones consecutivas y devuelve la primera.
+     */
+    public Mono<Long> reserve(long blockSize) {
+        return mongoTemplate.findAndModify(Query.query(Criteria.where("_id").is(SEQUENCE_ID)),
+                        new Update().inc(NEXT_FIELD, blockSize),
+                        FindAndModifyOptions.options().upsert(true).returnNew(true),
+                        Document.class, COLLECTION)
+                .map(sequence -> sequence.get(NEXT_FIELD, Number.class).longValue() - blockSize);
+    }
+}
@@ -6,6 +6,9 @@ import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateDeserializer;
 import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateSerializer;
 import lombok.*;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -18,48 +21,68 @@ import java.io.Serializable;
 import java.time.LocalDate;
 
 @Data
+// Sin datos personales: el usuario puede acabar en un log o en el mensaje de una excepcion
 @ToString
 @Builder
 @EqualsAndHashCode(of={"identityDni"})
 @AllArgsConstructor
 @NoArgsConstructor
 @Document(value = "users")
+// Indices de /v1/user/search: cada uno cubre el filtro y el orden keyset (campo, _id) sin ordenar en memoria
+@CompoundIndexes({
+        @CompoundIndex(name = "lastName_id", def = "{'lastName': 1, '_id': 1}"),
+        @CompoundIndex(name = "dateRegister_id", def = "{'dateRegister': 1, '_id': 1}")
+})
 public class User implements Serializable
 {
+    public static final String IMEI_INDEX = "imei";
+
     @Id
     private String id;
     @NotNull
     @Indexed(unique = true)
     @Column(nullable = false, length = 8)
+    @ToString.Exclude
     private String identityDni;
     @NotEmpty
     @Size(max = 50)
     @Column(nullable = false, length = 50)
+    @ToString.Exclude
     private String firstName;
     @NotEmpty
     @Size(max = 50)
     @Column(nullable = false, length = 50)
+    @ToString.Exclude
     private String lastName;
     @NotEmpty
     @Size(max = 100)
     @Column(nullable = false, length = 100)
+    @ToString.Exclude
     private String address;
     @NotNull
     @Indexed(unique = true)
     @Column(nullable = false, length = 9)
+    @ToString.Exclude
     private Integer phone;
     @NotEmpty
     @Indexed(unique = true)
     @Size(max = 100)
     @Column(nullable = false, length = 100)
+    @ToString.Exclude
     private String email;
 
+    // Disperso: los documentos anteriores pueden no tener IMEI
+    @Indexed(name = IMEI_INDEX, unique = true, sparse = true)
+    @ToString.Exclude
     private String imei;
 
     @JsonDeserialize(using = LocalDateDeserializer.class)
     @JsonSerialize(using = LocalDateSerializer.class)
     private LocalDate dateRegister;
 
+    @Version
+    private Long version;
+
     @JsonIgnore
     private boolean scanAvailable;
     @JsonIgnore
@@ -0,0 +1,39 @@
+package api.register.domain;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Cambio de un usuario registrado en el outbox, en la misma transaccion que la escritura en users.
+ * El id (ObjectId) se genera antes de confirmar, de modo que no sigue el orden de confirmacion; el orden de
+ * publicacion lo da sequence, que asigna el publicador. version permite a los consumidores descartar duplicados
+ * y eventos atrasados de un mismo usuario.
+ */
+@Data
+@ToString
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(value = "userEvents")
+public class UserEvent
+{
+    public enum Type { CREATED, UPDATED, DELETED }
+
+    @Id
+    private String id;
+    private Type type;
+    private String userId;
+    private Long version;
+    // Estado del usuario despues del cambio; en DELETED, el ultimo que tuvo
+    @ToString.Exclude
+    private User user;
+    private Instant occurredAt;
+    // Posicion en el orden de publicacion, asignada justo antes de entregar el lote; cursor de las reconexiones.
+    // Un lote que se reintenta recibe numeros nuevos
+    private Long sequence;
+    // null hasta que todos los destinos lo recibieron
+    private Instant publishedAt;
+}
@@ -0,0 +1,133 @@
+package api.register.domain;
+
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Outbox de cambios de usuarios (coleccion userEvents), el lease que elige que replica lo publica y el contador
+ * de la secuencia de publicacion (ambos en userEventLeases).
+ */
+@Repository
+public class UserEventRepository
+{
+    static final String LEASE_COLLECTION = "userEventLeases";
+    static final String LEASE_ID = "publisher";
+    static final String SEQUENCE_ID = "sequence";
+    static final String PUBLISHED_AT_FIELD = "publishedAt";
+    static final String SEQUENCE_FIELD = "sequence";
+
+    @Autowired
+    private ReactiveMongoTemplate mongoTemplate;
+
+    /**
+     * Inserta los eventos; dentro de una transaccion se confirman junto con la escritura del usuario.
+     */
+    public Mono<Void> append(List<UserEvent> events) {
+        return events.size() == 1
+                ? mongoTemplate.insert(events.get(0)).then()
+                : mongoTemplate.insertAll(events).then();
+    }
+
+    /**
+     * Los eventos aun no publicados mas antiguos, en orden de id.
+     */
+    public Flux<UserEvent> findPending(int limit) {
+        return mongoTemplate.find(Query.query(Criteria.where(PUBLISHED_AT_FIELD).is(null))
+                .with(Sort.by("id"))
+                .limit(limit), UserEvent.class);
+    }
+
+    public Mono<Long> markPublished(List<String> ids, Instant publishedAt) {
+        return mongoTemplate.updateMulti(Query.query(Criteria.where("id").in(ids)),
+                        Update.update(PUBLISHED_AT_FIELD, publishedAt), UserEvent.class)
+                .map(result -> result.getModifiedCount());
+    }
+
+    /**
+     * Asigna a los eventos numeros consecutivos de la secuencia de publicacion, en el orden de la lista, y los guarda.
+     * Un $inc reserva el rango y un bulkWrite no ordenado escribe la secuencia de cada evento.
+     */
+    public Mono<Void> assignSequences(List<UserEvent> events) {
+        return mongoTemplate.findAndModify(Query.query(Criteria.where("_id").is(SEQUENCE_ID)),
+                        new Update().inc("value", events.size()),
+                        FindAndModifyOptions.options().upsert(true).returnNew(true), Document.class, LEASE_COLLECTION)
+                .flatMap(counter -> {
+                    long first = counter.get("value", Number.class).longValue() - events.size() + 1;
+                    for (int i = 0; i < events.size(); i++) {
+                        events.get(i).setSequence(first + i);
+                    }
+                    List<UpdateOneModel<Document>> updates = events.stream()
+                            .map(event -> new UpdateOneModel<Document>(Filters.eq("_id", new ObjectId(event.getId())),
+                                    Updates.set(SEQUENCE_FIELD, event.getSequence())))
+                            .collect(Collectors.toList());
+                    return mongoTemplate.getCollection(mongoTemplate.getCollectionName(UserEvent.class))
+                            .flatMap(collection -> Mono.from(collection.bulkWrite(updates,
+                                    new BulkWriteOptions().ordered(false))));
+                })
+                .then();
+    }
+
+    /**
+     * Eventos con secuencia mayor que afterSequence (reconexion de un consumidor), en orden de secuencia.
+     */
+    public Flux<UserEvent> findPublishedAfter(long afterSequence) {
+        return mongoTemplate.find(Query.query(Criteria.where(SEQUENCE_FIELD).gt(afterSequence))
+                .with(Sort.by(SEQUENCE_FIELD)), UserEvent.class);
+    }
+
+    /**
+     * Toma o renueva el lease de publicacion para owner durante duration; false si otra replica lo tiene vigente.
+     */
+    public Mono<Boolean> acquireLease(String owner, Duration duration) {
+        Date now = new Date();
+        Query query = Query.query(Criteria.where("_id").is(LEASE_ID)
+                .orOperator(Criteria.where("owner").is(owner), Criteria.where("expiresAt").lt(now)));
+        Update update = new Update().set("owner", owner).set("expiresAt", new Date(now.getTime() + duration.toMillis()));
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().upsert(true).returnNew(true),
+                        Document.class, LEASE_COLLECTION)
+                .map(lease -> owner.equals(lease.getString("owner")))
+                // El upsert choca con el _id del lease vigente de otra replica
+                .onErrorResume(DuplicateKeyException.class, e -> Mono.just(false))
+                .defaultIfEmpty(false);
+    }
+
+    /**
+     * Indice de los pendientes, indice de la secuencia (reconexiones) y TTL que borra los publicados pasado retention.
+     */
+    public Mono<Void> ensureIndexes(Duration retention) {
+        return mongoTemplate.indexOps(UserEvent.class)
+                .ensureIndex(new Index().on(PUBLISHED_AT_FIELD, Sort.Direction.ASC).on("_id", Sort.Direction.ASC)
+                        .named("publishedAt_id"))
+                .then(mongoTemplate.indexOps(UserEvent.class)
+                        .ensureIndex(new Index().on(PUBLISHED_AT_FIELD, Sort.Direction.ASC)
+                                .expire(retention)
+                                .named("publishedAt_ttl")))
+                .then(mongoTemplate.indexOps(UserEvent.class)
+                        .ensureIndex(new Index().on(SEQUENCE_FIELD, Sort.Direction.ASC)
+                                .sparse()
+                                .named("sequence")))
+                .then();
+    }
+}
@@ -1,11 +1,22 @@
 package api.register.domain;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Collection;
+
 @Repository
-public interface UserRepository extends ReactiveMongoRepository<User,String>
+public interface UserRepository extends ReactiveMongoRepository<User,String>, UserRepositoryCustom
 {
     Mono<User> findByIdentityDni(String identityDni);
+
+    // Un solo $in para los fallos de cache de una consulta por lote
+    Flux<User> findByIdentityDniIn(Collection<String> identityDnis);
+
+    // Paginacion por cursor (keyset) sobre _id
+    Flux<User> findAllByOrderByIdAsc(Pageable pageable);
+    Flux<User> findByIdGreaterThanOrderByIdAsc(String id, Pageable pageable);
 }
@@ -0,0 +1,58 @@
+package api.register.domain;
+
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.Document;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public interface UserRepositoryCustom
+{
+    Flux<User> streamAll();
+
+    /**
+     * Igual que streamAll pero Mongo solo devuelve los campos pedidos, sin construir objetos User.
+     */
+    Flux<Map<String, Object>> streamFields(Set<String> fields);
+
+    /**
+     * Busca por una propiedad de User (id, identityDni) devolviendo solo los campos pedidos.
+     */
+    Mono<Map<String, Object>> findFieldsBy(String property, String value, Set<String> fields);
+
+    /**
+     * Busqueda por atributos con paginacion keyset; devuelve a lo sumo limit usuarios en el orden de search.sortField().
+     */
+    Flux<User> search(UserSearch search, int limit);
+
+    /**
+     * Plan de ejecucion (explain) de la consulta que haria search, para comprobar que usa un indice.
+     */
+    Mono<Document> explainSearch(UserSearch search, int limit);
+
+    /**
+     * Inserta los usuarios con un insertMany no ordenado y asigna el id generado a cada uno, con version 0.
+     * Devuelve los errores de escritura indexados por la posicion del usuario en la lista.
+     */
+    Mono<Map<Integer, BulkWriteError>> insertUnordered(List<User> users);
+
+    /**
+     * Aplica con un solo findAndModify los campos editables de changes ($set) e incrementa la version.
+     * Devuelve el documento ya actualizado; si expectedVersion no es null y no coincide, falla con OptimisticLockingFailureException.
+     */
+    Mono<User> findAndSet(String id, Long expectedVersion, User changes);
+
+    /**
+     * $set solo de fields, y solo si alguno de ellos cambia; devuelve el documento anterior.
+     * Vacio si el usuario no existe, la version no coincide o ningun campo cambia (en ese caso no se escribe nada).
+     */
+    Mono<User> findAndPatch(String id, Long expectedVersion, User changes, Set<String> fields);
+
+    /**
+     * Borra el usuario con un solo findAndRemove y devuelve el documento borrado.
+     */
+    Mono<User> findAndRemoveById(String id);
+}
@@ -0,0 +1,232 @@
+package api.register.domain;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+public class UserRepositoryCustomImpl implements UserRepositoryCustom
+{
+    static final String VERSION_FIELD = "version";
+    private static final Pattern REGEX_SPECIAL = Pattern.compile("[\\\\^$.|?*+()\\[\\]{}]");
+    // Campos que una actualizacion nunca sobrescribe
+    private static final Set<String> IMMUTABLE_FIELDS = Set.of("_id", "_class", "imei", "dateRegister", VERSION_FIELD);
+
+    @Autowired
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @Value("${user.export.cursor-batch-size:500}")
+    private int cursorBatchSize;
+
+    @Override
+    public Flux<User> streamAll() {
+        // La demanda del suscriptor se propaga al cursor; cada getMore trae a lo sumo cursorBatchSize documentos
+        return mongoTemplate.find(new Query().cursorBatchSize(cursorBatchSize), User.class);
+    }
+
+    @Override
+    public Flux<Map<String, Object>> streamFields(Set<String> fields) {
+        return mongoTemplate.query(User.class).as(Document.class)
+                .matching(project(new Query().cursorBatchSize(cursorBatchSize), fields))
+                .all()
+                .map(document -> toFields(document, fields));
+    }
+
+    @Override
+    public Mono<Map<String, Object>> findFieldsBy(String property, String value, Set<String> fields) {
+        return mongoTemplate.query(User.class).as(Document.class)
+                .matching(project(Query.query(Criteria.where(property).is(value)), fields))
+                .first()
+                .map(document -> toFields(document, fields));
+    }
+
+    // El query se mapea contra User (id -> _id como ObjectId) pero el resultado se lee como Document crudo
+    private static Query project(Query query, Set<String> fields) {
+        if (!fields.contains("id")) {
+            query.fields().exclude("_id");
+        }
+        fields.forEach(query.fields()::include);
+        return query;
+    }
+
+    private static Map<String, Object> toFields(Document document, Set<String> fields) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (String field : fields) {
+            Object value = document.get("id".equals(field) ? "_id" : field);
+            if (value instanceof ObjectId) {
+                value = ((ObjectId) value).toHexString();
+            } else if (value instanceof Date) {
+                // Mismo criterio que el conversor de Spring Data para LocalDate
+                value = ((Date) value).toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+            }
+            values.put(field, value);
+        }
+        return values;
+    }
+
+    @Override
+    public Flux<User> search(UserSearch search, int limit) {
+        return mongoTemplate.find(searchQuery(search, limit), User.class);
+    }
+
+    @Override
+    public Mono<Document> explainSearch(UserSearch search, int limit) {
+        Query query = searchQuery(search, limit);
+        QueryMapper mapper = new QueryMapper(mongoTemplate.getConverter());
+        MongoPersistentEntity<?> entity = mongoTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(User.class);
+        Document filter = mapper.getMappedObject(query.getQueryObject(), entity);
+        Document sort = mapper.getMappedSort(query.getSortObject(), entity);
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(User.class))
+                .flatMap(collection -> Mono.from(collection.find(filter).sort(sort).limit(limit).explain(Document.class)));
+    }
+
+    // Igualdades primero; el prefijo de apellido es una regex anclada sin metacaracteres, que Mongo resuelve
+    // como rango sobre el indice lastName_id. El cursor continua por (campo de orden, id).
+    static Query searchQuery(UserSearch search, int limit) {
+        List<Criteria> criteria = new ArrayList<>();
+        if (search.getEmail() != null) {
+            criteria.add(Criteria.where("email").is(search.getEmail()));
+        }
+        if (search.getPhone() != null) {
+            criteria.add(Criteria.where("phone").is(search.getPhone()));
+        }
+        if (search.getLastNamePrefix() != null) {
+            criteria.add(Criteria.where("lastName")
+                    .regex("^" + REGEX_SPECIAL.matcher(search.getLastNamePrefix()).replaceAll("\\\\$0")));
+        }
+        if (search.getRegisteredFrom() != null || search.getRegisteredTo() != null) {
+            Criteria range = Criteria.where("dateRegister");
+            if (search.getRegisteredFrom() != null) {
+                range.gte(search.getRegisteredFrom());
+            }
+            if (search.getRegisteredTo() != null) {
+                range.lte(search.getRegisteredTo());
+            }
+            criteria.add(range);
+        }
+        String sortField = search.sortField();
+        if (search.getAfterId() != null) {
+            if (UserSearch.SORT_ID.equals(sortField)) {
+                criteria.add(Criteria.where("id").gt(search.getAfterId()));
+            } else {
+                Object key = UserSearch.SORT_DATE_REGISTER.equals(sortField)
+                        ? LocalDate.parse(search.getAfterKey())
+                        : search.getAfterKey();
+                criteria.add(new Criteria().orOperator(
+                        Criteria.where(sortField).gt(key),
+                        Criteria.where(sortField).is(key).and("id").gt(search.getAfterId())));
+            }
+        }
+        Query query = criteria.isEmpty() ? new Query() : Query.query(new Criteria().andOperator(criteria));
+        // Orden por id: solo hay email o telefono, que son unicos; no se ordena un resultado de a lo sumo un documento
+        if (!UserSearch.SORT_ID.equals(sortField)) {
+            query.with(Sort.by(sortField).and(Sort.by(UserSearch.SORT_ID)));
+        }
+        return query.limit(limit);
+    }
+
+    @Override
+    public Mono<Map<Integer, BulkWriteError>> insertUnordered(List<User> users) {
+        if (users.isEmpty()) {
+            return Mono.just(Collections.emptyMap());
+        }
+        List<Document> documents = users.stream()
+                .map(user -> {
+                    // Documento nuevo: id generado por Mongo y version inicial, sin importar lo que traiga el usuario
+                    user.setId(null);
+                    user.setVersion(0L);
+                    Document document = new Document();
+                    mongoTemplate.getConverter().write(user, document);
+                    return document;
+                })
+                .collect(Collectors.toList());
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(User.class))
+                .flatMap(collection -> Mono.from(collection.insertMany(documents, new InsertManyOptions().ordered(false))))
+                .map(result -> Collections.<Integer, BulkWriteError>emptyMap())
+                // Con ordered(false) Mongo intenta todos los documentos y reporta solo los que fallaron
+                .onErrorResume(MongoBulkWriteException.class, e -> Mono.just(e.getWriteErrors().stream()
+                        .collect(Collectors.toMap(BulkWriteError::getIndex, Function.identity()))))
+                .doOnNext(errors -> {
+                    for (int i = 0; i < users.size(); i++) {
+                        Object id = documents.get(i).get("_id");
+                        if (!errors.containsKey(i) && id != null) {
+                            users.get(i).setId(id instanceof ObjectId ? ((ObjectId) id).toHexString() : id.toString());
+                        }
+                    }
+                });
+    }
+
+    @Override
+    public Mono<User> findAndSet(String id, Long expectedVersion, User changes) {
+        Document document = new Document();
+        mongoTemplate.getConverter().write(changes, document);
+        Update update = new Update().inc(VERSION_FIELD, 1);
+        document.forEach((field, value) -> {
+            if (!IMMUTABLE_FIELDS.contains(field)) {
+                update.set(field, value);
+            }
+        });
+        Query query = Query.query(Criteria.where("id").is(id));
+        if (expectedVersion != null) {
+            query.addCriteria(Criteria.where(VERSION_FIELD).is(expectedVersion));
+        }
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), User.class)
+                // Sin coincidencia: solo se consulta de nuevo para distinguir "no existe" de "version desactualizada"
+                .switchIfEmpty(Mono.defer(() -> expectedVersion == null ? Mono.empty()
+                        : mongoTemplate.exists(Query.query(Criteria.where("id").is(id)), User.class)
+                                .flatMap(exists -> exists
+                                        ? Mono.error(new OptimisticLockingFailureException(
+                                                "User " + id + " is no longer at version " + expectedVersion))
+                                        : Mono.empty())));
+    }
+
+    @Override
+    public Mono<User> findAndPatch(String id, Long expectedVersion, User changes, Set<String> fields) {
+        Document document = new Document();
+        mongoTemplate.getConverter().write(changes, document);
+        Update update = new Update().inc(VERSION_FIELD, 1);
+        List<Criteria> differs = new ArrayList<>(fields.size());
+        for (String field : fields) {
+            update.set(field, document.get(field));
+            differs.add(Criteria.where(field).ne(document.get(field)));
+        }
+        // El filtro exige que al menos un campo cambie: un parche sin cambios no escribe ni sube la version
+        Query query = Query.query(Criteria.where("id").is(id).orOperator(differs.toArray(new Criteria[0])));
+        if (expectedVersion != null) {
+            query.addCriteria(Criteria.where(VERSION_FIELD).is(expectedVersion));
+        }
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(false), User.class);
+    }
+
+    @Override
+    public Mono<User> findAndRemoveById(String id) {
+        return mongoTemplate.findAndRemove(Query.query(Criteria.where("id").is(id)), User.class);
+    }
+}
@@ -0,0 +1,91 @@
+package api.register.domain;
+
+import lombok.*;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Criterios de /v1/user/search. Todos son opcionales pero debe venir al menos uno.
+ *
+ * El orden (y el indice que lo sirve) depende de los criterios: lastName + id con prefijo de apellido,
+ * dateRegister + id con rango de fechas, y solo id en el resto (email y telefono son unicos).
+ * La paginacion es por cursor (keyset): el valor del campo de orden y el id del ultimo usuario de la pagina.
+ */
+@Data
+@ToString
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserSearch
+{
+    public static final String SORT_LAST_NAME = "lastName";
+    public static final String SORT_DATE_REGISTER = "dateRegister";
+    public static final String SORT_ID = "id";
+
+    private static final char CURSOR_SEPARATOR = '\u001F';
+
+    @ToString.Exclude
+    private String email;
+    @ToString.Exclude
+    private Integer phone;
+    private String lastNamePrefix;
+    private LocalDate registeredFrom;
+    private LocalDate registeredTo;
+
+    // Keyset: valor del campo de orden y id del ultimo usuario de la pagina anterior
+    private String afterKey;
+    private String afterId;
+
+    public boolean hasCriteria() {
+        return email != null || phone != null || lastNamePrefix != null || registeredFrom != null || registeredTo != null;
+    }
+
+    public String sortField() {
+        if (lastNamePrefix != null) {
+            return SORT_LAST_NAME;
+        }
+        return registeredFrom != null || registeredTo != null ? SORT_DATE_REGISTER : SORT_ID;
+    }
+
+    /**
+     * Cursor opaco para pedir la pagina siguiente a la que termina en last.
+     */
+    public String cursorAfter(User last) {
+        String key;
+        switch (sortField()) {
+            case SORT_LAST_NAME:
+                key = last.getLastName();
+                break;
+            case SORT_DATE_REGISTER:
+                key = last.getDateRegister() == null ? "" : last.getDateRegister().toString();
+                break;
+            default:
+                key = "";
+        }
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((key + CURSOR_SEPARATOR + last.getId()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Copia de la busqueda que continua desde el cursor; IllegalArgumentException si el cursor no es valido.
+     */
+    public UserSearch after(String cursor) {
+        String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        int separator = decoded.indexOf(CURSOR_SEPARATOR);
+        if (separator < 0 || separator == decoded.length() - 1) {
+            throw new IllegalArgumentException("malformed search cursor");
+        }
+        String key = decoded.substring(0, separator);
+        if (SORT_DATE_REGISTER.equals(sortField())) {
+            try {
+                LocalDate.parse(key);
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("search cursor does not match the criteria", e);
+            }
+        }
+        return toBuilder().afterKey(key).afterId(decoded.substring(separator + 1)).build();
+    }
+}
@@ -1,11 +1,22 @@
 package api.register.presentation;
 
+import api.register.application.UserBulkResult;
 import api.register.application.UserService;
+import api.register.application.limit.ConcurrencyLimitExceededException;
+import api.register.application.outbox.UserEventBroadcast;
+import api.register.application.queue.WriteQueuedException;
+import api.register.config.logging.LogSafe;
 import api.register.domain.User;
+import api.register.domain.UserSearch;
 import api.register.presentation.mapper.UserMapper;
+import api.register.presentation.model.UserBulkResultModel;
+import api.register.presentation.model.UserEventModel;
 import api.register.presentation.model.UserModel;
-import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
-import io.github.resilience4j.timelimiter.annotation.TimeLimiter;
+import api.register.presentation.model.UserPageModel;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import io.micrometer.core.annotation.Timed;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -15,13 +26,32 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import javax.validation.Valid;
+import javax.validation.Validator;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -29,11 +59,32 @@ import java.net.URI;
 @RequestMapping("/v1/user")
 public class UserController {
 
+    public static final String MERGE_PATCH_JSON_VALUE = "application/merge-patch+json";
+    public static final String PENDING_WRITE_HEADER = "X-Pending-Write";
+
     @Autowired(required = true)
     private UserService userService;
     @Autowired
     private UserMapper userMapper;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private Validator validator;
+    // JSON ya serializado de findById y findByIdentityDni; solo con user.response-cache.enabled
+    @Autowired(required = false)
+    private UserResponseCache userResponseCache;
+    // Difusion de los eventos del outbox; solo con user.outbox.enabled y user.outbox.sse.enabled
+    @Autowired(required = false)
+    private UserEventBroadcast userEventBroadcast;
+
+    @Value("${user.page.max-size:500}")
+    private int maxPageSize;
+    @Value("${user.batch-get.max-size:500}")
+    private int maxBatchGetSize;
+    @Value("${user.outbox.sse.heartbeat:15s}")
+    private Duration eventsHeartbeat;
+
     @Operation(summary = "Listar todos los usuarios registrados")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Se listaron todos los usuarios registrados",
@@ -44,71 +95,300 @@ public class UserController {
             @ApiResponse(responseCode = "404", description = "No se encontraron registros",
                     content = @Content) })
     @GetMapping("/findAll")
-    @CircuitBreaker(name = "userCircuit", fallbackMethod = "fallbackGetAllUsers")
-    @TimeLimiter(name = "userTimeLimiter")
     @Timed(description = "usersGetAll")
     public Flux<UserModel> getAll() {
-        log.info("getAll executed");
+        log.debug("getAll executed");
         return userService.findAll()
                 .map(user -> userMapper.entityToModel(user));
     }
 
+    @Operation(summary = "Listar solo los campos pedidos de todos los usuarios (fields=id,identityDni,email)")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Se listaron los campos pedidos de los usuarios",
+                    content = @Content(mediaType = "application/json")),
+            @ApiResponse(responseCode = "400", description = "Campos desconocidos",
+                    content = @Content) })
+    @GetMapping(value = "/findAll", params = "fields")
+    public ResponseEntity<Flux<Map<String, Object>>> getAllFields(@RequestParam String fields) {
+        log.debug("getAllFields executed {}", LogSafe.value(fields));
+        Set<String> projection = parseFields(fields);
+        return projection == null
+                ? ResponseEntity.badRequest().build()
+                : ResponseEntity.ok(userService.findAllFields(projection));
+    }
+
+    @Operation(summary = "Exportar todos los usuarios en streaming (NDJSON o SSE)")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Se exportaron los usuarios registrados",
+                    content = { @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                            schema = @Schema(implementation = UserModel.class)),
+                            @Content(mediaType = MediaType.TEXT_EVENT_STREAM_VALUE,
+                            schema = @Schema(implementation = UserModel.class)) }) })
+    @GetMapping(value = "/export", produces = { MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE })
+    public Flux<UserModel> export() {
+        log.debug("export executed");
+        // Cada usuario se escribe y se envia apenas llega del cursor de Mongo
+        return userService.export()
+                .map(user -> userMapper.entityToModel(user));
+    }
+
+    @Operation(summary = "Suscribirse a los cambios de usuarios (altas, modificaciones y bajas) por SSE")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Eventos en vivo; con Last-Event-ID (la secuencia del ultimo evento recibido), primero los publicados despues de ese evento",
+                    content = { @Content(mediaType = MediaType.TEXT_EVENT_STREAM_VALUE,
+                            schema = @Schema(implementation = UserEventModel.class)) }),
+            @ApiResponse(responseCode = "404", description = "El outbox o su difusion por SSE no estan habilitados",
+                    content = @Content) })
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<ServerSentEvent<UserEventModel>>> events(
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        log.debug("events executed {}", LogSafe.value(lastEventId));
+        if (userEventBroadcast == null) {
+            return ResponseEntity.notFound().build();
+        }
+        Flux<ServerSentEvent<UserEventModel>> events = userEventBroadcast.stream(lastEventId)
+                .map(event -> ServerSentEvent.builder(userMapper.eventToModel(event))
+                        .id(String.valueOf(event.getSequence()))
+                        .event(event.getType().name())
+                        .build());
+        // Comentarios periodicos para que los proxies no cierren una conexion sin cambios
+        Flux<ServerSentEvent<UserEventModel>> heartbeats = Flux.interval(eventsHeartbeat)
+                .map(tick -> ServerSentEvent.<UserEventModel>builder().comment("heartbeat").build());
+        return ResponseEntity.ok(Flux.merge(events, heartbeats));
+    }
+
+    @Operation(summary = "Listar usuarios paginados por cursor")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Se listo la pagina de usuarios",
+                    content = { @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = UserPageModel.class)) }),
+            @ApiResponse(responseCode = "400", description = "Parametros invalidos",
+                    content = @Content) })
+    @GetMapping("/page")
+    public Mono<UserPageModel> getPage(@RequestParam(required = false) String after,
+                                       @RequestParam(defaultValue = "50") int size) {
+        log.debug("getPage executed {}:{}", LogSafe.value(after), size);
+        int pageSize = Math.max(1, Math.min(size, maxPageSize));
+        return userService.findPage(after, pageSize)
+                .collectList()
+                .map(users -> UserPageModel.builder()
+                        .items(users.stream().map(user -> userMapper.entityToModel(user)).collect(Collectors.toList()))
+                        .next(users.size() == pageSize ? users.get(users.size() - 1).getId() : null)
+                        .build());
+    }
+
+    @Operation(summary = "Buscar usuarios por email, telefono, prefijo de apellido o rango de fecha de registro",
+            description = "Paginado por cursor: next se envia como after para pedir la pagina siguiente")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Se listo la pagina de usuarios encontrados",
+                    content = { @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = UserPageModel.class)) }),
+            @ApiResponse(responseCode = "400", description = "Sin criterios, rango de fechas invertido o cursor invalido",
+                    content = @Content) })
+    @GetMapping("/search")
+    public Mono<ResponseEntity<UserPageModel>> search(@RequestParam(required = false) String email,
+                                                      @RequestParam(required = false) Integer phone,
+                                                      @RequestParam(required = false) String lastName,
+                                                      @RequestParam(required = false)
+                                                      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate registeredFrom,
+                                                      @RequestParam(required = false)
+                                                      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate registeredTo,
+                                                      @RequestParam(required = false) String after,
+                                                      @RequestParam(defaultValue = "50") int size) {
+        UserSearch search = UserSearch.builder()
+                .email(email)
+                .phone(phone)
+                .lastNamePrefix(lastName == null || lastName.isEmpty() ? null : lastName)
+                .registeredFrom(registeredFrom)
+                .registeredTo(registeredTo)
+                .build();
+        log.debug("search executed {}:{}", search, size);
+        if (!search.hasCriteria() || (registeredFrom != null && registeredTo != null && registeredFrom.isAfter(registeredTo))) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        UserSearch page;
+        try {
+            page = after == null ? search : search.after(after);
+        } catch (IllegalArgumentException e) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        int pageSize = Math.max(1, Math.min(size, maxPageSize));
+        return userService.search(page, pageSize)
+                .collectList()
+                .map(users -> ResponseEntity.ok(UserPageModel.builder()
+                        .items(users.stream().map(user -> userMapper.entityToModel(user)).collect(Collectors.toList()))
+                        .next(users.size() == pageSize ? search.cursorAfter(users.get(users.size() - 1)) : null)
+                        .build()));
+    }
 
     @Operation(summary = "Listar todos los usuarios por Id")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Se listaron todos los usuarios por Id",
                     content = { @Content(mediaType = "application/json",
                             schema = @Schema(implementation = User.class)) }),
+            @ApiResponse(responseCode = "304", description = "El ETag enviado en If-None-Match sigue vigente",
+                    content = @Content),
             @ApiResponse(responseCode = "400", description = "Parametros invalidos",
                     content = @Content),
             @ApiResponse(responseCode = "404", description = "No se encontraron registros",
                     content = @Content) })
     @GetMapping("/findById/{id}")
-    @CircuitBreaker(name = "userCircuit", fallbackMethod = "fallbackFindById")
-    @TimeLimiter(name = "userTimeLimiter")
     @Timed(description = "usersGetById")
-    public Mono<ResponseEntity<UserModel>> findById(@PathVariable String id){
+    public Mono<ResponseEntity<byte[]>> findById(@PathVariable String id, ServerWebExchange exchange){
         return userService.findById(id)
-                .map(user -> userMapper.entityToModel(user))
+                .map(user -> conditionalGet(user, exchange))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    @Operation(summary = "Obtener solo los campos pedidos del usuario por Id")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Se obtuvieron los campos pedidos del usuario",
+                    content = @Content(mediaType = "application/json")),
+            @ApiResponse(responseCode = "400", description = "Campos desconocidos",
+                    content = @Content),
+            @ApiResponse(responseCode = "404", description = "No se encontraron registros",
+                    content = @Content) })
+    @GetMapping(value = "/findById/{id}", params = "fields")
+    public Mono<ResponseEntity<Map<String, Object>>> findByIdFields(@PathVariable String id, @RequestParam String fields){
+        Set<String> projection = parseFields(fields);
+        if (projection == null) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return userService.findByIdFields(id, projection)
                 .map(ResponseEntity::ok)
                 .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
+    @Operation(summary = "Obtener varios usuarios por Id en una sola llamada")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Se listaron los usuarios encontrados, en el orden pedido",
+                    content = { @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = UserModel.class)) }),
+            @ApiResponse(responseCode = "400", description = "Lista vacia o con mas ids de los permitidos",
+                    content = @Content) })
+    @PostMapping(value = "/findByIds", produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE })
+    public ResponseEntity<Flux<UserModel>> findByIds(@RequestBody List<String> ids){
+        log.debug("findByIds executed {}", ids.size());
+        if (ids.isEmpty() || ids.size() > maxBatchGetSize) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(userService.findAllById(ids)
+                .map(user -> userMapper.entityToModel(user)));
+    }
+
+    @Operation(summary = "Obtener varios usuarios por DNI en una sola llamada")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Se listaron los usuarios encontrados, en el orden pedido",
+                    content = { @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = UserModel.class)) }),
+            @ApiResponse(responseCode = "400", description = "Lista vacia o con mas DNI de los permitidos",
+                    content = @Content) })
+    @PostMapping(value = "/findByIdentityDnis", produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE })
+    public ResponseEntity<Flux<UserModel>> findByIdentityDnis(@RequestBody List<String> identityDnis){
+        log.debug("findByIdentityDnis executed {}", identityDnis.size());
+        if (identityDnis.isEmpty() || identityDnis.size() > maxBatchGetSize) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(userService.findAllByIdentityDni(identityDnis)
+                .map(user -> userMapper.entityToModel(user)));
+    }
+
     @Operation(summary = "Listar todos los usuarios por DNI")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Se listaron todos los usuarios por DNI",
                     content = { @Content(mediaType = "application/json",
                             schema = @Schema(implementation = User.class)) }),
+            @ApiResponse(responseCode = "304", description = "El ETag enviado en If-None-Match sigue vigente",
+                    content = @Content),
             @ApiResponse(responseCode = "400", description = "Parametros invalidos",
                     content = @Content),
             @ApiResponse(responseCode = "404", description = "No se encontraron registros",
                     content = @Content) })
     @GetMapping("/findByIdentityDni/{identityDni}")
-    @CircuitBreaker(name = "userCircuit", fallbackMethod = "fallbackFindByIdentityDni")
-    @TimeLimiter(name = "userTimeLimiter")
-    public Mono<ResponseEntity<UserModel>> findByIdentityDni(@PathVariable String identityDni){
-        log.info("findByIdentityDni executed {}", identityDni);
+    public Mono<ResponseEntity<byte[]>> findByIdentityDni(@PathVariable String identityDni, ServerWebExchange exchange){
+        log.debug("findByIdentityDni executed {}", LogSafe.dni(identityDni));
         Mono<User> response = userService.findByIdentityDni(identityDni);
         return response
-                .map(user -> userMapper.entityToModel(user))
+                .map(user -> conditionalGet(user, exchange))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    @Operation(summary = "Obtener solo los campos pedidos del usuario por DNI")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Se obtuvieron los campos pedidos del usuario",
+                    content = @Content(mediaType = "application/json")),
+            @ApiResponse(responseCode = "400", description = "Campos desconocidos",
+                    content = @Content),
+            @ApiResponse(responseCode = "404", description = "No se encontraron registros",
+                    content = @Content) })
+    @GetMapping(value = "/findByIdentityDni/{identityDni}", params = "fields")
+    public Mono<ResponseEntity<Map<String, Object>>> findByIdentityDniFields(@PathVariable String identityDni,
+                                                                             @RequestParam String fields){
+        log.debug("findByIdentityDniFields executed {}:{}", LogSafe.dni(identityDni), LogSafe.value(fields));
+        Set<String> projection = parseFields(fields);
+        if (projection == null) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return userService.findByIdentityDniFields(identityDni, projection)
                 .map(ResponseEntity::ok)
                 .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
+    // ETag: hash del JSON, que cambia con cualquier cambio de contenido aunque la version sea la misma (escrituras
+    // fuera del servicio que llegan por el change stream). Si coincide con If-None-Match se responde 304; con el JSON
+    // en UserResponseCache sin mapear ni serializar. El usuario sale del cache local o de Redis si esta, sin leer Mongo
+    private ResponseEntity<byte[]> conditionalGet(User user, ServerWebExchange exchange) {
+        UserResponseCache.Response response = serialize(user);
+        if (exchange.checkNotModified(response.getEtag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(response.getEtag()).build();
+        }
+        // byte[] se envuelve en el buffer de Netty sin copiarlo ni pasar otra vez por Jackson
+        return ResponseEntity.ok()
+                .eTag(response.getEtag())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(response.getJson());
+    }
+
+    private UserResponseCache.Response serialize(User user) {
+        UserResponseCache.Response response = userResponseCache == null ? null : userResponseCache.get(user);
+        if (response == null) {
+            byte[] json;
+            try {
+                json = objectMapper.writeValueAsBytes(userMapper.entityToModel(user));
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+            response = new UserResponseCache.Response(json, "\"" + DigestUtils.md5DigestAsHex(json) + "\"");
+            if (userResponseCache != null) {
+                userResponseCache.put(user, response);
+            }
+        }
+        return response;
+    }
+
+    // Lista separada por comas, en el orden pedido; null si esta vacia o trae campos desconocidos
+    private Set<String> parseFields(String fields) {
+        Set<String> projection = Arrays.stream(fields.split(","))
+                .map(String::trim)
+                .filter(field -> !field.isEmpty())
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        return projection.isEmpty() || !UserService.PROJECTABLE_FIELDS.containsAll(projection) ? null : projection;
+    }
+
     @Operation(summary = "Registro de los Usuarios")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Se registro el Usuario de manera exitosa",
                     content = { @Content(mediaType = "application/json",
                             schema = @Schema(implementation = User.class)) }),
+            @ApiResponse(responseCode = "202", description = "Mongo no disponible: la escritura quedo encolada (cabecera X-Pending-Write)",
+                    content = @Content),
             @ApiResponse(responseCode = "400", description = "Parametros invalidos",
                     content = @Content),
             @ApiResponse(responseCode = "404", description = "No se encontraron registros",
                     content = @Content) })
     @PostMapping
-    @CircuitBreaker(name = "userCircuit", fallbackMethod = "fallbackCreateUser")
-    @TimeLimiter(name = "userTimeLimiter")
     public Mono<ResponseEntity<UserModel>> create(@Valid @RequestBody UserModel request){
-        log.info("create executed {}", request);
+        log.debug("create executed {}", LogSafe.dni(request.getIdentityDni()));
         return userService.create(userMapper.modelToEntity(request))
                 .map(user -> userMapper.entityToModel(user))
                 .flatMap(c -> Mono.just(ResponseEntity.created(URI.create(String.format("http://%s:%s/%s/%s", "register", "9080", "user", c.getId())))
@@ -116,25 +396,94 @@ public class UserController {
                 .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
+    @Operation(summary = "Registro masivo de Usuarios")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Se proceso el lote; cada elemento informa su resultado",
+                    content = { @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                            schema = @Schema(implementation = UserBulkResultModel.class)) }),
+            @ApiResponse(responseCode = "400", description = "Parametros invalidos",
+                    content = @Content) })
+    @PostMapping(value = "/bulk",
+            consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE },
+            produces = { MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE })
+    public Flux<UserBulkResultModel> createBulk(@RequestBody Flux<UserModel> request){
+        log.debug("createBulk executed");
+        return userService.createAll(request.map(model -> userMapper.modelToEntity(model)))
+                .map(this::toBulkResultModel);
+    }
+
+    private UserBulkResultModel toBulkResultModel(UserBulkResult result) {
+        boolean created = result.getStatus() == UserBulkResult.Status.CREATED;
+        return UserBulkResultModel.builder()
+                .index(result.getIndex())
+                .status(result.getStatus().name())
+                .id(created ? result.getUser().getId() : null)
+                .imei(created ? result.getUser().getImei() : null)
+                .message(result.getMessage())
+                .build();
+    }
+
     @Operation(summary = "Actualizar el usuario por ID")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Se actualizará el usuario por el ID",
                     content = { @Content(mediaType = "application/json",
                             schema = @Schema(implementation = User.class)) }),
+            @ApiResponse(responseCode = "202", description = "Mongo no disponible: la escritura quedo encolada (cabecera X-Pending-Write)",
+                    content = @Content),
             @ApiResponse(responseCode = "400", description = "Parametros invalidos",
                     content = @Content),
             @ApiResponse(responseCode = "404", description = "No se encontraron registros",
+                    content = @Content),
+            @ApiResponse(responseCode = "409", description = "La version enviada ya no es la vigente",
                     content = @Content) })
     @PutMapping("/{id}")
-    @CircuitBreaker(name = "userCircuit", fallbackMethod = "fallbackUpdateUser")
-    @TimeLimiter(name = "userTimeLimiter")
     public Mono<ResponseEntity<UserModel>> updateById(@PathVariable String id, @Valid @RequestBody UserModel request){
-        log.info("updateById executed {}:{}", id, request);
+        log.debug("updateById executed {}:{}", LogSafe.value(id), LogSafe.dni(request.getIdentityDni()));
         return userService.update(id, userMapper.modelToEntity(request))
                 .map(user -> userMapper.entityToModel(user))
                 .flatMap(c -> Mono.just(ResponseEntity.created(URI.create(String.format("http://%s:%s/%s/%s", "register", "9080", "user", c.getId())))
                         .body(c)))
-                .defaultIfEmpty(ResponseEntity.badRequest().build());
+                .defaultIfEmpty(ResponseEntity.badRequest().build())
+                .onErrorResume(OptimisticLockingFailureException.class,
+                        e -> Mono.just(ResponseEntity.status(HttpStatus.CONFLICT).build()));
+    }
+
+    @Operation(summary = "Actualizar parcialmente el usuario por ID (JSON Merge Patch)")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Se aplicaron los campos enviados; sin cambios no se escribe nada",
+                    content = { @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = UserModel.class)) }),
+            @ApiResponse(responseCode = "202", description = "Mongo no disponible: la escritura quedo encolada (cabecera X-Pending-Write)",
+                    content = @Content),
+            @ApiResponse(responseCode = "400", description = "Campos desconocidos, no editables o invalidos",
+                    content = @Content),
+            @ApiResponse(responseCode = "404", description = "No se encontraron registros",
+                    content = @Content),
+            @ApiResponse(responseCode = "409", description = "La version enviada ya no es la vigente",
+                    content = @Content) })
+    @PatchMapping(value = "/{id}", consumes = { MERGE_PATCH_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE })
+    public Mono<ResponseEntity<UserModel>> patchById(@PathVariable String id, @RequestBody Map<String, Object> request){
+        log.debug("patchById executed {}:{}", LogSafe.value(id), LogSafe.value(request.keySet()));
+        Set<String> fields = new HashSet<>(request.keySet());
+        fields.remove("version");
+        if (fields.isEmpty() || !UserService.PATCHABLE_FIELDS.containsAll(fields)) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        UserModel model;
+        try {
+            model = objectMapper.convertValue(request, UserModel.class);
+        } catch (IllegalArgumentException e) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        // Solo se validan los campos enviados; un null (borrado en merge patch) no es valido en campos obligatorios
+        if (fields.stream().anyMatch(field -> !validator.validateProperty(model, field).isEmpty())) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return userService.patch(id, userMapper.modelToEntity(model), fields)
+                .map(user -> ResponseEntity.ok(userMapper.entityToModel(user)))
+                .defaultIfEmpty(ResponseEntity.notFound().build())
+                .onErrorResume(OptimisticLockingFailureException.class,
+                        e -> Mono.just(ResponseEntity.status(HttpStatus.CONFLICT).build()));
     }
 
     @Operation(summary = "Eliminar Usuario por ID")
@@ -142,19 +491,31 @@ public class UserController {
             @ApiResponse(responseCode = "200", description = "Se elimino el usuario por ID",
                     content = { @Content(mediaType = "application/json",
                             schema = @Schema(implementation = User.class)) }),
+            @ApiResponse(responseCode = "202", description = "Mongo no disponible: la escritura quedo encolada (cabecera X-Pending-Write)",
+                    content = @Content),
             @ApiResponse(responseCode = "400", description = "Parametros invalidos",
                     content = @Content),
             @ApiResponse(responseCode = "404", description = "No se encontraron registros",
                     content = @Content) })
     @DeleteMapping("/{id}")
-    @CircuitBreaker(name = "userCircuit", fallbackMethod = "fallbackDeleteUser")
-    @TimeLimiter(name = "userTimeLimiter")
     public Mono<ResponseEntity<Void>> deleteById(@PathVariable String id){
-        log.info("deleteById executed {}", id);
+        log.debug("deleteById executed {}", LogSafe.value(id));
         return userService.delete(id)
                 .map( r -> ResponseEntity.ok().<Void>build())
                 .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
+    // Mongo no disponible: la escritura quedo en la cola local y se aplicara cuando el circuito se cierre
+    @ExceptionHandler(WriteQueuedException.class)
+    public ResponseEntity<Void> queued(WriteQueuedException e) {
+        log.warn("write queued: {}", e.getMessage());
+        return ResponseEntity.accepted().header(PENDING_WRITE_HEADER, e.getPendingWriteId()).build();
+    }
 
+    // Carga descartada por un bulkhead, el limite adaptativo o un circuito abierto: el cliente puede reintentar
+    @ExceptionHandler({ BulkheadFullException.class, ConcurrencyLimitExceededException.class, CallNotPermittedException.class })
+    public ResponseEntity<Void> overloaded(RuntimeException e) {
+        log.warn("request shed: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+    }
 }
@@ -0,0 +1,95 @@
+package api.register.presentation;
+
+import api.register.domain.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Objects;
+
+/**
+ * JSON ya serializado de las respuestas de findById y findByIdentityDni, con su ETag, por id de usuario.
+ *
+ * Cada entrada guarda una copia del usuario con el que se genero y solo se usa si el usuario leido tiene el mismo
+ * contenido. La version no basta: las escrituras hechas fuera del servicio llegan al cache por el change stream
+ * sin cambiarla.
+ */
+@Component
+@ConditionalOnProperty(name = "user.response-cache.enabled", havingValue = "true")
+public class UserResponseCache {
+
+    private final Cache<String, Entry> cache;
+
+    public UserResponseCache(@Value("${user.response-cache.maximum-size:10000}") long maximumSize,
+                             MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "userResponseCache");
+    }
+
+    /**
+     * Respuesta generada con este mismo contenido del usuario, o null si no esta.
+     */
+    public Response get(User user) {
+        Entry entry = cache.getIfPresent(user.getId());
+        return entry != null && sameContent(entry.source, user) ? entry.response : null;
+    }
+
+    public void put(User user, Response response) {
+        User source = new User();
+        BeanUtils.copyProperties(user, source);
+        cache.put(user.getId(), new Entry(source, response));
+    }
+
+    // Todos los campos persistidos; los transitorios (scanAvailable, prefetch) no forman parte de la respuesta
+    private static boolean sameContent(User cached, User user) {
+        return Objects.equals(cached.getId(), user.getId())
+                && Objects.equals(cached.getVersion(), user.getVersion())
+                && Objects.equals(cached.getIdentityDni(), user.getIdentityDni())
+                && Objects.equals(cached.getFirstName(), user.getFirstName())
+                && Objects.equals(cached.getLastName(), user.getLastName())
+                && Objects.equals(cached.getAddress(), user.getAddress())
+                && Objects.equals(cached.getPhone(), user.getPhone())
+                && Objects.equals(cached.getEmail(), user.getEmail())
+                && Objects.equals(cached.getImei(), user.getImei())
+                && Objects.equals(cached.getDateRegister(), user.getDateRegister());
+    }
+
+    /**
+     * JSON de la respuesta y su ETag (hash del JSON).
+     */
+    public static final class Response {
+        private final byte[] json;
+        private final String etag;
+
+        public Response(byte[] json, String etag) {
+            this.json = json;
+            this.etag = etag;
+        }
+
+        public byte[] getJson() {
+            return json;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+    }
+
+    private static final class Entry {
+        private final User source;
+        private final Response response;
+
+        private Entry(User source, Response response) {
+            this.source = source;
+            this.response = response;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package api.register.presentation.mapper;
 
 import api.register.domain.User;
+import api.register.domain.UserEvent;
+import api.register.presentation.model.UserEventModel;
 import api.register.presentation.model.UserModel;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
@@ -11,6 +13,7 @@ public interface UserMapper {
 
     User modelToEntity (UserModel model);
     UserModel entityToModel(User event);
+    UserEventModel eventToModel(UserEvent event);
     @Mapping(target = "id", ignore=true)
     void update(@MappingTarget User entity, User updateEntity);
 
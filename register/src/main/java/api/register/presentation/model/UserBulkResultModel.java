@@ -0,0 +1,24 @@
+package api.register.presentation.model;
+
+import lombok.*;
+
+import java.io.Serializable;
+
+@Data
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserBulkResultModel implements Serializable
+{
+    // Posicion del usuario dentro del lote recibido
+    private long index;
+
+    private String status;
+
+    private String id;
+
+    private String imei;
+
+    private String message;
+}
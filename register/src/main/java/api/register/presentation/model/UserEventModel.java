@@ -0,0 +1,32 @@
+package api.register.presentation.model;
+
+import lombok.*;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+@Data
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserEventModel implements Serializable
+{
+    private String id;
+
+    // Orden de publicacion; es el id del evento SSE y el valor a enviar en Last-Event-ID al reconectar
+    private Long sequence;
+
+    // CREATED, UPDATED o DELETED
+    private String type;
+
+    private String userId;
+
+    // Un consumidor puede ignorar los eventos de un usuario con version menor o igual a la ya aplicada
+    private Long version;
+
+    @ToString.Exclude
+    private UserModel user;
+
+    private Instant occurredAt;
+}
@@ -45,6 +45,9 @@ public class UserModel implements Serializable
     @JsonSerialize(using = LocalDateSerializer.class)
     private LocalDate dateRegister;
 
+    // Si se envia en la actualizacion, solo se aplica cuando coincide con la version guardada (409 si no)
+    private Long version;
+
     @JsonIgnore
     private boolean scanAvailable;
     @JsonIgnore
@@ -0,0 +1,19 @@
+package api.register.presentation.model;
+
+import lombok.*;
+
+import java.io.Serializable;
+import java.util.List;
+
+@Data
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserPageModel implements Serializable
+{
+    private List<UserModel> items;
+
+    // Cursor para la siguiente pagina (null cuando no hay mas registros)
+    private String next;
+}
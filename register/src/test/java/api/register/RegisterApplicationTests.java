@@ -3,7 +3,7 @@ package api.register;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(properties = "user.write-queue.directory=target/register-data")
 class RegisterApplicationTests {
 
 	@Test
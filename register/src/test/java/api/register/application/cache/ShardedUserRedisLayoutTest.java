@@ -0,0 +1,105 @@
+package api.register.application.cache;
+
+import api.register.config.UserBinaryRedisSerializer;
+import api.register.domain.User;
+import api.register.support.InMemoryRedis;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedUserRedisLayoutTest {
+
+    private InMemoryRedis redis;
+    private RedisSerializer<User> serializer;
+    private ReactiveStringRedisTemplate template;
+    private ShardedUserRedisLayout layout;
+
+    @BeforeEach
+    void setUp() {
+        redis = new InMemoryRedis(Duration.ZERO);
+        serializer = new UserBinaryRedisSerializer(new Jackson2JsonRedisSerializer<>(User.class), 1024);
+        template = redis.template();
+        layout = new ShardedUserRedisLayout(redis.userValueOperations(serializer), template, 4,
+                Duration.ofHours(1), Duration.ofMinutes(10), 2, 2);
+    }
+
+    private static User user(int i) {
+        return User.builder().id("id-" + i).identityDni(String.valueOf(40000000 + i)).version(1L).build();
+    }
+
+    @Test
+    void testKeysOfABucketShareTheClusterSlotAndTtlIsJittered() {
+        int bucket = layout.bucket("6387b7bb67dd4a1d78553555");
+
+        assertEquals(bucket, layout.bucket("6387b7bb67dd4a1d78553555"));
+        assertTrue(ShardedUserRedisLayout.userKey(bucket, "x").startsWith("UserRedis:{" + bucket + "}:"));
+        assertTrue(ShardedUserRedisLayout.idsKey(bucket).startsWith("UserRedis:{" + bucket + "}:"));
+        for (int i = 0; i < 100; i++) {
+            Duration ttl = layout.entryTtl();
+            assertTrue(ttl.compareTo(Duration.ofHours(1)) >= 0 && ttl.compareTo(Duration.ofMinutes(70)) <= 0);
+        }
+        assertEquals(Duration.ofHours(1), layout.snapshotTtl());
+    }
+
+    @Test
+    void testReadsSpanBucketsAndKeepTheRequestedOrder() {
+        Map<String, User> users = IntStream.range(0, 10).mapToObj(ShardedUserRedisLayoutTest::user)
+                .collect(Collectors.toMap(User::getId, user -> user));
+        StepVerifier.create(layout.putAll(users).then(Mono.defer(() -> layout.removeAll(List.of("id-3")))))
+                .verifyComplete();
+
+        StepVerifier.create(layout.getAll(Arrays.asList("id-7", "missing", "id-3", "id-0")))
+                .assertNext(found -> {
+                    assertEquals("id-7", found.get(0).getId());
+                    assertNull(found.get(1));
+                    assertNull(found.get(2));
+                    assertEquals("id-0", found.get(3).getId());
+                })
+                .verifyComplete();
+        StepVerifier.create(layout.scanAll().map(User::getId).collect(Collectors.toSet()))
+                .assertNext(ids -> assertEquals(9, ids.size()))
+                .verifyComplete();
+
+        StepVerifier.create(layout.indexDnis(Map.of("UserRedis:dni:40000007", "id-7"))
+                        .then(Mono.defer(() -> layout.findByDni("UserRedis:dni:40000007", "-"))))
+                .assertNext(found -> assertEquals(Optional.of("id-7"), found.map(User::getId)))
+                .verifyComplete();
+    }
+
+    @Test
+    void testMigrationDropsTheLegacyHashWithoutCopyingIt() {
+        ReactiveHashOperations<String, String, User> hash = redis.hashOperations(serializer);
+        User newer = user(1);
+        newer.setVersion(2L);
+        StepVerifier.create(hash.putAll(HashUserRedisLayout.USERS_KEY, Map.of("id-1", user(1), "id-2", user(2),
+                        "id-3", user(3)))
+                .then(template.opsForValue().set(HashUserRedisLayout.SNAPSHOT_KEY, "1"))
+                .then(layout.putAll(Map.of("id-1", newer))))
+                .verifyComplete();
+
+        UserRedisLayoutMigration migration = new UserRedisLayoutMigration(layout, hash, template, 2);
+        StepVerifier.create(migration.migrate()).expectNext(3L).verifyComplete();
+
+        // Solo queda lo que los nodos escribieron en la estructura nueva; el resto se lee de Mongo
+        StepVerifier.create(layout.scanAll().collect(Collectors.toMap(User::getId, User::getVersion)))
+                .assertNext(versions -> assertEquals(Map.of("id-1", 2L), versions))
+                .verifyComplete();
+        StepVerifier.create(hash.size(HashUserRedisLayout.USERS_KEY)).expectNext(0L).verifyComplete();
+        StepVerifier.create(template.hasKey(HashUserRedisLayout.SNAPSHOT_KEY)).expectNext(false).verifyComplete();
+    }
+}
@@ -0,0 +1,114 @@
+package api.register.application.cache;
+
+import api.register.application.metrics.StageMetrics;
+import api.register.config.CacheWarmupReadinessConfig;
+import api.register.domain.User;
+import api.register.domain.UserRepository;
+import com.netflix.appinfo.InstanceInfo.InstanceStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.availability.ApplicationAvailabilityBean;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.cloud.commons.util.InetUtils;
+import org.springframework.cloud.commons.util.InetUtilsProperties;
+import org.springframework.cloud.netflix.eureka.EurekaInstanceConfigBean;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserCacheWarmupTest {
+
+    @Mock
+    private UserRepository userRepository;
+    @Mock
+    private UserRedisCache userRedisCache;
+    @Mock
+    private UserLocalCache userLocalCache;
+    @Mock
+    private ObjectProvider<?> eureka;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @SuppressWarnings("unchecked")
+    private UserCacheWarmup warmup(Duration timeout) {
+        return new UserCacheWarmup(userRepository, userRedisCache, userLocalCache, new StageMetrics(meterRegistry),
+                meterRegistry, 0, 2, 2, 0, timeout, (ObjectProvider) eureka);
+    }
+
+    // readinessState con la aplicacion ya lista (ACCEPTING_TRAFFIC): solo la precarga puede dejarlo fuera de servicio
+    private HealthIndicator readiness(UserCacheWarmup warmup) {
+        ApplicationAvailabilityBean availability = new ApplicationAvailabilityBean();
+        availability.onApplicationEvent(new AvailabilityChangeEvent<>(this, ReadinessState.ACCEPTING_TRAFFIC));
+        return new CacheWarmupReadinessConfig().readinessStateHealthIndicator(availability, warmup);
+    }
+
+    @Test
+    void testLoadsMongoInBatchesAndMarksTheSnapshot() {
+        User a = User.builder().id("1").identityDni("11111111").build();
+        User b = User.builder().id("2").identityDni("22222222").build();
+        User c = User.builder().id("3").identityDni("33333333").build();
+        when(userRedisCache.isSnapshotComplete()).thenReturn(Mono.just(false));
+        when(userRedisCache.beginSnapshot()).thenReturn(Mono.just(7L));
+        when(userRepository.streamAll()).thenReturn(Flux.just(a, b, c));
+        when(userRedisCache.putAll(anyCollection())).thenReturn(Mono.empty());
+        when(userRedisCache.completeSnapshot(7L)).thenReturn(Mono.just(true));
+        UserCacheWarmup warmup = warmup(Duration.ofSeconds(5));
+
+        HealthIndicator readiness = readiness(warmup);
+        assertEquals(Status.OUT_OF_SERVICE, readiness.health().getStatus());
+        StepVerifier.create(warmup.warmUp()).verifyComplete();
+
+        verify(userRedisCache).putAll(List.of(a, b));
+        verify(userRedisCache).putAll(List.of(c));
+        verify(userLocalCache).put(c);
+        verify(userRedisCache).completeSnapshot(7L);
+        assertEquals(Status.UP, readiness.health().getStatus());
+        assertEquals(3L, ((Map<?, ?>) readiness.health().getDetails().get("cacheWarmup")).get("entries"));
+        assertEquals(1L, meterRegistry.get("user.cache.warmup.duration")
+                .tags("source", "mongo", "outcome", "completed").timer().count());
+    }
+
+    @Test
+    void testTimeoutStillMarksTheNodeReady() {
+        when(userRedisCache.isSnapshotComplete()).thenReturn(Mono.just(true));
+        when(userRedisCache.scanAll()).thenReturn(Flux.never());
+        UserCacheWarmup warmup = warmup(Duration.ofMillis(50));
+
+        StepVerifier.create(warmup.warmUp()).verifyComplete();
+
+        assertEquals(UserCacheWarmup.State.TIMEOUT, warmup.state());
+        assertEquals(Status.UP, readiness(warmup).health().getStatus());
+        verifyZeroInteractions(userRepository);
+    }
+
+    @Test
+    void nodeIsRegisteredInEurekaAsStarting() {
+        EurekaInstanceConfigBean config = new EurekaInstanceConfigBean(new InetUtils(new InetUtilsProperties()));
+
+        CacheWarmupReadinessConfig.eurekaStartingStatus().postProcessAfterInitialization(config, "eurekaInstanceConfigBean");
+
+        assertEquals(InstanceStatus.STARTING, config.getInitialStatus());
+    }
+}
@@ -0,0 +1,85 @@
+package api.register.application.cache;
+
+import api.register.application.cache.UserChangeStreamSync.Change;
+import api.register.domain.User;
+import com.mongodb.client.model.changestream.OperationType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserChangeStreamSyncTest {
+
+    @Mock
+    private ReactiveMongoTemplate mongoTemplate;
+    @Mock
+    private UserRedisCache userRedisCache;
+    @Mock
+    private UserLocalCache userLocalCache;
+
+    private SimpleMeterRegistry meterRegistry;
+    private UserChangeStreamSync sync;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        sync = new UserChangeStreamSync(mongoTemplate, userRedisCache, userLocalCache, 500,
+                Duration.ofMillis(100), meterRegistry);
+    }
+
+    @Test
+    void testBatchKeepsTheLastChangeOfEachUser() {
+        User first = User.builder().id("1").identityDni("11111111").version(1L).build();
+        User second = User.builder().id("1").identityDni("11111111").version(2L).build();
+        User other = User.builder().id("2").identityDni("22222222").version(1L).build();
+        Instant now = Instant.now();
+        when(userRedisCache.putAll(anyCollection())).thenReturn(Mono.empty());
+        when(userRedisCache.removeAll(anyCollection())).thenReturn(Mono.empty());
+        when(userRedisCache.saveResumeToken(any())).thenReturn(Mono.empty());
+
+        StepVerifier.create(sync.apply(List.of(
+                        new Change(OperationType.INSERT, "1", first, "{\"_data\": \"a\"}", now),
+                        new Change(OperationType.UPDATE, "2", other, "{\"_data\": \"b\"}", now),
+                        new Change(OperationType.UPDATE, "1", second, "{\"_data\": \"c\"}", now),
+                        new Change(OperationType.DELETE, "2", null, "{\"_data\": \"d\"}", now))))
+                .verifyComplete();
+
+        verify(userRedisCache).putAll(List.of(second));
+        verify(userRedisCache).removeAll(List.of("2"));
+        verify(userLocalCache).refresh(second);
+        verify(userLocalCache).evict("2");
+        verify(userRedisCache).saveResumeToken("{\"_data\": \"d\"}");
+        assertEquals(2.0, meterRegistry.counter("user.change-stream.coalesced").count());
+    }
+
+    @Test
+    void testInvalidatedStreamClearsTheCacheAndStartsOver() {
+        when(userRedisCache.clear()).thenReturn(Mono.empty());
+        when(userRedisCache.saveResumeToken(null)).thenReturn(Mono.empty());
+
+        StepVerifier.create(sync.apply(List.of(
+                        new Change(OperationType.DROP, null, null, "{\"_data\": \"e\"}", Instant.now()),
+                        new Change(OperationType.INVALIDATE, null, null, "{\"_data\": \"f\"}", Instant.now()))))
+                .verifyComplete();
+
+        verify(userRedisCache).clear();
+        verify(userRedisCache).saveResumeToken(null);
+        verify(userRedisCache, never()).putAll(anyCollection());
+        verifyZeroInteractions(userLocalCache);
+    }
+}
@@ -0,0 +1,71 @@
+package api.register.application.cache;
+
+import api.register.domain.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+@ExtendWith(MockitoExtension.class)
+class UserLocalCacheTest {
+
+    @Mock
+    private ReactiveStringRedisTemplate redisTemplate;
+
+    private SimpleMeterRegistry meterRegistry;
+    private UserLocalCache userLocalCache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        userLocalCache = new UserLocalCache(100, Duration.ofMinutes(1), 100, Duration.ofHours(1),
+                redisTemplate, meterRegistry);
+    }
+
+    @Test
+    void testConcurrentMissesShareOneLoad() {
+        User user = User.builder().id("1").identityDni("12345678").build();
+        Sinks.One<User> source = Sinks.one();
+        AtomicInteger loads = new AtomicInteger();
+
+        StepVerifier first = StepVerifier.create(userLocalCache.get("1", id -> {
+            loads.incrementAndGet();
+            return source.asMono();
+        })).expectNext(user).expectComplete().verifyLater();
+        StepVerifier second = StepVerifier.create(userLocalCache.get("1", id -> {
+            loads.incrementAndGet();
+            return source.asMono();
+        })).expectNext(user).expectComplete().verifyLater();
+        source.tryEmitValue(user);
+        first.verify();
+        second.verify();
+
+        assertEquals(1, loads.get());
+        assertEquals(1.0, meterRegistry.counter("user.cache.coalesced", "operation", "findById").count());
+        assertSame(user, userLocalCache.get("1"));
+    }
+
+    @Test
+    void testLoadIsRetriedAfterCompletion() {
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            StepVerifier.create(userLocalCache.get("1", id -> {
+                loads.incrementAndGet();
+                return Mono.empty();
+            })).expectComplete().verify();
+        }
+        assertEquals(2, loads.get());
+    }
+}
@@ -0,0 +1,104 @@
+package api.register.application.cache;
+
+import api.register.application.limit.AdaptiveConcurrencyLimiter;
+import api.register.application.metrics.StageMetrics;
+import api.register.domain.User;
+import api.register.support.InMemoryRedis;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UserRedisCacheTest {
+
+    @Mock
+    private UserRedisLayout layout;
+    private InMemoryRedis redis;
+    private UserRedisCache userRedisCache;
+
+    @BeforeEach
+    void setUp() {
+        redis = new InMemoryRedis(Duration.ZERO);
+        ReactiveStringRedisTemplate redisTemplate = redis.template();
+        userRedisCache = new UserRedisCache(layout, redisTemplate, Duration.ofSeconds(30),
+                new AdaptiveConcurrencyLimiter("redis", 50, 4, 500, Duration.ofMillis(50), new SimpleMeterRegistry()),
+                CircuitBreakerRegistry.ofDefaults(), new StageMetrics(new SimpleMeterRegistry()));
+    }
+
+    @Test
+    void testFailedPutEvictsThePreviousEntry() {
+        User user = User.builder().id("1").identityDni("12345678").version(2L).build();
+        when(layout.putAll(Map.of("1", user))).thenReturn(Mono.error(new IllegalStateException("redis timeout")));
+        when(layout.snapshotVersionKey()).thenReturn(HashUserRedisLayout.SNAPSHOT_VERSION_KEY);
+        when(layout.snapshotKey()).thenReturn(HashUserRedisLayout.SNAPSHOT_KEY);
+        when(layout.removeAll(List.of("1"))).thenReturn(Mono.empty());
+        redis.set(HashUserRedisLayout.SNAPSHOT_KEY, "7");
+
+        StepVerifier.create(userRedisCache.put(user))
+                .verifyComplete();
+
+        verify(layout).removeAll(List.of("1"));
+        StepVerifier.create(userRedisCache.isSnapshotComplete())
+                .expectNext(false)
+                .verifyComplete();
+    }
+
+    @Test
+    void testLimiterRejectionsAreCacheMissesWithoutWarnings() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        UserRedisCache limited = new UserRedisCache(layout, redis.template(), Duration.ofSeconds(30),
+                new AdaptiveConcurrencyLimiter("redis", 1, 1, 1, Duration.ofSeconds(1), meterRegistry),
+                CircuitBreakerRegistry.ofDefaults(), new StageMetrics(meterRegistry));
+        when(layout.get("1")).thenReturn(Mono.never());
+        Logger logger = (Logger) LoggerFactory.getLogger(UserRedisCache.class);
+        ListAppender<ILoggingEvent> logs = new ListAppender<>();
+        logs.start();
+        logger.addAppender(logs);
+        try {
+            // La primera lectura ocupa el unico permiso; la segunda se rechaza
+            Disposable inFlight = limited.get("1").subscribe();
+            StepVerifier.create(limited.get("2")).verifyComplete();
+            inFlight.dispose();
+        } finally {
+            logger.detachAppender(logs);
+        }
+
+        assertEquals(1.0, meterRegistry.counter("user.concurrency.rejected", "store", "redis").count());
+        assertTrue(logs.list.stream().noneMatch(event -> event.getLevel() == Level.WARN));
+    }
+
+    @Test
+    void testFailedEvictionIsOnlyLogged() {
+        User user = User.builder().id("1").identityDni("12345678").version(2L).build();
+        when(layout.putAll(anyMap())).thenReturn(Mono.error(new IllegalStateException("redis down")));
+        when(layout.snapshotVersionKey()).thenReturn(HashUserRedisLayout.SNAPSHOT_VERSION_KEY);
+        when(layout.snapshotKey()).thenReturn(HashUserRedisLayout.SNAPSHOT_KEY);
+        when(layout.removeAll(List.of("1"))).thenReturn(Mono.error(new IllegalStateException("redis down")));
+
+        StepVerifier.create(userRedisCache.putAll(List.of(user)))
+                .verifyComplete();
+    }
+}
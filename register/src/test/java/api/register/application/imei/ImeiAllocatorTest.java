@@ -0,0 +1,122 @@
+package api.register.application.imei;
+
+import api.register.domain.ImeiSequenceRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ImeiAllocatorTest {
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger reservations = new AtomicInteger();
+    private final ImeiSequenceRepository imeiSequenceRepository = new ImeiSequenceRepository() {
+        @Override
+        public Mono<Long> reserve(long blockSize) {
+            return Mono.fromSupplier(() -> {
+                reservations.incrementAndGet();
+                return sequence.getAndAdd(blockSize);
+            });
+        }
+    };
+
+    @Test
+    void allocatesLuhnValidImeisFromTheConfiguredTac() {
+        ImeiAllocator allocator = new ImeiAllocator(imeiSequenceRepository, Collections.singletonList("35328945"),
+                10, new SimpleMeterRegistry());
+
+        StepVerifier.create(allocator.allocate())
+                .expectNext("353289450000007")
+                .expectComplete()
+                .verify();
+        String imei = allocator.allocate().block();
+        assertEquals(15, imei.length());
+        assertTrue(imei.startsWith("35328945"));
+        assertTrue(isLuhnValid(imei));
+    }
+
+    @Test
+    void concurrentAllocationsAreUniqueAndReserveWholeBlocks() {
+        ImeiAllocator allocator = new ImeiAllocator(imeiSequenceRepository, Collections.singletonList("35328945"),
+                100, new SimpleMeterRegistry());
+
+        List<String> imeis = Flux.range(0, 5000)
+                .parallel(8)
+                .runOn(Schedulers.parallel())
+                .flatMap(i -> allocator.allocate())
+                .sequential()
+                .collectList()
+                .block();
+
+        assertEquals(5000, imeis.stream().distinct().count());
+        assertTrue(imeis.stream().allMatch(ImeiAllocatorTest::isLuhnValid));
+        // Una reserva por bloque de 100 (mas a lo sumo la de prefetch del ultimo bloque)
+        assertTrue(reservations.get() <= 51, "reservations: " + reservations.get());
+    }
+
+    @Test
+    void movesToTheNextTacWhenSerialsRunOut() {
+        sequence.set(ImeiAllocator.SERIALS_PER_TAC - 1);
+        ImeiAllocator allocator = new ImeiAllocator(imeiSequenceRepository, Arrays.asList("35328945", "35328946"),
+                1, new SimpleMeterRegistry());
+
+        assertTrue(allocator.allocate().block().startsWith("35328945999999"));
+        assertTrue(allocator.allocate().block().startsWith("35328946000000"));
+        StepVerifier.create(new ImeiAllocator(imeiSequenceRepository, Collections.singletonList("35328945"), 1,
+                        new SimpleMeterRegistry()).allocate())
+                .expectError(IllegalStateException.class)
+                .verify();
+    }
+
+    @Test
+    void rejectsBlockSizesThatStraddleTacs() {
+        ImeiSequenceRepository repository = mock(ImeiSequenceRepository.class);
+        assertThrows(IllegalArgumentException.class, () -> new ImeiAllocator(repository,
+                Collections.singletonList("35328945"), 3, new SimpleMeterRegistry()));
+        assertThrows(IllegalArgumentException.class, () -> new ImeiAllocator(repository,
+                Collections.singletonList("3532894"), 10, new SimpleMeterRegistry()));
+    }
+
+    @Test
+    void reservationFailuresPropagateAndAreRetried() {
+        ImeiSequenceRepository repository = mock(ImeiSequenceRepository.class);
+        when(repository.reserve(anyLong()))
+                .thenReturn(Mono.error(new IllegalStateException("mongo down")))
+                .thenReturn(Mono.just(0L));
+        ImeiAllocator allocator = new ImeiAllocator(repository, Collections.singletonList("35328945"), 10,
+                new SimpleMeterRegistry());
+
+        StepVerifier.create(allocator.allocate()).expectErrorMessage("mongo down").verify();
+        StepVerifier.create(allocator.allocate()).expectNext("353289450000007").expectComplete().verify();
+    }
+
+    private static boolean isLuhnValid(String imei) {
+        int sum = 0;
+        for (int i = 0; i < imei.length(); i++) {
+            int digit = imei.charAt(imei.length() - 1 - i) - '0';
+            if (i % 2 == 1) {
+                digit *= 2;
+                if (digit > 9) {
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+        }
+        return sum % 10 == 0;
+    }
+}
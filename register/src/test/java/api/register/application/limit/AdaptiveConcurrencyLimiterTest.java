@@ -0,0 +1,72 @@
+package api.register.application.limit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void rejectsCallsAboveTheLimitWithoutSubscribing() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("mongo", 1, 1, 10,
+                Duration.ofSeconds(1), meterRegistry);
+        Sinks.One<String> pending = Sinks.one();
+        limiter.mono(pending.asMono()).subscribe();
+
+        StepVerifier.create(limiter.mono(Mono.just("second")))
+                .expectError(ConcurrencyLimitExceededException.class)
+                .verify();
+        assertEquals(1.0, meterRegistry.counter("user.concurrency.rejected", "store", "mongo").count());
+
+        pending.tryEmitValue("first");
+        assertEquals(0, limiter.getInFlight());
+        StepVerifier.create(limiter.mono(Mono.just("third")))
+                .expectNext("third")
+                .expectComplete()
+                .verify();
+    }
+
+    @Test
+    void growsAdditivelyWhileFastAndShrinksOnSlowCalls() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("redis", 2, 1, 4,
+                Duration.ofMillis(200), meterRegistry);
+        // Con una llamada siempre en curso el limite esta en uso y puede crecer
+        Sinks.One<Integer> pending = Sinks.one();
+        limiter.mono(pending.asMono()).subscribe();
+        for (int i = 0; i < 20; i++) {
+            limiter.mono(Mono.just(i)).block();
+        }
+        assertTrue(limiter.getLimit() > 2, "limit should grow while calls are fast");
+        assertTrue(limiter.getLimit() <= 4);
+        pending.tryEmitValue(0);
+
+        limiter.mono(Mono.just(0).delayElement(Duration.ofMillis(300))).block();
+        assertEquals(1.0, meterRegistry.counter("user.concurrency.decreased", "store", "redis").count());
+    }
+
+    @Test
+    void slowCallsNeverGoBelowTheMinimum() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("mongo", 3, 2, 10,
+                Duration.ZERO, meterRegistry);
+        for (int i = 0; i < 10; i++) {
+            limiter.mono(Mono.just(i).delayElement(Duration.ofMillis(1))).block();
+        }
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    void rejectsInconsistentLimits() {
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimiter("mongo", 5, 6, 10,
+                Duration.ofSeconds(1), meterRegistry));
+    }
+}
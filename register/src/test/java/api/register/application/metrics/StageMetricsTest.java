@@ -0,0 +1,58 @@
+package api.register.application.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StageMetricsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final StageMetrics stageMetrics = new StageMetrics(meterRegistry);
+
+    @Test
+    void recordsOneSamplePerCallWithItsOutcome() {
+        StepVerifier.create(stageMetrics.mono(StageMetrics.MONGO, "findById", Mono.just("user")))
+                .expectNext("user")
+                .expectComplete()
+                .verify();
+        StepVerifier.create(stageMetrics.mono(StageMetrics.MONGO, "findById", Mono.error(new IllegalStateException())))
+                .expectError(IllegalStateException.class)
+                .verify();
+        // next() cancela despues del primer valor: cuenta como cancelado, una sola vez
+        StepVerifier.create(stageMetrics.flux(StageMetrics.REDIS, "scanAll", Flux.just(1, 2, 3)).next())
+                .expectNext(1)
+                .expectComplete()
+                .verify();
+
+        assertEquals(1, count(StageMetrics.MONGO, "findById", "success"));
+        assertEquals(1, count(StageMetrics.MONGO, "findById", "error"));
+        assertEquals(1, count(StageMetrics.REDIS, "scanAll", "cancelled"));
+    }
+
+    @Test
+    void countsStoreCallsOfTheRequestInContext() {
+        StageMetrics.StoreCalls calls = new StageMetrics.StoreCalls();
+        Mono<String> request = stageMetrics.mono(StageMetrics.SERVICE, "findById",
+                stageMetrics.mono(StageMetrics.REDIS, "get", Mono.<String>empty())
+                        .switchIfEmpty(stageMetrics.mono(StageMetrics.MONGO, "findById", Mono.just("user")))
+                        .flatMap(user -> stageMetrics.mono(StageMetrics.REDIS, "put", Mono.just(user))));
+
+        StepVerifier.create(request.contextWrite(calls::putIn))
+                .expectNext("user")
+                .expectComplete()
+                .verify();
+        assertEquals(1, calls.getMongo());
+        assertEquals(2, calls.getRedis());
+    }
+
+    private long count(String stage, String operation, String outcome) {
+        return meterRegistry.get(StageMetrics.STAGE_TIMER)
+                .tags("stage", stage, "operation", operation, "outcome", outcome)
+                .timer()
+                .count();
+    }
+}
@@ -0,0 +1,89 @@
+package api.register.application.outbox;
+
+import api.register.domain.UserEvent;
+import api.register.domain.UserEventRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UserEventBroadcastTest {
+
+    private static final String FIRST = "650000000000000000000001";
+    private static final String SECOND = "650000000000000000000002";
+    private static final String THIRD = "650000000000000000000003";
+
+    @Mock
+    private ReactiveStringRedisTemplate redisTemplate;
+    @Mock
+    private UserEventRepository userEventRepository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Test
+    void testReconnectReplaysFromMongoThenContinuesLiveWithoutDuplicates() {
+        UserEventBroadcast broadcast = new UserEventBroadcast(redisTemplate, userEventRepository, objectMapper, 100);
+        Sinks.Many<UserEvent> stored = Sinks.many().unicast().onBackpressureBuffer();
+        when(userEventRepository.findPublishedAfter(1L)).thenReturn(stored.asFlux());
+
+        StepVerifier.create(broadcast.stream("1").map(UserEvent::getSequence))
+                .then(() -> {
+                    // Llega en vivo mientras se lee Mongo y Mongo tambien lo devuelve: se entrega una sola vez
+                    broadcast.emit(json(event(SECOND, 2L)));
+                    stored.tryEmitNext(event(SECOND, 2L));
+                    stored.tryEmitComplete();
+                })
+                .expectNext(2L)
+                .then(() -> broadcast.emit(json(event(THIRD, 3L))))
+                .expectNext(3L)
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void testEventCommittedLateIsDeliveredAfterALaterId() {
+        UserEventBroadcast broadcast = new UserEventBroadcast(redisTemplate, userEventRepository, objectMapper, 100);
+        // THIRD se publico antes que FIRST (confirmado tarde, con un ObjectId menor): el cursor es la secuencia
+        when(userEventRepository.findPublishedAfter(2L)).thenReturn(Flux.just(event(THIRD, 3L)));
+
+        StepVerifier.create(broadcast.stream("2").map(UserEvent::getId))
+                .expectNext(THIRD)
+                .then(() -> broadcast.emit(json(event(FIRST, 4L))))
+                .expectNext(FIRST)
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void testUnknownLastEventIdStartsLive() {
+        UserEventBroadcast broadcast = new UserEventBroadcast(redisTemplate, userEventRepository, objectMapper, 100);
+
+        StepVerifier.create(broadcast.stream("not-an-event-id").map(UserEvent::getId))
+                .then(() -> broadcast.emit(json(event(FIRST, 1L))))
+                .expectNext(FIRST)
+                .thenCancel()
+                .verify();
+    }
+
+    private String json(UserEvent event) {
+        try {
+            return objectMapper.writeValueAsString(List.of(event));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static UserEvent event(String id, long sequence) {
+        return UserEvent.builder().id(id).sequence(sequence).type(UserEvent.Type.UPDATED).userId("1").version(1L).build();
+    }
+}
@@ -0,0 +1,132 @@
+package api.register.application.outbox;
+
+import api.register.domain.UserEvent;
+import api.register.domain.UserEventRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UserOutboxPublisherTest {
+
+    @Mock
+    private UserEventRepository userEventRepository;
+
+    @Test
+    void testFullBatchesAreDrainedInOrderAndMarkedPublished() {
+        RecordingSink sink = new RecordingSink();
+        UserOutboxPublisher publisher = publisher(sink);
+        when(userEventRepository.acquireLease(anyString(), any())).thenReturn(Mono.just(true));
+        when(userEventRepository.findPending(2))
+                .thenReturn(Flux.just(event("a1"), event("a2")), Flux.just(event("a3")));
+        assignSequences();
+        when(userEventRepository.markPublished(any(), any())).thenReturn(Mono.just(1L));
+
+        StepVerifier.create(publisher.drain())
+                .expectNext(3)
+                .verifyComplete();
+
+        assertEquals(List.of(List.of("a1", "a2"), List.of("a3")), sink.batches);
+        // Los destinos reciben cada evento con su secuencia de publicacion ya asignada
+        assertEquals(List.of(1L, 2L, 3L), sink.sequences);
+        verify(userEventRepository).markPublished(eq(List.of("a1", "a2")), any());
+        verify(userEventRepository).markPublished(eq(List.of("a3")), any());
+    }
+
+    @Test
+    void testBatchStaysPendingWhenASinkFails() {
+        UserEventSink failing = mock(UserEventSink.class);
+        when(failing.publish(any())).thenReturn(Mono.error(new IllegalStateException("broker down")));
+        when(failing.name()).thenReturn("broker");
+        UserOutboxPublisher publisher = publisher(failing);
+        when(userEventRepository.acquireLease(anyString(), any())).thenReturn(Mono.just(true));
+        when(userEventRepository.findPending(2)).thenReturn(Flux.just(event("a1")));
+        assignSequences();
+
+        StepVerifier.create(publisher.drain())
+                .expectError(IllegalStateException.class)
+                .verify();
+
+        verify(userEventRepository, never()).markPublished(any(), any());
+    }
+
+    @Test
+    void testOnlyTheLeaseHolderPublishes() {
+        RecordingSink sink = new RecordingSink();
+        UserOutboxPublisher publisher = publisher(sink);
+        when(userEventRepository.acquireLease(anyString(), any())).thenReturn(Mono.just(false));
+
+        StepVerifier.create(publisher.drain())
+                .expectNext(0)
+                .verifyComplete();
+
+        verify(userEventRepository, never()).findPending(anyInt());
+        assertEquals(0, sink.batches.size());
+    }
+
+    // Como el contador de Mongo: numeros consecutivos desde 1 en el orden de cada lote
+    private void assignSequences() {
+        AtomicLong next = new AtomicLong(1);
+        when(userEventRepository.assignSequences(any())).thenAnswer(invocation -> {
+            List<UserEvent> batch = invocation.getArgument(0);
+            batch.forEach(event -> event.setSequence(next.getAndIncrement()));
+            return Mono.empty();
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private UserOutboxPublisher publisher(UserEventSink sink) {
+        ObjectProvider<UserEventSink> sinks = mock(ObjectProvider.class);
+        when(sinks.orderedStream()).thenReturn(Stream.of(sink));
+        return new UserOutboxPublisher(userEventRepository, sinks, new SimpleMeterRegistry(),
+                2, Duration.ofMillis(200), Duration.ofSeconds(10), Duration.ofDays(7));
+    }
+
+    private static UserEvent event(String id) {
+        return UserEvent.builder().id(id).type(UserEvent.Type.CREATED).userId("u-" + id).version(0L).build();
+    }
+
+    private static final class RecordingSink implements UserEventSink {
+        private final List<List<String>> batches = new ArrayList<>();
+        private final List<Long> sequences = new ArrayList<>();
+
+        @Override
+        public String name() {
+            return "recording";
+        }
+
+        @Override
+        public Mono<Void> publish(List<UserEvent> events) {
+            return Mono.fromRunnable(() -> {
+                List<String> ids = new ArrayList<>();
+                events.forEach(event -> {
+                    ids.add(event.getId());
+                    sequences.add(event.getSequence());
+                });
+                batches.add(ids);
+            });
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package api.register.application.outbox;
+
+import api.register.domain.UserEventRepository;
+import com.mongodb.MongoException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.UncategorizedMongoDbException;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UserOutboxTest {
+
+    @Mock
+    private UserEventRepository userEventRepository;
+    @Mock
+    private TransactionalOperator transaction;
+
+    @Test
+    void testWriteConflictsRetryTheTransactionThenSurfaceTheMongoError() {
+        when(transaction.transactional(any(Mono.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        UserOutbox outbox = new UserOutbox(userEventRepository, transaction, 2);
+        AtomicInteger attempts = new AtomicInteger();
+        Mono<String> write = Mono.defer(() -> {
+            attempts.incrementAndGet();
+            MongoException conflict = new MongoException(112, "WriteConflict");
+            conflict.addLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL);
+            return Mono.error(new UncategorizedMongoDbException("WriteConflict", conflict));
+        });
+
+        StepVerifier.create(outbox.atomically(write))
+                .expectError(UncategorizedMongoDbException.class)
+                .verify();
+        assertEquals(3, attempts.get());
+    }
+}
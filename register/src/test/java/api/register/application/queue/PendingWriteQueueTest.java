@@ -0,0 +1,111 @@
+package api.register.application.queue;
+
+import api.register.domain.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PendingWriteQueueTest {
+
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void writesSurviveARestart() {
+        PendingWriteQueue queue = newQueue(10);
+        assertTrue(queue.offer(write("1", PendingWrite.Operation.CREATE)));
+        assertTrue(queue.offer(write("2", PendingWrite.Operation.DELETE)));
+
+        PendingWriteQueue restarted = newQueue(10);
+        assertEquals(2, restarted.size());
+        List<PendingWrite> replayed = new ArrayList<>();
+        StepVerifier.create(restarted.replay(write -> {
+                    replayed.add(write);
+                    return Mono.just(true);
+                }))
+                .expectNext(2)
+                .expectComplete()
+                .verify();
+        assertEquals("1", replayed.get(0).getId());
+        assertEquals("46285513", replayed.get(0).getUser().getIdentityDni());
+        assertEquals(LocalDate.of(2023, 8, 26), replayed.get(0).getUser().getDateRegister());
+        assertEquals(PendingWrite.Operation.DELETE, replayed.get(1).getOperation());
+        assertEquals(0, newQueue(10).size());
+    }
+
+    @Test
+    void replayStopsAtTheFirstWriteThatMustBeRetried() {
+        PendingWriteQueue queue = newQueue(10);
+        queue.offer(write("1", PendingWrite.Operation.CREATE));
+        queue.offer(write("2", PendingWrite.Operation.UPDATE));
+        queue.offer(write("3", PendingWrite.Operation.DELETE));
+
+        StepVerifier.create(queue.replay(write -> Mono.just(!"2".equals(write.getId()))))
+                .expectNext(1)
+                .expectComplete()
+                .verify();
+        assertEquals(2, queue.size());
+        assertEquals(2, newQueue(10).size());
+    }
+
+    @Test
+    void rejectsWritesBeyondCapacity() {
+        PendingWriteQueue queue = newQueue(1);
+        assertTrue(queue.offer(write("1", PendingWrite.Operation.CREATE)));
+        assertFalse(queue.offer(write("2", PendingWrite.Operation.CREATE)));
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    void journalIsReadableOnlyByTheOwner() throws IOException {
+        Path dataDirectory = directory.resolve("data");
+        new PendingWriteQueue(dataDirectory.toString(), 10, objectMapper, new SimpleMeterRegistry())
+                .offer(write("1", PendingWrite.Operation.CREATE));
+
+        Path journal = dataDirectory.resolve(PendingWriteQueue.JOURNAL_FILE);
+        assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(journal));
+        assertEquals(PosixFilePermissions.fromString("rwx------"), Files.getPosixFilePermissions(dataDirectory));
+    }
+
+    @Test
+    void requiresAConfiguredDirectory() {
+        assertThrows(IllegalStateException.class,
+                () -> new PendingWriteQueue("", 10, objectMapper, new SimpleMeterRegistry()));
+    }
+
+    private PendingWriteQueue newQueue(int capacity) {
+        return new PendingWriteQueue(directory.toString(), capacity, objectMapper, new SimpleMeterRegistry());
+    }
+
+    private PendingWrite write(String id, PendingWrite.Operation operation) {
+        return PendingWrite.builder()
+                .id(id)
+                .operation(operation)
+                .userId("6387b7bb67dd4a1d78553555")
+                .user(User.builder()
+                        .identityDni("46285513")
+                        .firstName("Luis Andres")
+                        .dateRegister(LocalDate.of(2023, 8, 26))
+                        .build())
+                .queuedAt(1L)
+                .build();
+    }
+}
@@ -0,0 +1,42 @@
+package api.register.benchmark;
+
+import api.register.domain.User;
+import api.register.presentation.mapper.UserMapper;
+import api.register.presentation.mapper.UserMapperImpl;
+import api.register.presentation.model.UserModel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion entidad <-> modelo que hace UserController en cada respuesta.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class UserMapperBenchmark {
+
+    private final UserMapper userMapper = new UserMapperImpl();
+
+    private User user;
+    private UserModel model;
+
+    @Setup
+    public void setUp() {
+        user = UserSerializerBenchmark.sampleUser();
+        model = userMapper.entityToModel(user);
+    }
+
+    @Benchmark
+    public UserModel entityToModel() {
+        return userMapper.entityToModel(user);
+    }
+
+    @Benchmark
+    public User modelToEntity() {
+        return userMapper.modelToEntity(model);
+    }
+}
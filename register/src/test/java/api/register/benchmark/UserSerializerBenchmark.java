@@ -0,0 +1,84 @@
+package api.register.benchmark;
+
+import api.register.config.UserBinaryRedisSerializer;
+import api.register.domain.User;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara el serializador JSON actual con el binario compacto del hash "UserRedis".
+ * Ejecutar con: mvn -Pbenchmark verify -Djmh.includes=UserSerializerBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class UserSerializerBenchmark {
+
+    private final RedisSerializer<User> json = new Jackson2JsonRedisSerializer<>(User.class);
+    private final RedisSerializer<User> binary = new UserBinaryRedisSerializer(json, 1024);
+
+    private User user;
+    private byte[] jsonBytes;
+    private byte[] binaryBytes;
+
+    @Setup
+    public void setUp() {
+        user = sampleUser();
+        jsonBytes = json.serialize(user);
+        binaryBytes = binary.serialize(user);
+    }
+
+    @Benchmark
+    public byte[] jsonSerialize() {
+        return json.serialize(user);
+    }
+
+    @Benchmark
+    public User jsonDeserialize() {
+        return json.deserialize(jsonBytes);
+    }
+
+    @Benchmark
+    public byte[] binarySerialize() {
+        return binary.serialize(user);
+    }
+
+    @Benchmark
+    public User binaryDeserialize() {
+        return binary.deserialize(binaryBytes);
+    }
+
+    static User sampleUser() {
+        return User.builder()
+                .id("6387b7bb67dd4a1d78553555")
+                .identityDni("46285513")
+                .firstName("Luis Andres")
+                .lastName("Acuña Ramos")
+                .address("Urb. La Tombola")
+                .phone(985632147)
+                .email("lacunaraaaaa@gmail.com")
+                .imei("353289457621331")
+                .dateRegister(LocalDate.of(2023, 8, 26))
+                .build();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        User user = sampleUser();
+        RedisSerializer<User> json = new Jackson2JsonRedisSerializer<>(User.class);
+        System.out.printf("bytes per user: json=%d binary=%d%n",
+                json.serialize(user).length, new UserBinaryRedisSerializer(json, 1024).serialize(user).length);
+        new Runner(new OptionsBuilder()
+                .include(UserSerializerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,136 @@
+package api.register.benchmark;
+
+import api.register.application.UserService;
+import api.register.application.cache.UserLocalCache;
+import api.register.application.cache.HashUserRedisLayout;
+import api.register.application.cache.UserRedisCache;
+import api.register.application.imei.ImeiAllocator;
+import api.register.application.limit.AdaptiveConcurrencyLimiter;
+import api.register.application.metrics.StageMetrics;
+import api.register.config.UserBinaryRedisSerializer;
+import api.register.domain.ImeiSequenceRepository;
+import api.register.domain.User;
+import api.register.domain.UserRepository;
+import api.register.support.InMemoryRedis;
+import api.register.support.InMemoryUserRepository;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rutas completas de UserService (cache local, Redis y Mongo) contra sustitutos en memoria sin latencia,
+ * de modo que solo se mide el coste propio del servicio, los caches y la serializacion.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class UserServiceBenchmark {
+
+    private static final int USERS = 1000;
+
+    private final InMemoryRedis redis = new InMemoryRedis(Duration.ZERO);
+
+    private UserService userService;
+    private UserLocalCache userLocalCache;
+    private ImeiAllocator imeiAllocator;
+    private String userId;
+
+    @Setup
+    public void setUp() {
+        Map<String, User> store = new ConcurrentSkipListMap<>();
+        for (int i = 0; i < USERS; i++) {
+            User user = UserSerializerBenchmark.sampleUser();
+            user.setId(new ObjectId().toHexString());
+            user.setIdentityDni(String.valueOf(40000000 + i));
+            store.put(user.getId(), user);
+        }
+        userId = store.keySet().iterator().next();
+        UserRepository userRepository = InMemoryUserRepository.create(store, Duration.ZERO);
+
+        RedisSerializer<User> json = new Jackson2JsonRedisSerializer<>(User.class);
+        RedisSerializer<User> serializer = new UserBinaryRedisSerializer(json, 1024);
+        ReactiveStringRedisTemplate template = redis.template();
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        StageMetrics stageMetrics = new StageMetrics(meterRegistry);
+        UserRedisCache userRedisCache = new UserRedisCache(
+                new HashUserRedisLayout(redis.hashOperations(serializer), template, serializer, 500), template,
+                Duration.ofSeconds(30),
+                new AdaptiveConcurrencyLimiter("redis", 500, 4, 500, Duration.ofMillis(50), meterRegistry),
+                CircuitBreakerRegistry.ofDefaults(), stageMetrics);
+
+        userLocalCache = new UserLocalCache(10000, Duration.ofMinutes(5), 10000, Duration.ofHours(1),
+                template, meterRegistry);
+        // Contador circular: el benchmark supera con creces el millon de numeros de serie de un TAC
+        AtomicLong sequence = new AtomicLong();
+        imeiAllocator = new ImeiAllocator(new ImeiSequenceRepository() {
+            @Override
+            public Mono<Long> reserve(long blockSize) {
+                return Mono.fromSupplier(() -> sequence.getAndAdd(blockSize) % 1_000_000);
+            }
+        }, Collections.singletonList("35328945"), 1000, meterRegistry);
+
+        userService = new UserService();
+        ReflectionTestUtils.setField(userService, "userRepository", userRepository);
+        ReflectionTestUtils.setField(userService, "userRedisCache", userRedisCache);
+        ReflectionTestUtils.setField(userService, "userLocalCache", userLocalCache);
+        ReflectionTestUtils.setField(userService, "imeiAllocator", imeiAllocator);
+        ReflectionTestUtils.setField(userService, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(userService, "mongoLimiter",
+                new AdaptiveConcurrencyLimiter("mongo", 200, 2, 200, Duration.ofMillis(250), meterRegistry));
+        ReflectionTestUtils.setField(userService, "stageMetrics", stageMetrics);
+        ReflectionTestUtils.setField(userService, "cacheBatchSize", 500);
+
+        // Deja el hash completo y marcado como snapshot, igual que tras el primer findAll en produccion
+        userService.findAll().then().block();
+    }
+
+    @Benchmark
+    public User findByIdLocalHit() {
+        return userService.findById(userId).block();
+    }
+
+    @Benchmark
+    public User findByIdRedisHit() {
+        // Fuerza el fallo en L1 para que la lectura llegue al hash de Redis
+        userLocalCache.invalidate(userId);
+        return userService.findById(userId).block();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<User> findAllSnapshot() {
+        return userService.findAll().collectList().block();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<User> findAllRebuild() {
+        // Sin la marca de snapshot findAll vuelve a leer Mongo y reescribe el hash por lotes
+        redis.remove(HashUserRedisLayout.SNAPSHOT_KEY);
+        return userService.findAll().collectList().block();
+    }
+
+    @Benchmark
+    public String allocateImei() {
+        // Incluye el cambio de bloque cada 1000 IMEI, contra un contador en memoria
+        return imeiAllocator.allocate().block();
+    }
+}
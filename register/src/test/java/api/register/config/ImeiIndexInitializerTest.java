@@ -0,0 +1,54 @@
+package api.register.config;
+
+import api.register.domain.User;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.ReactiveIndexOperations;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Collections;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ImeiIndexInitializerTest {
+
+    @Mock
+    private ReactiveMongoTemplate mongoTemplate;
+    @Mock
+    private ReactiveIndexOperations indexOperations;
+
+    @Test
+    void testCreatesTheUniqueSparseImeiIndexOnceMongoAnswers() {
+        when(mongoTemplate.indexOps(User.class)).thenReturn(indexOperations);
+        when(indexOperations.ensureIndex(any(IndexDefinition.class)))
+                .thenReturn(Mono.error(new DataAccessResourceFailureException("mongo down")), Mono.just("imei"));
+        // Como el contexto que configura Spring Boot: LocalDate y demas tipos de Mongo no son entidades
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(new MongoCustomConversions(Collections.emptyList()).getSimpleTypeHolder());
+        ImeiIndexInitializer initializer = new ImeiIndexInitializer(mongoTemplate, mappingContext);
+
+        StepVerifier.withVirtualTime(initializer::ensureIndex)
+                .thenAwait(Duration.ofSeconds(5))
+                .expectNext("imei")
+                .verifyComplete();
+
+        verify(indexOperations, times(2)).ensureIndex(argThat(index -> Document.parse("{imei: 1}").equals(index.getIndexKeys())
+                && index.getIndexOptions().getBoolean("unique", false)
+                && index.getIndexOptions().getBoolean("sparse", false)));
+    }
+}
@@ -0,0 +1,48 @@
+package api.register.config;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.circuitbreaker.autoconfigure.CircuitBreakerAutoConfiguration;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.ConfigDataApplicationContextInitializer;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Circuitos construidos con la configuracion de application.yml
+class ResilienceConfigurationTest {
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withInitializer(new ConfigDataApplicationContextInitializer())
+            .withConfiguration(AutoConfigurations.of(CircuitBreakerAutoConfiguration.class));
+
+    @Test
+    void testDuplicatesDoNotOpenTheWriteCircuit() {
+        contextRunner.run(context -> {
+            CircuitBreaker userWrite = context.getBean(CircuitBreakerRegistry.class).circuitBreaker("userWrite");
+            for (int i = 0; i < 20; i++) {
+                userWrite.onError(0, TimeUnit.MILLISECONDS, new DuplicateKeyException("E11000 duplicate key error"));
+                userWrite.onError(0, TimeUnit.MILLISECONDS, new DataIntegrityViolationException("constraint violated"));
+            }
+            assertEquals(CircuitBreaker.State.CLOSED, userWrite.getState());
+            assertEquals(0, userWrite.getMetrics().getNumberOfFailedCalls());
+        });
+    }
+
+    @Test
+    void testStoreFailuresOpenTheWriteCircuit() {
+        contextRunner.run(context -> {
+            CircuitBreaker userWrite = context.getBean(CircuitBreakerRegistry.class).circuitBreaker("userWrite");
+            for (int i = 0; i < 10; i++) {
+                userWrite.onError(0, TimeUnit.MILLISECONDS, new DataAccessResourceFailureException("mongo down"));
+            }
+            assertEquals(CircuitBreaker.State.OPEN, userWrite.getState());
+        });
+    }
+}
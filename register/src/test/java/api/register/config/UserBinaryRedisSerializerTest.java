@@ -0,0 +1,101 @@
+package api.register.config;
+
+import api.register.domain.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserBinaryRedisSerializerTest {
+
+    private final RedisSerializer<User> json = new Jackson2JsonRedisSerializer<>(User.class);
+    private final UserBinaryRedisSerializer serializer = new UserBinaryRedisSerializer(json, 1024);
+
+    @Test
+    void testRoundTrip() {
+        User user = createUser();
+        User decoded = serializer.deserialize(serializer.serialize(user));
+        assertUserEquals(user, decoded);
+    }
+
+    @Test
+    void testRoundTripWithNonObjectIdAndMissingFields() {
+        User user = User.builder().id("custom-id").identityDni("01234567").firstName("Ñandú 🙂").imei("0123").build();
+        User decoded = serializer.deserialize(serializer.serialize(user));
+        assertUserEquals(user, decoded);
+        assertNull(decoded.getDateRegister());
+        assertNull(decoded.getPhone());
+    }
+
+    @Test
+    void testReadsExistingJsonEntries() {
+        User user = createUser();
+        User decoded = serializer.deserialize(json.serialize(user));
+        assertUserEquals(user, decoded);
+    }
+
+    @Test
+    void testCompressesLargeEntries() {
+        UserBinaryRedisSerializer compressing = new UserBinaryRedisSerializer(json, 0);
+        User user = createUser();
+        user.setAddress("Urb. La Tombola Mz A Lote 12 ".repeat(3));
+        byte[] bytes = compressing.serialize(user);
+        assertEquals(1, bytes[2]);
+        assertUserEquals(user, serializer.deserialize(bytes));
+    }
+
+    @Test
+    void testTruncatedEntriesFailInsteadOfHanging() {
+        UserBinaryRedisSerializer compressing = new UserBinaryRedisSerializer(json, 0);
+        User user = createUser();
+        user.setAddress("Urb. La Tombola Mz A Lote 12 ".repeat(3));
+        byte[] bytes = compressing.serialize(user);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(1), () -> {
+            assertThrows(SerializationException.class,
+                    () -> serializer.deserialize(Arrays.copyOf(bytes, bytes.length / 2)));
+            assertThrows(SerializationException.class,
+                    () -> serializer.deserialize(new byte[]{UserBinaryRedisSerializer.MAGIC, 1}));
+        });
+    }
+
+    @Test
+    void testIsSmallerThanJson() {
+        User user = createUser();
+        assertTrue(serializer.serialize(user).length * 2 < json.serialize(user).length);
+    }
+
+    private User createUser() {
+        return User.builder()
+                .id("6387b7bb67dd4a1d78553555")
+                .identityDni("46285513")
+                .firstName("Luis Andres")
+                .lastName("Acuña Ramos")
+                .address("Urb. La Tombola")
+                .phone(985632147)
+                .email("lacunaraaaaa@gmail.com")
+                .imei("353289457621331")
+                .dateRegister(LocalDate.of(2023, 8, 26))
+                .version(3L)
+                .build();
+    }
+
+    private void assertUserEquals(User expected, User actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getIdentityDni(), actual.getIdentityDni());
+        assertEquals(expected.getFirstName(), actual.getFirstName());
+        assertEquals(expected.getLastName(), actual.getLastName());
+        assertEquals(expected.getAddress(), actual.getAddress());
+        assertEquals(expected.getPhone(), actual.getPhone());
+        assertEquals(expected.getEmail(), actual.getEmail());
+        assertEquals(expected.getImei(), actual.getImei());
+        assertEquals(expected.getDateRegister(), actual.getDateRegister());
+        assertEquals(expected.getVersion(), actual.getVersion());
+    }
+}
@@ -0,0 +1,46 @@
+package api.register.config.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DebugSamplingTurboFilterTest {
+
+    private final LoggerContext context = new LoggerContext();
+    private final Logger logger = context.getLogger("api.register");
+    private final DebugSamplingTurboFilter filter = new DebugSamplingTurboFilter();
+
+    @Test
+    void samplesEnabledDebugEvents() {
+        logger.setLevel(Level.DEBUG);
+        filter.setRate(10);
+        int passed = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (decide(Level.DEBUG, "findById executed {}", null) == FilterReply.NEUTRAL) {
+                passed++;
+            }
+        }
+        assertTrue(passed > 700 && passed < 1300, "sampled " + passed);
+    }
+
+    @Test
+    void keepsInfoErrorsAndLevelChecks() {
+        logger.setLevel(Level.DEBUG);
+        filter.setRate(1_000_000);
+        assertEquals(FilterReply.NEUTRAL, decide(Level.INFO, "replayed", null));
+        assertEquals(FilterReply.NEUTRAL, decide(Level.DEBUG, "failed", new IllegalStateException()));
+        // isDebugEnabled() llega sin formato y no se muestrea
+        assertEquals(FilterReply.NEUTRAL, decide(Level.DEBUG, null, null));
+        logger.setLevel(Level.INFO);
+        assertEquals(FilterReply.NEUTRAL, decide(Level.DEBUG, "disabled", null));
+    }
+
+    private FilterReply decide(Level level, String format, Throwable t) {
+        return filter.decide(null, logger, level, format, null, t);
+    }
+}
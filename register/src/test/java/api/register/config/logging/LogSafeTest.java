@@ -0,0 +1,56 @@
+package api.register.config.logging;
+
+import api.register.domain.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogSafeTest {
+
+    @Test
+    void masksPersonalDataOfUser() {
+        User user = User.builder()
+                .id("6387b7bb67dd4a1d78553555")
+                .identityDni("46285513")
+                .firstName("Luis Andres")
+                .lastName("Acuña Ramos")
+                .phone(985632147)
+                .email("lacuna@gmail.com")
+                .imei("353289457621331")
+                .version(3L)
+                .build();
+
+        assertEquals("User(id=6387b7bb67dd4a1d78553555, identityDni=46******, email=l*****@gmail.com, version=3)",
+                LogSafe.user(user).toString());
+        String plain = user.toString();
+        assertFalse(plain.contains("46285513"));
+        assertFalse(plain.contains("Luis"));
+        assertFalse(plain.contains("lacuna"));
+        assertFalse(plain.contains("985632147"));
+    }
+
+    @Test
+    void truncatesClientValuesAndStripsLineBreaks() {
+        String value = LogSafe.value("id\r\nforged=1" + "x".repeat(100)).toString();
+        assertFalse(value.contains("\n"));
+        assertTrue(value.endsWith("...(112)"));
+        assertEquals(LogSafe.MAX_LENGTH + "...(112)".length(), value.length());
+    }
+
+    @Test
+    void buildsNothingUntilRendered() {
+        AtomicInteger rendered = new AtomicInteger();
+        Object lazy = LogSafe.value(new Object() {
+            @Override
+            public String toString() {
+                return "rendered " + rendered.incrementAndGet();
+            }
+        });
+        assertEquals(0, rendered.get());
+        assertEquals("rendered 1", lazy.toString());
+    }
+}
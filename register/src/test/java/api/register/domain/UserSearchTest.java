@@ -0,0 +1,65 @@
+package api.register.domain;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserSearchTest {
+
+    @Test
+    void testCursorContinuesAfterLastUserOfThePage() {
+        UserSearch search = UserSearch.builder().lastNamePrefix("Acu").build();
+        User last = User.builder().id("6387b7bb67dd4a1d78553555").lastName("Acuña Ramos").build();
+
+        UserSearch next = search.after(search.cursorAfter(last));
+
+        assertEquals("Acuña Ramos", next.getAfterKey());
+        assertEquals("6387b7bb67dd4a1d78553555", next.getAfterId());
+        assertEquals("Acu", next.getLastNamePrefix());
+    }
+
+    @Test
+    void testRejectsCursorOfAnotherSort() {
+        UserSearch byName = UserSearch.builder().lastNamePrefix("Acu").build();
+        UserSearch byDate = UserSearch.builder().registeredFrom(LocalDate.of(2023, 1, 1)).build();
+        String cursor = byName.cursorAfter(User.builder().id("1").lastName("Acuña").build());
+
+        assertThrows(IllegalArgumentException.class, () -> byDate.after(cursor));
+        assertThrows(IllegalArgumentException.class, () -> byDate.after("not a cursor!"));
+    }
+
+    @Test
+    void testPrefixIsAnchoredLiteralAndKeysetFollowsTheSort() {
+        UserSearch search = UserSearch.builder()
+                .lastNamePrefix("O'Neil (Jr.")
+                .registeredFrom(LocalDate.of(2023, 1, 1))
+                .afterKey("O'Neil (Jr. Smith")
+                .afterId("6387b7bb67dd4a1d78553555")
+                .build();
+
+        Query query = UserRepositoryCustomImpl.searchQuery(search, 20);
+
+        List<?> criteria = (List<?>) query.getQueryObject().get("$and");
+        Pattern prefix = (Pattern) ((Document) criteria.get(0)).get("lastName");
+        assertEquals("^O'Neil \\(Jr\\.", prefix.pattern());
+        assertTrue(prefix.matcher("O'Neil (Jr. Smith").lookingAt());
+        assertFalse(prefix.matcher("O'Neil xJr. Smith").lookingAt());
+        assertTrue(((Document) criteria.get(2)).containsKey("$or"));
+        assertEquals(new Document("lastName", 1).append("id", 1), query.getSortObject());
+        assertEquals(20, query.getLimit());
+    }
+
+    @Test
+    void testUniqueLookupsAreNotSorted() {
+        Query query = UserRepositoryCustomImpl.searchQuery(UserSearch.builder().email("a@b.com").build(), 20);
+
+        assertEquals("id", UserSearch.builder().phone(985632147).build().sortField());
+        assertTrue(query.getSortObject().isEmpty());
+    }
+}
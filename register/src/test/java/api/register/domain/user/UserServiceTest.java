@@ -1,25 +1,61 @@
 package api.register.domain.user;
 
+import api.register.application.UserBulkResult;
 import api.register.application.UserService;
+import api.register.application.cache.UserLocalCache;
+import api.register.application.cache.UserRedisCache;
+import api.register.application.imei.ImeiAllocator;
+import api.register.application.limit.AdaptiveConcurrencyLimiter;
+import api.register.application.metrics.StageMetrics;
+import api.register.application.outbox.UserOutbox;
+import api.register.application.queue.PendingWrite;
+import api.register.application.queue.PendingWriteQueue;
+import api.register.application.queue.WriteQueuedException;
 import api.register.config.CircuitResilienceListener;
 import api.register.domain.User;
+import api.register.domain.UserEvent;
+import api.register.domain.UserEventRepository;
 import api.register.domain.UserRepository;
-import api.register.presentation.mapper.UserMapper;
+import api.register.presentation.mapper.UserMapperImpl;
+import api.register.presentation.model.UserModel;
+import com.mongodb.bulk.BulkWriteError;
 import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 import reactor.test.StepVerifier;
 
+import javax.validation.Validator;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -38,54 +74,618 @@ class UserServiceTest {
     private TimeLimiterRegistry timeLimiterRegistry;
 
     @Mock
-    private UserMapper userMapper;
+    private UserLocalCache userLocalCache;
 
     @Mock
-    private ReactiveHashOperations<String, String, User> hashOperations;
+    private UserRedisCache userRedisCache;
+
+    @Mock
+    private Validator validator;
+
+    @Mock
+    private ImeiAllocator imeiAllocator;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Mock
+    private PendingWriteQueue pendingWriteQueue;
+
+    @Spy
+    private AdaptiveConcurrencyLimiter mongoLimiter =
+            new AdaptiveConcurrencyLimiter("mongo", 100, 1, 100, Duration.ofSeconds(1), new SimpleMeterRegistry());
+
+    private final SimpleMeterRegistry stageRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private StageMetrics stageMetrics = new StageMetrics(stageRegistry);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(userService, "cacheBatchSize", 2);
+        ReflectionTestUtils.setField(userService, "bulkBatchSize", 2);
+    }
+
+    @Test
+    void testFindAllServedFromCompleteSnapshot() {
+        User first = createUser("1", "12345678", "John", "Doe", "123 Main St", 987654321, "john@example.com", "1234567890123456", LocalDate.of(2022, 1, 15),true,0);
+        User second = createUser("2", "87654321", "Jane", "Doe", "123 Main St", 987654322, "jane@example.com", "1234567890123457", LocalDate.of(2022, 1, 15),true,0);
+        when(userRedisCache.isSnapshotComplete()).thenReturn(Mono.just(true));
+        when(userRedisCache.scanAll()).thenReturn(Flux.just(first, second));
+        StepVerifier.create(userService.findAll())
+                .expectNext(first, second)
+                .expectComplete()
+                .verify();
+        verifyZeroInteractions(userRepository);
+    }
+
+    @Test
+    void testFindAllRebuildsIncompleteSnapshotInBatches() {
+        User first = createUser("1", "12345678", "John", "Doe", "123 Main St", 987654321, "john@example.com", "1234567890123456", LocalDate.of(2022, 1, 15),true,0);
+        User second = createUser("2", "87654321", "Jane", "Doe", "123 Main St", 987654322, "jane@example.com", "1234567890123457", LocalDate.of(2022, 1, 15),true,0);
+        User third = createUser("3", "11223344", "Jim", "Doe", "123 Main St", 987654323, "jim@example.com", "1234567890123458", LocalDate.of(2022, 1, 15),true,0);
+        when(userRedisCache.isSnapshotComplete()).thenReturn(Mono.just(false));
+        when(userRedisCache.beginSnapshot()).thenReturn(Mono.just(7L));
+        when(userRepository.findAll()).thenReturn(Flux.just(first, second, third));
+        when(userRedisCache.putAll(anyList())).thenReturn(Mono.empty());
+        when(userRedisCache.completeSnapshot(7L)).thenReturn(Mono.just(true));
+        StepVerifier.create(userService.findAll())
+                .expectNext(first, second, third)
+                .expectComplete()
+                .verify();
+        verify(userRedisCache).putAll(Arrays.asList(first, second));
+        verify(userRedisCache).putAll(Collections.singletonList(third));
+        verify(userRedisCache).completeSnapshot(7L);
+    }
+
+    @Test
+    void testFindAllCoalescesConcurrentRebuilds() {
+        User first = createUser("1", "12345678", "John", "Doe", "123 Main St", 987654321, "john@example.com", "1234567890123456", LocalDate.of(2022, 1, 15),true,0);
+        Sinks.Many<User> mongo = Sinks.many().unicast().onBackpressureBuffer();
+        when(userRedisCache.isSnapshotComplete()).thenReturn(Mono.just(false));
+        when(userRedisCache.beginSnapshot()).thenReturn(Mono.just(1L));
+        when(userRepository.findAll()).thenReturn(mongo.asFlux());
+        when(userRedisCache.putAll(anyList())).thenReturn(Mono.empty());
+        when(userRedisCache.completeSnapshot(1L)).thenReturn(Mono.just(true));
+        when(userRedisCache.scanAll()).thenReturn(Flux.just(first));
+
+        StepVerifier owner = StepVerifier.create(userService.findAll()).expectNext(first).expectComplete().verifyLater();
+        StepVerifier joiner = StepVerifier.create(userService.findAll()).expectNext(first).expectComplete().verifyLater();
+        mongo.tryEmitNext(first);
+        mongo.tryEmitComplete();
+        owner.verify();
+        joiner.verify();
+
+        verify(userRedisCache, times(1)).beginSnapshot();
+        assertEquals(1.0, meterRegistry.counter("user.cache.coalesced", "operation", "findAll").count());
+    }
+
+    @Test
+    void testFindPageUsesKeysetCursor() {
+        User second = createUser("2", "87654321", "Jane", "Doe", "123 Main St", 987654322, "jane@example.com", "1234567890123457", LocalDate.of(2022, 1, 15),true,0);
+        when(userRepository.findByIdGreaterThanOrderByIdAsc("1", PageRequest.of(0, 10))).thenReturn(Flux.just(second));
+        StepVerifier.create(userService.findPage("1", 10))
+                .expectNext(second)
+                .expectComplete()
+                .verify();
+    }
+
+    @Test
+    void testFindByIdServedFromLocalCache() {
+        User user = createUser("1", "12345678", "John", "Doe", "123 Main St", 987654321, "john@example.com", "1234567890123456", LocalDate.of(2022, 1, 15),true,0);
+        when(userLocalCache.get(eq("1"), any())).thenReturn(Mono.just(user));
+        StepVerifier.create(userService.findById("1"))
+                .expectNext(user)
+                .expectComplete()
+                .verify();
+        verifyZeroInteractions(userRedisCache, userRepository);
+    }
+
+    @Test
+    void testFindByIdLoadsFromRedisOnLocalMiss() {
+        User user = createUser("1", "12345678", "John", "Doe", "123 Main St", 987654321, "john@example.com", "1234567890123456", LocalDate.of(2022, 1, 15),true,0);
+        when(userLocalCache.get(eq("1"), any())).thenAnswer(invocation ->
+                invocation.<Function<String, Mono<User>>>getArgument(1).apply("1"));
+        when(userRedisCache.get("1")).thenReturn(Mono.just(user));
+        StepVerifier.create(userService.findById("1"))
+                .expectNext(user)
+                .expectComplete()
+                .verify();
+        verifyZeroInteractions(userRepository);
+    }
 
     @Test
     void testFindByIdentityDni() {
         User user = createUser("1", "12345678", "John", "Doe", "123 Main St", 987654321, "john@example.com", "1234567890123456", LocalDate.of(2022, 1, 15),true,0);
+        when(userRedisCache.findByDni("12345678")).thenReturn(Mono.empty());
         when(userRepository.findByIdentityDni("12345678")).thenReturn(Mono.just(user));
+        when(userRedisCache.put(user)).thenReturn(Mono.empty());
         Mono<User> result = userService.findByIdentityDni("12345678");
         StepVerifier.create(result)
                 .expectNext(user)
                 .expectComplete()
                 .verify();
+        verify(userRedisCache).put(user);
+    }
+
+    @Test
+    void testFindByIdentityDniServedFromIndex() {
+        User user = createUser("1", "12345678", "John", "Doe", "123 Main St", 987654321, "john@example.com", "1234567890123456", LocalDate.of(2022, 1, 15),true,0);
+        when(userRedisCache.findByDni("12345678")).thenReturn(Mono.just(Optional.of(user)));
+        StepVerifier.create(userService.findByIdentityDni("12345678"))
+                .expectNext(user)
+                .expectComplete()
+                .verify();
+        verify(userRepository, never()).findByIdentityDni(anyString());
+    }
+
+    @Test
+    void testFindByIdentityDniCachesMissingDni() {
+        when(userRedisCache.findByDni("00000000")).thenReturn(Mono.empty());
+        when(userRepository.findByIdentityDni("00000000")).thenReturn(Mono.empty());
+        when(userRedisCache.markMissingDni("00000000")).thenReturn(Mono.empty());
+        StepVerifier.create(userService.findByIdentityDni("00000000"))
+                .expectComplete()
+                .verify();
+        verify(userRedisCache).markMissingDni("00000000");
     }
 
     @Test
     void testCreate() {
         User newUser = createUser("3", "12345678", "John", "Doe", "123 Main St", 987654321, "john@example.com", "1234567890123456", LocalDate.of(2022, 1, 15),true,0);
+        when(imeiAllocator.allocate()).thenReturn(Mono.just("353289450000015"));
         when(userRepository.save(newUser)).thenReturn(Mono.just(newUser));
+        when(userRedisCache.put(newUser)).thenReturn(Mono.empty());
         Mono<User> result = userService.create(newUser);
         StepVerifier.create(result)
                 .expectNext(newUser)
                 .expectComplete()
                 .verify();
+        assertEquals("353289450000015", newUser.getImei());
+        verify(userRedisCache).put(newUser);
+    }
+
+    @Test
+    void testCreateIgnoresIdAndVersionSentInTheBody() {
+        // Cuerpo de un POST /v1/user/create que trae id y version
+        User newUser = new UserMapperImpl().modelToEntity(UserModel.builder()
+                .id("64f0c2a1e4b0a1b2c3d4e5f6")
+                .identityDni("12345678")
+                .firstName("John")
+                .lastName("Doe")
+                .email("john@example.com")
+                .version(5L)
+                .build());
+        when(imeiAllocator.allocate()).thenReturn(Mono.just("353289450000015"));
+        when(userRepository.save(newUser)).thenAnswer(invocation -> {
+            User saving = invocation.getArgument(0);
+            assertNull(saving.getId());
+            assertNull(saving.getVersion());
+            saving.setId("1");
+            saving.setVersion(0L);
+            return Mono.just(saving);
+        });
+        when(userRedisCache.put(newUser)).thenReturn(Mono.empty());
+
+        StepVerifier.create(userService.create(newUser))
+                .assertNext(created -> {
+                    assertEquals("1", created.getId());
+                    assertEquals(0L, created.getVersion());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void testCreateDrawsTheNextImeiWhenTheImeiAlreadyExists() {
+        ReflectionTestUtils.setField(userService, "imeiCollisionRetries", 3);
+        User newUser = createUser(null, "12345678", "John", "Doe", "123 Main St", 987654321, "john@example.com", null, null,true,0);
+        when(imeiAllocator.allocate()).thenReturn(Mono.just("353289450000015"), Mono.just("353289450000023"));
+        when(userRepository.save(newUser)).thenReturn(
+                Mono.error(new DuplicateKeyException("E11000 duplicate key error collection: test.users index: imei dup key: { imei: \"353289450000015\" }")),
+                Mono.just(newUser));
+        when(userRedisCache.put(newUser)).thenReturn(Mono.empty());
+
+        StepVerifier.create(userService.create(newUser))
+                .expectNext(newUser)
+                .expectComplete()
+                .verify();
+        assertEquals("353289450000023", newUser.getImei());
+        assertEquals(1.0, meterRegistry.counter("user.imei.collisions").count());
+    }
+
+    @Test
+    void testCreateAllRetriesImeiCollisionsWithNewNumbers() {
+        ReflectionTestUtils.setField(userService, "imeiCollisionRetries", 3);
+        User first = createUser(null, "12345678", "John", "Doe", "123 Main St", 987654321, "john@example.com", null, null,true,0);
+        User second = createUser(null, "87654321", "Jane", "Doe", "123 Main St", 987654322, "jane@example.com", null, null,true,0);
+        when(imeiAllocator.allocate()).thenReturn(Mono.just("353289450000015"), Mono.just("353289450000023"),
+                Mono.just("353289450000031"));
+        when(userRepository.insertUnordered(anyList())).thenAnswer(invocation -> {
+            List<User> batch = invocation.getArgument(0);
+            if (batch.size() == 2) {
+                batch.get(1).setId("2");
+                return Mono.just(Collections.singletonMap(0, new BulkWriteError(11000,
+                        "E11000 duplicate key error collection: test.users index: imei dup key: { imei: \"353289450000015\" }",
+                        new BsonDocument(), 0)));
+            }
+            batch.get(0).setId("1");
+            return Mono.just(Collections.emptyMap());
+        });
+        when(userRedisCache.putAll(anyList())).thenReturn(Mono.empty());
+
+        StepVerifier.create(userService.createAll(Flux.just(first, second)))
+                .expectNextMatches(r -> r.getIndex() == 0 && r.getStatus() == UserBulkResult.Status.CREATED
+                        && "353289450000031".equals(r.getUser().getImei()))
+                .expectNextMatches(r -> r.getIndex() == 1 && r.getStatus() == UserBulkResult.Status.CREATED)
+                .expectComplete()
+                .verify();
+    }
+
+    @Test
+    void testCreateAllReportsDuplicatesPerItem() {
+        User first = createUser(null, "12345678", "John", "Doe", "123 Main St", 987654321, "john@example.com", null, null,true,0);
+        User second = createUser(null, "12345678", "Jane", "Doe", "123 Main St", 987654322, "jane@example.com", null, null,true,0);
+        when(imeiAllocator.allocate()).thenReturn(Mono.just("353289450000015"), Mono.just("353289450000023"));
+        when(userRepository.insertUnordered(anyList())).thenAnswer(invocation -> {
+            List<User> batch = invocation.getArgument(0);
+            batch.get(0).setId("1");
+            return Mono.just(Collections.singletonMap(1, new BulkWriteError(11000, "duplicate key", new BsonDocument(), 1)));
+        });
+        when(userRedisCache.putAll(anyList())).thenReturn(Mono.empty());
+        StepVerifier.create(userService.createAll(Flux.just(first, second)))
+                .expectNextMatches(r -> r.getIndex() == 0 && r.getStatus() == UserBulkResult.Status.CREATED && "353289450000015".equals(r.getUser().getImei()))
+                .expectNextMatches(r -> r.getIndex() == 1 && r.getStatus() == UserBulkResult.Status.DUPLICATE)
+                .expectComplete()
+                .verify();
+        verify(userRedisCache).putAll(Collections.singletonList(first));
+    }
+
+    @Test
+    void testCreateAllWithOutboxCommitsUsersAndEventsTogether() {
+        UserEventRepository userEventRepository = withOutbox();
+        User first = createUser(null, "12345678", "John", "Doe", "123 Main St", 987654321, "john@example.com", null, null,true,0);
+        User second = createUser(null, "12345678", "Jane", "Doe", "123 Main St", 987654322, "jane@example.com", null, null,true,0);
+        when(imeiAllocator.allocate()).thenReturn(Mono.just("353289450000015"), Mono.just("353289450000023"));
+        // El duplicado aborta la transaccion: se repite solo con el primero
+        when(userRepository.insertUnordered(anyList())).thenAnswer(invocation -> {
+            List<User> batch = invocation.getArgument(0);
+            if (batch.size() == 2) {
+                return Mono.just(Collections.singletonMap(1, new BulkWriteError(11000, "duplicate key", new BsonDocument(), 1)));
+            }
+            batch.get(0).setId("1");
+            return Mono.just(Collections.emptyMap());
+        });
+        when(userEventRepository.append(anyList())).thenReturn(Mono.empty());
+        when(userRedisCache.putAll(anyList())).thenReturn(Mono.empty());
+
+        StepVerifier.create(userService.createAll(Flux.just(first, second)))
+                .expectNextMatches(r -> r.getIndex() == 0 && r.getStatus() == UserBulkResult.Status.CREATED)
+                .expectNextMatches(r -> r.getIndex() == 1 && r.getStatus() == UserBulkResult.Status.DUPLICATE)
+                .expectComplete()
+                .verify();
+        verify(userRepository, times(2)).insertUnordered(anyList());
+        verify(userEventRepository).append(argThat(events -> events.size() == 1 && "1".equals(events.get(0).getUserId())
+                && events.get(0).getType() == UserEvent.Type.CREATED));
+        verify(userRedisCache).putAll(Collections.singletonList(first));
+    }
+
+    @Test
+    void testCreateAllWithOutboxFailsTheBatchWhenItsEventsCannotBeWritten() {
+        UserEventRepository userEventRepository = withOutbox();
+        User first = createUser(null, "12345678", "John", "Doe", "123 Main St", 987654321, "john@example.com", null, null,true,0);
+        when(imeiAllocator.allocate()).thenReturn(Mono.just("353289450000015"));
+        when(userRepository.insertUnordered(anyList())).thenReturn(Mono.just(Collections.emptyMap()));
+        when(userEventRepository.append(anyList())).thenReturn(Mono.error(new DataAccessResourceFailureException("down")));
+
+        // La transaccion se deshace: el alta no queda sin su evento, se informa como fallida
+        StepVerifier.create(userService.createAll(Flux.just(first)))
+                .expectNextMatches(r -> r.getIndex() == 0 && r.getStatus() == UserBulkResult.Status.FAILED)
+                .expectComplete()
+                .verify();
+        verifyZeroInteractions(userRedisCache);
+    }
+
+    // Outbox real sobre una transaccion que solo ejecuta la escritura
+    private UserEventRepository withOutbox() {
+        UserEventRepository userEventRepository = mock(UserEventRepository.class);
+        TransactionalOperator transaction = mock(TransactionalOperator.class);
+        when(transaction.transactional(any(Mono.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        ReflectionTestUtils.setField(userService, "userOutbox", new UserOutbox(userEventRepository, transaction, 0));
+        return userEventRepository;
     }
 
     @Test
     void testUpdate() {
-        User existingUser = createUser("1", "12345678", "John", "Doe", "123 Main St", 987654321, "john@example.com", "1234567890123456", LocalDate.of(2022, 1, 15),true,0);
-        User updatedUser = createUser("1", "12345678", "John", "Doe", "123 Main St", 987654321, "john@example.com", "1234567890123456", LocalDate.of(2022, 1, 15),true,0);
+        User previousUser = createUser("1", "12345678", "John", "Doe", "123 Main St", 987654321, "john@example.com", "353289450000015", LocalDate.of(2022, 1, 15),true,0);
+        previousUser.setVersion(2L);
+        User changes = createUser(null, "12345678", "Updated", "Doe", "123 Main St", 987654321, "john@example.com", null, null,true,0);
+        // Documento que devuelve Mongo: conserva lo que el $set no toca (scanAvailable, prefetch de otra escritura)
+        User stored = createUser("1", "12345678", "Updated", "Doe", "123 Main St", 987654321, "john@example.com", "353289450000015", LocalDate.of(2022, 1, 15),false,7);
+        stored.setVersion(3L);
+        when(userRepository.findAndSet("1", null, changes)).thenReturn(Mono.just(stored));
+        when(userRedisCache.get("1")).thenReturn(Mono.just(previousUser));
+        when(userRedisCache.put(stored)).thenReturn(Mono.empty());
+        when(userLocalCache.invalidate("1")).thenReturn(Mono.empty());
+
+        StepVerifier.create(userService.update("1", changes))
+                .expectNext(stored)
+                .expectComplete()
+                .verify();
+        verify(userRepository, never()).findById(anyString());
+        verify(userRepository, never()).save(any(User.class));
+        verify(userRedisCache).put(stored);
+        verify(userRedisCache, never()).removeDni(anyString());
+    }
+
+    @Test
+    void testUpdateMovesDniIndex() {
+        User previousUser = createUser("1", "12345678", "John", "Doe", "123 Main St", 987654321, "john@example.com", "353289450000015", LocalDate.of(2022, 1, 15),true,0);
+        User changes = createUser(null, "87654321", "John", "Doe", "123 Main St", 987654321, "john@example.com", null, null,true,0);
+        User stored = createUser("1", "87654321", "John", "Doe", "123 Main St", 987654321, "john@example.com", "353289450000015", LocalDate.of(2022, 1, 15),true,0);
+        stored.setVersion(1L);
+        when(userRepository.findAndSet("1", null, changes)).thenReturn(Mono.just(stored));
+        when(userRedisCache.get("1")).thenReturn(Mono.just(previousUser));
+        when(userRedisCache.removeDni("12345678")).thenReturn(Mono.empty());
+        when(userRedisCache.put(stored)).thenReturn(Mono.empty());
+        when(userLocalCache.invalidate("1")).thenReturn(Mono.empty());
+        StepVerifier.create(userService.update("1", changes))
+                .expectNextMatches(updated -> "87654321".equals(updated.getIdentityDni()) && updated.getVersion() == 1L)
+                .expectComplete()
+                .verify();
+        verify(userRedisCache).removeDni("12345678");
+    }
+
+    @Test
+    void testUpdateWithStaleVersionFails() {
+        User changes = createUser(null, "12345678", "John", "Doe", "123 Main St", 987654321, "john@example.com", null, null,true,0);
+        changes.setVersion(1L);
+        when(userRepository.findAndSet("1", 1L, changes))
+                .thenReturn(Mono.error(new OptimisticLockingFailureException("stale")));
+        StepVerifier.create(userService.update("1", changes))
+                .expectError(OptimisticLockingFailureException.class)
+                .verify();
+        verifyZeroInteractions(userRedisCache, userLocalCache);
+    }
+
+    @Test
+    void testPatchAppliesOnlySentFields() {
+        User previousUser = createUser("1", "12345678", "John", "Doe", "123 Main St", 987654321, "john@example.com", "353289450000015", LocalDate.of(2022, 1, 15),true,0);
+        previousUser.setVersion(4L);
+        User changes = new User();
+        changes.setEmail("new@example.com");
+        Set<String> fields = Set.of("email");
+        when(userRepository.findAndPatch("1", null, changes, fields)).thenReturn(Mono.just(previousUser));
+        when(userRedisCache.put(any(User.class))).thenReturn(Mono.empty());
+        when(userLocalCache.invalidate("1")).thenReturn(Mono.empty());
+
+        StepVerifier.create(userService.patch("1", changes, fields))
+                .expectNextMatches(patched -> "new@example.com".equals(patched.getEmail())
+                        && "John".equals(patched.getFirstName())
+                        && "353289450000015".equals(patched.getImei())
+                        && patched.getVersion() == 5L)
+                .expectComplete()
+                .verify();
+        verify(userRepository, never()).findById(anyString());
+        verify(userRedisCache, never()).removeDni(anyString());
+    }
+
+    @Test
+    void testPatchWithoutChangesSkipsWrites() {
+        User current = createUser("1", "12345678", "John", "Doe", "123 Main St", 987654321, "john@example.com", "353289450000015", LocalDate.of(2022, 1, 15),true,0);
+        User changes = new User();
+        changes.setFirstName("John");
+        Set<String> fields = Set.of("firstName");
+        when(userRepository.findAndPatch("1", null, changes, fields)).thenReturn(Mono.empty());
+        when(userRepository.findById("1")).thenReturn(Mono.just(current));
+
+        StepVerifier.create(userService.patch("1", changes, fields))
+                .expectNext(current)
+                .expectComplete()
+                .verify();
+        verifyZeroInteractions(userRedisCache, userLocalCache);
+        assertEquals(1.0, meterRegistry.counter("user.patch", "result", "noop").count());
+    }
+
+    @Test
+    void testFindByIdFieldsProjectsFromLocalCache() {
+        User user = createUser("1", "12345678", "John", "Doe", "123 Main St", 987654321, "john@example.com", "353289450000015", LocalDate.of(2022, 1, 15),true,0);
+        when(userLocalCache.get("1")).thenReturn(user);
+        Set<String> fields = new LinkedHashSet<>(Arrays.asList("id", "email"));
+
+        StepVerifier.create(userService.findByIdFields("1", fields))
+                .expectNextMatches(values -> values.size() == 2
+                        && "1".equals(values.get("id"))
+                        && "john@example.com".equals(values.get("email")))
+                .expectComplete()
+                .verify();
+        verifyZeroInteractions(userRepository, userRedisCache);
+    }
+
+    @Test
+    void testFindByIdFieldsQueriesOnlyRequestedFields() {
+        Set<String> fields = Set.of("identityDni");
+        when(userLocalCache.get("1")).thenReturn(null);
+        when(userRepository.findFieldsBy("id", "1", fields)).thenReturn(Mono.just(Map.of("identityDni", "12345678")));
+
+        StepVerifier.create(userService.findByIdFields("1", fields))
+                .expectNext(Map.of("identityDni", "12345678"))
+                .expectComplete()
+                .verify();
+        verify(userRepository, never()).findById(anyString());
+        verifyZeroInteractions(userRedisCache);
+    }
+
+    @Test
+    void testFindAllByIdUsesOneLookupPerTier() {
+        User local = createUser("1", "11111111", "John", "Doe", "123 Main St", 987654321, "john@example.com", "353289450000015", LocalDate.of(2022, 1, 15),true,0);
+        User cached = createUser("2", "22222222", "Jane", "Doe", "123 Main St", 987654321, "jane@example.com", "353289450000023", LocalDate.of(2022, 1, 15),true,0);
+        User stored = createUser("3", "33333333", "Jim", "Doe", "123 Main St", 987654321, "jim@example.com", "353289450000031", LocalDate.of(2022, 1, 15),true,0);
+        when(userLocalCache.get(anyString())).thenAnswer(invocation -> "1".equals(invocation.getArgument(0)) ? local : null);
+        when(userRedisCache.getAll(Arrays.asList("3", "2", "4"))).thenReturn(Mono.just(Arrays.asList(null, cached, null)));
+        when(userRepository.findAllById(Arrays.asList("3", "4"))).thenReturn(Flux.just(stored));
+        when(userRedisCache.putAll(Collections.singletonList(stored))).thenReturn(Mono.empty());
+
+        StepVerifier.create(userService.findAllById(Arrays.asList("3", "1", "2", "4", "1")))
+                .expectNext(stored, local, cached)
+                .expectComplete()
+                .verify();
+        verify(userRedisCache).getAll(anyList());
+        verify(userRepository, never()).findById(anyString());
+    }
+
+    @Test
+    void testFindAllByIdRecordsCacheRatiosAndMongoStage() {
+        User local = createUser("1", "11111111", "John", "Doe", "123 Main St", 987654321, "john@example.com", "353289450000015", LocalDate.of(2022, 1, 15),true,0);
+        User stored = createUser("3", "33333333", "Jim", "Doe", "123 Main St", 987654321, "jim@example.com", "353289450000031", LocalDate.of(2022, 1, 15),true,0);
+        when(userLocalCache.get(anyString())).thenAnswer(invocation -> "1".equals(invocation.getArgument(0)) ? local : null);
+        when(userRedisCache.getAll(Arrays.asList("3", "4"))).thenReturn(Mono.just(Arrays.asList(null, null)));
+        when(userRepository.findAllById(Arrays.asList("3", "4"))).thenReturn(Flux.just(stored));
+        when(userRedisCache.putAll(Collections.singletonList(stored))).thenReturn(Mono.empty());
+        StageMetrics.StoreCalls calls = new StageMetrics.StoreCalls();
+
+        StepVerifier.create(userService.findAllById(Arrays.asList("3", "1", "4")).contextWrite(calls::putIn))
+                .expectNext(stored, local)
+                .expectComplete()
+                .verify();
+        assertEquals(1, cacheRequests("local", "hit"));
+        assertEquals(2, cacheRequests("local", "miss"));
+        assertEquals(2, cacheRequests("redis", "miss"));
+        assertEquals(1, stageRegistry.get(StageMetrics.STAGE_TIMER)
+                .tags("stage", "mongo", "operation", "findAllById", "outcome", "success").timer().count());
+        assertEquals(1, calls.getMongo());
+    }
+
+    private double cacheRequests(String cache, String result) {
+        return stageRegistry.get(StageMetrics.CACHE_REQUESTS)
+                .tags("cache", cache, "operation", "findAllById", "result", result).counter().count();
+    }
 
-        updatedUser.setFirstName("Updated");
-        when(userRepository.findById("1")).thenReturn(Mono.just(existingUser));
-        when(userRepository.save(existingUser)).thenReturn(Mono.just(updatedUser));
-        Mono<User> result = userService.update("1", updatedUser);
+    @Test
+    void testFindAllByIdentityDniSkipsKnownMissing() {
+        User cached = createUser("2", "22222222", "Jane", "Doe", "123 Main St", 987654321, "jane@example.com", "353289450000023", LocalDate.of(2022, 1, 15),true,0);
+        User stored = createUser("3", "33333333", "Jim", "Doe", "123 Main St", 987654321, "jim@example.com", "353289450000031", LocalDate.of(2022, 1, 15),true,0);
+        List<String> dnis = Arrays.asList("33333333", "00000000", "22222222");
+        when(userRedisCache.findAllByDni(dnis)).thenReturn(Mono.just(Arrays.asList(null, Optional.empty(), Optional.of(cached))));
+        when(userRepository.findByIdentityDniIn(Collections.singletonList("33333333"))).thenReturn(Flux.just(stored));
+        when(userRedisCache.putAll(Collections.singletonList(stored))).thenReturn(Mono.empty());
 
+        StepVerifier.create(userService.findAllByIdentityDni(dnis))
+                .expectNext(stored, cached)
+                .expectComplete()
+                .verify();
+    }
+
+    @Test
+    void testFindByIdFallbackServesLastKnownGood() {
+        User stale = createUser("1", "12345678", "John", "Doe", "123 Main St", 987654321, "john@example.com", "353289450000015", LocalDate.of(2022, 1, 15),true,0);
+        when(userLocalCache.getStale("1")).thenReturn(stale);
+
+        Mono<User> result = ReflectionTestUtils.invokeMethod(userService, "fallbackFindById", "1", new TimeoutException());
         StepVerifier.create(result)
-                .expectNext(updatedUser)
+                .expectNext(stale)
                 .expectComplete()
                 .verify();
+        verifyZeroInteractions(userRepository);
+        assertEquals(1.0, meterRegistry.counter("user.fallback", "operation", "findById").count());
+    }
+
+    @Test
+    void testFindByIdFallbackKeepsErrorWithoutStaleCopy() {
+        when(userLocalCache.getStale("1")).thenReturn(null);
+        when(userRedisCache.get("1")).thenReturn(Mono.empty());
+
+        Mono<User> result = ReflectionTestUtils.invokeMethod(userService, "fallbackFindById", "1", new TimeoutException());
+        StepVerifier.create(result)
+                .expectError(TimeoutException.class)
+                .verify();
+    }
+
+    @Test
+    void testCreateFallbackQueuesWriteWhenMongoIsDown() {
+        User user = createUser(null, "12345678", "John", "Doe", "123 Main St", 987654321, "john@example.com", null, null,true,0);
+        // El save que vencio alcanzo a asignar id y version
+        user.setId("1");
+        user.setVersion(0L);
+        when(pendingWriteQueue.offer(any(PendingWrite.class))).thenReturn(true);
+
+        Mono<User> result = ReflectionTestUtils.invokeMethod(userService, "fallbackCreate", user,
+                new TimeoutException("userWrite timed out"));
+        StepVerifier.create(result)
+                .expectError(WriteQueuedException.class)
+                .verify();
+        verify(pendingWriteQueue).offer(argThat(write -> write.getOperation() == PendingWrite.Operation.CREATE
+                && write.getUser() != user
+                && write.getUser().getId() == null
+                && write.getUser().getVersion() == null
+                && "12345678".equals(write.getUser().getIdentityDni())));
+    }
+
+    @Test
+    void testPatchFallbackJournalsOnlyThePatchedFields() {
+        User changes = createUser(null, "12345678", "John", "Doe", "123 Main St", 987654321, "john@example.com", null, null,true,0);
+        changes.setVersion(3L);
+        when(pendingWriteQueue.offer(any(PendingWrite.class))).thenReturn(true);
+
+        Mono<User> result = ReflectionTestUtils.invokeMethod(userService, "fallbackPatch", "1", changes,
+                Set.of("address"), new TimeoutException("userWrite timed out"));
+        StepVerifier.create(result)
+                .expectError(WriteQueuedException.class)
+                .verify();
+        verify(pendingWriteQueue).offer(argThat(write -> write.getOperation() == PendingWrite.Operation.PATCH
+                && "123 Main St".equals(write.getUser().getAddress())
+                && write.getUser().getVersion() == 3L
+                && write.getUser().getIdentityDni() == null
+                && write.getUser().getEmail() == null
+                && write.getUser().getPhone() == null));
+    }
+
+    @Test
+    void testReplayOfTimedOutCreateInsertsTheUser() {
+        // Entrada encolada despues de que save asignara version 0 al usuario
+        User queued = createUser("1", "12345678", "John", "Doe", "123 Main St", 987654321, "john@example.com", null, null,true,0);
+        queued.setVersion(0L);
+        PendingWrite write = PendingWrite.builder()
+                .id("w1")
+                .operation(PendingWrite.Operation.CREATE)
+                .user(queued)
+                .build();
+        when(imeiAllocator.allocate()).thenReturn(Mono.just("353289450000015"));
+        when(userRepository.save(any(User.class))).thenAnswer(invocation -> {
+            User saving = invocation.getArgument(0);
+            if (saving.getId() != null || saving.getVersion() != null) {
+                return Mono.error(new OptimisticLockingFailureException("stale"));
+            }
+            saving.setId("2");
+            saving.setVersion(0L);
+            return Mono.just(saving);
+        });
+        when(userRedisCache.put(any(User.class))).thenReturn(Mono.empty());
+
+        Mono<Boolean> result = ReflectionTestUtils.invokeMethod(userService, "replay", write);
+        StepVerifier.create(result)
+                .expectNext(true)
+                .verifyComplete();
+        verify(userRepository).save(argThat(saved -> "2".equals(saved.getId())
+                && "12345678".equals(saved.getIdentityDni())));
+        assertEquals(1.0, meterRegistry.counter("user.write-queue.replayed", "result", "applied").count());
+    }
+
+    @Test
+    void testWriteFallbackPropagatesBusinessErrors() {
+        Mono<User> result = ReflectionTestUtils.invokeMethod(userService, "fallbackUpdate", "1", new User(),
+                new OptimisticLockingFailureException("stale"));
+        StepVerifier.create(result)
+                .expectError(OptimisticLockingFailureException.class)
+                .verify();
+        verifyZeroInteractions(pendingWriteQueue);
     }
 
     @Test
     void testDelete() {
         User userToDelete = createUser("1", "12345678", "John", "Doe", "123 Main St", 987654321, "john@example.com", "1234567890123456", LocalDate.of(2022, 1, 15),true,0);
-        when(userRepository.findById("1")).thenReturn(Mono.just(userToDelete));
-        when(userRepository.delete(userToDelete)).thenReturn(Mono.empty());
+        when(userRepository.findAndRemoveById("1")).thenReturn(Mono.just(userToDelete));
+        when(userRedisCache.remove(userToDelete)).thenReturn(Mono.empty());
+        when(userLocalCache.invalidate("1")).thenReturn(Mono.empty());
 
         Mono<User> result = userService.delete("1");
 
@@ -93,6 +693,8 @@ class UserServiceTest {
                 .expectNext(userToDelete)
                 .expectComplete()
                 .verify();
+        verify(userRepository, never()).findById(anyString());
+        verify(userRedisCache).remove(userToDelete);
     }
 
     private User createUser(String id,String identityDni,String firstName, String lastName, String address, Integer phone, String email, String imei, LocalDate dateRegister, Boolean scanAvailable, Integer prefetch) {
@@ -0,0 +1,219 @@
+package api.register.load;
+
+import api.register.domain.User;
+import api.register.presentation.model.UserModel;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiter;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Generador de carga de modelo abierto contra UserController.
+ * Las llegadas siguen un proceso de Poisson con la tasa indicada y no esperan a que terminen las anteriores;
+ * la latencia se mide desde el instante de llegada previsto para no ocultar las colas (omision coordinada).
+ */
+public class LoadDriver {
+
+    public enum Operation {
+        FIND_BY_ID("findById"),
+        FIND_BY_IDENTITY_DNI("findByIdentityDni"),
+        FIND_ALL("findAll"),
+        CREATE("create"),
+        UPDATE("update");
+
+        private final String key;
+
+        Operation(String key) {
+            this.key = key;
+        }
+
+        public String key() {
+            return key;
+        }
+
+        static Operation fromKey(String key) {
+            return Arrays.stream(values())
+                    .filter(operation -> operation.key.equals(key))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown load operation " + key));
+        }
+    }
+
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final WebClient webClient;
+    private final List<User> users;
+    private final Map<Operation, Integer> mix;
+    private final int totalWeight;
+    private final Duration requestTimeout;
+    private final Map<Operation, ConcurrentHistogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+    private final Queue<String> resilienceEvents = new ConcurrentLinkedQueue<>();
+
+    public LoadDriver(WebClient webClient, List<User> users, Map<Operation, Integer> mix, Duration requestTimeout,
+                      CircuitBreakerRegistry circuitBreakerRegistry, TimeLimiterRegistry timeLimiterRegistry) {
+        this.webClient = webClient;
+        this.users = users;
+        this.mix = mix;
+        this.totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+        this.requestTimeout = requestTimeout;
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new ConcurrentHistogram(MAX_LATENCY_MICROS, 3));
+            errors.put(operation, new LongAdder());
+        }
+        circuitBreakerRegistry.getAllCircuitBreakers().forEach(this::record);
+        circuitBreakerRegistry.getEventPublisher().onEntryAdded(event -> record(event.getAddedEntry()));
+        timeLimiterRegistry.getAllTimeLimiters().forEach(this::record);
+        timeLimiterRegistry.getEventPublisher().onEntryAdded(event -> record(event.getAddedEntry()));
+    }
+
+    /**
+     * Formato: findById=60,findByIdentityDni=20,findAll=2,create=10,update=8
+     */
+    public static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split("=");
+            weights.put(Operation.fromKey(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+        }
+        return weights;
+    }
+
+    /**
+     * Lanza carga durante el calentamiento (JIT, conexiones, caches) y descarta sus resultados.
+     */
+    public void warmUp(double ratePerSecond, Duration duration) {
+        run(ratePerSecond, duration);
+        latencies.values().forEach(Histogram::reset);
+        errors.values().forEach(LongAdder::reset);
+        resilienceEvents.clear();
+    }
+
+    public LoadReport run(double ratePerSecond, Duration duration) {
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        Arrivals arrivals = new Arrivals(start, end, ratePerSecond);
+        Flux.interval(Duration.ofMillis(1))
+                .takeUntil(tick -> System.nanoTime() >= end)
+                .concatMapIterable(tick -> arrivals.due(System.nanoTime()))
+                .flatMap(intendedStart -> send(pick(), intendedStart), Integer.MAX_VALUE)
+                .then()
+                .block(duration.plus(requestTimeout).plusSeconds(5));
+        return new LoadReport(latencies, errors, Duration.ofNanos(System.nanoTime() - start),
+                new ArrayList<>(resilienceEvents));
+    }
+
+    private Mono<Void> send(Operation operation, long intendedStart) {
+        return Mono.defer(() -> request(operation))
+                .timeout(requestTimeout)
+                .doOnNext(success -> {
+                    if (!success) {
+                        errors.get(operation).increment();
+                    }
+                })
+                .onErrorResume(e -> {
+                    errors.get(operation).increment();
+                    return Mono.empty();
+                })
+                .doFinally(signal -> latencies.get(operation).recordValue(Math.min(MAX_LATENCY_MICROS,
+                        TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStart))))
+                .then();
+    }
+
+    private Mono<Boolean> request(Operation operation) {
+        User user = users.get(ThreadLocalRandom.current().nextInt(users.size()));
+        switch (operation) {
+            case FIND_BY_ID:
+                return exchange(webClient.get().uri("/v1/user/findById/{id}", user.getId()));
+            case FIND_BY_IDENTITY_DNI:
+                return exchange(webClient.get().uri("/v1/user/findByIdentityDni/{dni}", user.getIdentityDni()));
+            case FIND_ALL:
+                return exchange(webClient.get().uri("/v1/user/findAll"));
+            case CREATE:
+                return exchange(webClient.post().uri("/v1/user")
+                        .bodyValue(model(user, String.valueOf(ThreadLocalRandom.current().nextInt(10000000, 99999999)))));
+            case UPDATE:
+                return exchange(webClient.put().uri("/v1/user/{id}", user.getId())
+                        .bodyValue(model(user, user.getIdentityDni())));
+            default:
+                throw new IllegalStateException(operation.name());
+        }
+    }
+
+    private static Mono<Boolean> exchange(WebClient.RequestHeadersSpec<?> spec) {
+        return spec.exchangeToMono(response -> response.releaseBody()
+                .thenReturn(response.statusCode().is2xxSuccessful()));
+    }
+
+    private static UserModel model(User user, String identityDni) {
+        return UserModel.builder()
+                .identityDni(identityDni)
+                .firstName(user.getFirstName())
+                .lastName(user.getLastName())
+                .address(user.getAddress())
+                .phone(user.getPhone())
+                .email(user.getEmail())
+                .build();
+    }
+
+    private Operation pick() {
+        int value = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+            value -= entry.getValue();
+            if (value < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("Empty load mix");
+    }
+
+    private void record(CircuitBreaker circuitBreaker) {
+        circuitBreaker.getEventPublisher().onStateTransition(event -> resilienceEvents.add(String.format(
+                "%s circuit %s %s", event.getCreationTime().toLocalTime(), event.getCircuitBreakerName(),
+                event.getStateTransition())));
+    }
+
+    private void record(TimeLimiter timeLimiter) {
+        timeLimiter.getEventPublisher().onTimeout(event -> resilienceEvents.add(String.format(
+                "%s time limiter %s timeout", event.getCreationTime().toLocalTime(), event.getTimeLimiterName())));
+    }
+
+    // Instantes de llegada previstos; solo lo usa el hilo del intervalo
+    private static final class Arrivals {
+        private final long end;
+        private final double meanIntervalNanos;
+        private long next;
+
+        Arrivals(long start, long end, double ratePerSecond) {
+            this.end = end;
+            this.meanIntervalNanos = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+            this.next = start;
+        }
+
+        List<Long> due(long now) {
+            List<Long> due = new ArrayList<>();
+            while (next <= now && next < end) {
+                due.add(next);
+                next += (long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * meanIntervalNanos);
+            }
+            return due;
+        }
+    }
+}
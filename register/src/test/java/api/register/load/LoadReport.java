@@ -0,0 +1,77 @@
+package api.register.load;
+
+import org.HdrHistogram.Histogram;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Resultado de una ejecucion de LoadDriver: percentiles por operacion (en milisegundos), errores,
+ * throughput y transiciones de circuit breaker / timeouts observados.
+ */
+public class LoadReport {
+
+    private final Map<LoadDriver.Operation, ? extends Histogram> latencies;
+    private final Map<LoadDriver.Operation, LongAdder> errors;
+    private final Duration elapsed;
+    private final List<String> resilienceEvents;
+
+    LoadReport(Map<LoadDriver.Operation, ? extends Histogram> latencies, Map<LoadDriver.Operation, LongAdder> errors,
+               Duration elapsed, List<String> resilienceEvents) {
+        this.latencies = latencies;
+        this.errors = errors;
+        this.elapsed = elapsed;
+        this.resilienceEvents = resilienceEvents;
+    }
+
+    public long count(LoadDriver.Operation operation) {
+        return latencies.get(operation).getTotalCount();
+    }
+
+    public long totalCount() {
+        return latencies.values().stream().mapToLong(Histogram::getTotalCount).sum();
+    }
+
+    public long totalErrors() {
+        return errors.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    public double errorRate() {
+        long total = totalCount();
+        return total == 0 ? 0 : (double) totalErrors() / total;
+    }
+
+    public double percentileMillis(LoadDriver.Operation operation, double percentile) {
+        return latencies.get(operation).getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    public double throughput() {
+        return totalCount() / (elapsed.toMillis() / 1000.0);
+    }
+
+    public List<String> resilienceEvents() {
+        return resilienceEvents;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder(String.format("%n%-20s %8s %7s %9s %9s %9s %9s%n",
+                "operation", "count", "errors", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+        for (LoadDriver.Operation operation : LoadDriver.Operation.values()) {
+            if (count(operation) == 0) {
+                continue;
+            }
+            report.append(String.format("%-20s %8d %7d %9.2f %9.2f %9.2f %9.2f%n", operation.key(),
+                    count(operation), errors.get(operation).sum(),
+                    percentileMillis(operation, 50), percentileMillis(operation, 99),
+                    percentileMillis(operation, 99.9), latencies.get(operation).getMaxValue() / 1000.0));
+        }
+        report.append(String.format("throughput %.1f req/s, errors %.2f%% in %ds%n",
+                throughput(), errorRate() * 100, elapsed.getSeconds()));
+        report.append(resilienceEvents.isEmpty() ? "no circuit breaker transitions or timeouts\n"
+                : String.join("\n", resilienceEvents) + "\n");
+        return report.toString();
+    }
+}
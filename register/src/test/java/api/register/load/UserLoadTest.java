@@ -0,0 +1,116 @@
+package api.register.load;
+
+import api.register.domain.User;
+import api.register.domain.UserRepository;
+import api.register.support.InMemoryStoresConfiguration;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Prueba de carga de UserController con Mongo y Redis simulados en memoria.
+ * Ejecutar con: mvn -Pload test [-Dload.rate=500 -Dload.duration=60s -Dload.warmup=10s -Dload.mix=findById=80,create=20]
+ * Falla si el p99 de alguna operacion supera slowCallDurationThreshold, si la tasa de error supera
+ * failureRateThreshold o si algun circuit breaker se abre.
+ */
+@Slf4j
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {"logging.level.root=info", "user.search.index-check.enabled=false",
+        "user.write-queue.directory=target/register-data"})
+@Import(InMemoryStoresConfiguration.class)
+@EnabledIfSystemProperty(named = "load.enabled", matches = "true")
+class UserLoadTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+    @Autowired
+    private TimeLimiterRegistry timeLimiterRegistry;
+
+    @Value("${load.rate:100}")
+    private double rate;
+    @Value("${load.duration:30s}")
+    private Duration duration;
+    @Value("${load.warmup:10s}")
+    private Duration warmup;
+    @Value("${load.users:1000}")
+    private int users;
+    @Value("${load.mix:findById=60,findByIdentityDni=20,findAll=2,create=10,update=8}")
+    private String mix;
+    @Value("${load.slo.p99:${resilience4j.circuitbreaker.configs.default.slowCallDurationThreshold}}")
+    private long p99SloMillis;
+    @Value("${resilience4j.circuitbreaker.configs.default.failureRateThreshold}")
+    private float failureRateThreshold;
+    @Value("${resilience4j.timelimiter.configs.default.timeoutDuration}")
+    private long timeoutMillis;
+
+    @Test
+    void sustainsConfiguredRateWithinSlo() {
+        List<User> seeded = Flux.range(0, users)
+                .map(UserLoadTest::seedUser)
+                .concatMap(userRepository::save)
+                .collectList()
+                .block();
+
+        // Pool amplio: en modelo abierto las peticiones no esperan a que haya conexion libre en el cliente
+        HttpClient httpClient = HttpClient.create(ConnectionProvider.builder("load")
+                .maxConnections(1000)
+                .pendingAcquireMaxCount(-1)
+                .build());
+        WebClient webClient = WebClient.builder()
+                .baseUrl("http://localhost:" + port)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+
+        LoadDriver driver = new LoadDriver(webClient, seeded, LoadDriver.parseMix(mix),
+                Duration.ofMillis(timeoutMillis * 2), circuitBreakerRegistry, timeLimiterRegistry);
+        driver.warmUp(rate, warmup);
+        LoadReport report = driver.run(rate, duration);
+        log.info("load test at {} req/s for {}: {}", rate, duration, report);
+
+        for (LoadDriver.Operation operation : LoadDriver.Operation.values()) {
+            if (report.count(operation) > 0) {
+                assertTrue(report.percentileMillis(operation, 99) <= p99SloMillis,
+                        operation.key() + " p99 above " + p99SloMillis + " ms");
+            }
+        }
+        assertTrue(report.errorRate() * 100 < failureRateThreshold,
+                "error rate above failureRateThreshold " + failureRateThreshold + "%");
+        assertTrue(report.resilienceEvents().stream().noneMatch(event -> event.contains("to OPEN")),
+                "circuit breaker opened under load");
+    }
+
+    private static User seedUser(int i) {
+        return User.builder()
+                .identityDni(String.valueOf(40000000 + i))
+                .firstName("Luis Andres")
+                .lastName("Acuña Ramos")
+                .address("Urb. La Tombola")
+                .phone(985632147)
+                .email("load" + i + "@gmail.com")
+                .imei("353289457621331")
+                .dateRegister(LocalDate.of(2023, 8, 26))
+                .build();
+    }
+}
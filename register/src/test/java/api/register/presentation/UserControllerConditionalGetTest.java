@@ -0,0 +1,112 @@
+package api.register.presentation;
+
+import api.register.application.UserService;
+import api.register.domain.User;
+import api.register.presentation.mapper.UserMapper;
+import api.register.presentation.model.UserModel;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UserControllerConditionalGetTest {
+
+    @Mock
+    private UserService userService;
+    @Mock
+    private UserMapper userMapper;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private UserController userController;
+
+    @BeforeEach
+    void setUp() {
+        userController = new UserController();
+        ReflectionTestUtils.setField(userController, "userService", userService);
+        ReflectionTestUtils.setField(userController, "userMapper", userMapper);
+        ReflectionTestUtils.setField(userController, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(userController, "userResponseCache",
+                new UserResponseCache(100, new SimpleMeterRegistry()));
+    }
+
+    @Test
+    void testMatchingETagAnswersNotModifiedWithoutSerializingAgain() {
+        User user = User.builder().id("1").identityDni("12345678").version(3L).build();
+        when(userService.findById("1")).thenReturn(Mono.just(user));
+        when(userMapper.entityToModel(user)).thenReturn(UserModel.builder().identityDni("12345678").version(3L).build());
+        String etag = userController.findById("1", get()).block().getHeaders().getETag();
+
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/v1/user/findById/1")
+                .header(HttpHeaders.IF_NONE_MATCH, etag));
+        StepVerifier.create(userController.findById("1", exchange))
+                .assertNext(response -> {
+                    assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+                    assertEquals(etag, response.getHeaders().getETag());
+                })
+                .verifyComplete();
+        verify(userMapper, times(1)).entityToModel(any());
+    }
+
+    @Test
+    void testSerializedJsonIsReusedUntilTheVersionChanges() throws Exception {
+        User user = User.builder().id("1").identityDni("12345678").version(3L).build();
+        User updated = User.builder().id("1").identityDni("87654321").version(4L).build();
+        when(userService.findById("1")).thenReturn(Mono.just(user), Mono.just(user), Mono.just(updated));
+        when(userMapper.entityToModel(user)).thenReturn(UserModel.builder().identityDni("12345678").version(3L).build());
+        when(userMapper.entityToModel(updated)).thenReturn(UserModel.builder().identityDni("87654321").version(4L).build());
+
+        var first = userController.findById("1", get()).block();
+        var second = userController.findById("1", get()).block();
+        assertArrayEquals(first.getBody(), second.getBody());
+        verify(userMapper, times(1)).entityToModel(user);
+
+        var response = userController.findById("1", get()).block();
+        assertNotEquals(first.getHeaders().getETag(), response.getHeaders().getETag());
+        assertEquals("87654321", objectMapper.readValue(response.getBody(), UserModel.class).getIdentityDni());
+    }
+
+    @Test
+    void testContentChangedOutsideTheServiceAtTheSameVersionIsServed() throws Exception {
+        // Escritura hecha por otro cliente y aplicada al cache por el change stream: misma version, otro contenido
+        User user = User.builder().id("1").identityDni("12345678").address("Calle 1").version(3L).build();
+        User changed = User.builder().id("1").identityDni("12345678").address("Calle 2").version(3L).build();
+        when(userService.findById("1")).thenReturn(Mono.just(user), Mono.just(changed), Mono.just(changed));
+        // User.equals solo compara el DNI: se responde segun la direccion del usuario recibido
+        when(userMapper.entityToModel(any())).thenAnswer(invocation -> UserModel.builder()
+                .address(invocation.<User>getArgument(0).getAddress()).version(3L).build());
+        String etag = userController.findById("1", get()).block().getHeaders().getETag();
+
+        var response = userController.findById("1", MockServerWebExchange.from(
+                MockServerHttpRequest.get("/v1/user/findById/1").header(HttpHeaders.IF_NONE_MATCH, etag))).block();
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotEquals(etag, response.getHeaders().getETag());
+        assertEquals("Calle 2", objectMapper.readValue(response.getBody(), UserModel.class).getAddress());
+
+        var cached = userController.findById("1", get()).block();
+        assertEquals("Calle 2", objectMapper.readValue(cached.getBody(), UserModel.class).getAddress());
+        verify(userMapper, times(2)).entityToModel(any());
+    }
+
+    private static MockServerWebExchange get() {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/v1/user/findById/1"));
+    }
+}
@@ -0,0 +1,19 @@
+package api.register.support;
+
+import api.register.domain.ImeiSequenceRepository;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Contador de IMEI en memoria con la misma semantica que el findAndModify de Mongo.
+ */
+public class InMemoryImeiSequenceRepository extends ImeiSequenceRepository {
+
+    private final AtomicLong next = new AtomicLong();
+
+    @Override
+    public Mono<Long> reserve(long blockSize) {
+        return Mono.fromSupplier(() -> next.addAndGet(blockSize) - blockSize);
+    }
+}
@@ -0,0 +1,326 @@
+package api.register.support;
+
+import api.register.domain.User;
+import org.springframework.data.redis.connection.ReactiveKeyCommands;
+import org.springframework.data.redis.connection.ReactiveRedisConnection;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.data.redis.core.ReactiveRedisCallback;
+import org.springframework.data.redis.core.ReactiveSetOperations;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ReactiveValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.Topic;
+import org.springframework.data.redis.serializer.RedisElementReader;
+import org.springframework.data.redis.serializer.RedisElementWriter;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Redis en memoria para benchmarks y pruebas de carga: hashes y claves de usuario con los valores ya serializados,
+ * claves de texto, conjuntos y los scripts Lua de UserRedisCache. No aplica TTL ni pub/sub.
+ */
+public final class InMemoryRedis {
+
+    private final Map<String, Map<String, byte[]>> hashes = new ConcurrentHashMap<>();
+    private final Map<String, String> values = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> sets = new ConcurrentHashMap<>();
+    private final Duration latency;
+
+    public InMemoryRedis(Duration latency) {
+        this.latency = latency;
+    }
+
+    public void clear() {
+        hashes.clear();
+        values.clear();
+        objects.clear();
+        sets.clear();
+    }
+
+    public void set(String key, String value) {
+        values.put(key, value);
+    }
+
+    public void remove(String key) {
+        values.remove(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    public ReactiveHashOperations<String, String, User> hashOperations(RedisSerializer<User> serializer) {
+        return proxy(ReactiveHashOperations.class, (name, args) -> {
+            Map<String, byte[]> hash = hashes.computeIfAbsent((String) args[0], key -> new ConcurrentHashMap<>());
+            switch (name) {
+                case "get":
+                    return delay(Mono.justOrEmpty(hash.get((String) args[1])).map(serializer::deserialize));
+                case "multiGet":
+                    return delay(Mono.fromSupplier(() -> ((Collection<String>) args[1]).stream()
+                            .map(hash::get)
+                            .map(bytes -> bytes == null ? null : serializer.deserialize(bytes))
+                            .collect(Collectors.toList())));
+                case "put":
+                    hash.put((String) args[1], serializer.serialize((User) args[2]));
+                    return delay(Mono.just(true));
+                case "putAll":
+                    ((Map<String, User>) args[1]).forEach((id, user) -> hash.put(id, serializer.serialize(user)));
+                    return delay(Mono.just(true));
+                case "remove":
+                    long removed = 0;
+                    for (Object id : (Object[]) args[1]) {
+                        removed += hash.remove((String) id) != null ? 1 : 0;
+                    }
+                    return delay(Mono.just(removed));
+                case "scan":
+                case "entries":
+                    return delay(Mono.just(hash)).flatMapMany(entries -> Flux.fromIterable(entries.entrySet()))
+                            .map(entry -> new AbstractMap.SimpleImmutableEntry<>(entry.getKey(),
+                                    serializer.deserialize(entry.getValue())));
+                case "size":
+                    return delay(Mono.just((long) hash.size()));
+                default:
+                    throw new UnsupportedOperationException(name);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    public ReactiveValueOperations<String, User> userValueOperations(RedisSerializer<User> serializer) {
+        return proxy(ReactiveValueOperations.class, (name, args) -> {
+            switch (name) {
+                case "get":
+                    return delay(Mono.justOrEmpty(objects.get((String) args[0])).map(serializer::deserialize));
+                case "multiGet":
+                    return delay(Mono.fromSupplier(() -> ((Collection<String>) args[0]).stream()
+                            .map(objects::get)
+                            .map(bytes -> bytes == null ? null : serializer.deserialize(bytes))
+                            .collect(Collectors.toList())));
+                case "set":
+                    objects.put((String) args[0], serializer.serialize((User) args[1]));
+                    return delay(Mono.just(true));
+                case "setIfAbsent":
+                    return delay(Mono.just(objects.putIfAbsent((String) args[0], serializer.serialize((User) args[1])) == null));
+                default:
+                    throw new UnsupportedOperationException(name);
+            }
+        });
+    }
+
+    public ReactiveStringRedisTemplate template() {
+        // delete y el resto de comandos de claves del template piden una conexion a la factory
+        ReactiveRedisConnection connection = connection();
+        ReactiveRedisConnectionFactory factory = proxy(ReactiveRedisConnectionFactory.class, (name, args) -> {
+            if ("getReactiveConnection".equals(name)) {
+                return connection;
+            }
+            throw new UnsupportedOperationException(name);
+        });
+        return new Template(factory);
+    }
+
+    @SuppressWarnings("unchecked")
+    private ReactiveValueOperations<String, String> valueOperations() {
+        return proxy(ReactiveValueOperations.class, (name, args) -> {
+            switch (name) {
+                case "get":
+                    return delay(Mono.justOrEmpty(values.get((String) args[0])));
+                case "set":
+                    values.put((String) args[0], (String) args[1]);
+                    return delay(Mono.just(true));
+                case "multiGet":
+                    return delay(Mono.fromSupplier(() -> ((Collection<String>) args[0]).stream()
+                            .map(values::get)
+                            .collect(Collectors.toList())));
+                case "multiSet":
+                    values.putAll((Map<String, String>) args[0]);
+                    return delay(Mono.just(true));
+                case "increment":
+                    return delay(Mono.fromSupplier(() -> Long.parseLong(values.merge((String) args[0], "1",
+                            (current, one) -> String.valueOf(Long.parseLong(current) + 1)))));
+                case "delete":
+                    return delay(Mono.just(values.remove((String) args[0]) != null));
+                default:
+                    throw new UnsupportedOperationException(name);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private ReactiveSetOperations<String, String> setOperations() {
+        return proxy(ReactiveSetOperations.class, (name, args) -> {
+            Set<String> set = sets.computeIfAbsent((String) args[0], key -> ConcurrentHashMap.newKeySet());
+            switch (name) {
+                case "add":
+                    long added = 0;
+                    for (Object member : (Object[]) args[1]) {
+                        added += set.add((String) member) ? 1 : 0;
+                    }
+                    return delay(Mono.just(added));
+                case "remove":
+                    long removed = 0;
+                    for (Object member : (Object[]) args[1]) {
+                        removed += set.remove(member) ? 1 : 0;
+                    }
+                    return delay(Mono.just(removed));
+                case "scan":
+                case "members":
+                    return delay(Mono.just(set)).flatMapMany(Flux::fromIterable);
+                default:
+                    throw new UnsupportedOperationException(name);
+            }
+        });
+    }
+
+    private boolean delete(String key) {
+        return values.remove(key) != null | hashes.remove(key) != null | objects.remove(key) != null
+                | sets.remove(key) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ReactiveRedisConnection connection() {
+        ReactiveKeyCommands keyCommands = proxy(ReactiveKeyCommands.class, (name, args) -> {
+            if ("del".equals(name) && args[0] instanceof ByteBuffer) {
+                return delay(Mono.just(delete(key((ByteBuffer) args[0])) ? 1L : 0L));
+            }
+            if ("mDel".equals(name)) {
+                return delay(Mono.fromSupplier(() -> ((List<ByteBuffer>) args[0]).stream()
+                        .filter(key -> delete(key(key)))
+                        .count()));
+            }
+            throw new UnsupportedOperationException(name);
+        });
+        return proxy(ReactiveRedisConnection.class, (name, args) -> {
+            switch (name) {
+                case "keyCommands":
+                    return keyCommands;
+                case "closeLater":
+                    return Mono.empty();
+                case "close":
+                    return null;
+                default:
+                    break;
+            }
+            throw new UnsupportedOperationException(name);
+        });
+    }
+
+    private static String key(ByteBuffer key) {
+        return StandardCharsets.UTF_8.decode(key.duplicate()).toString();
+    }
+
+    // Emula los scripts de UserRedisCache segun los comandos que contienen
+    @SuppressWarnings("unchecked")
+    private <T> Flux<T> evaluate(RedisScript<T> script, List<String> keys, List<?> args) {
+        String source = script.getScriptAsString();
+        if (source.contains("HGET")) {
+            String id = values.get(keys.get(0));
+            if (id == null) {
+                return delay(Mono.<T>empty()).flux();
+            }
+            byte[] result = Objects.equals(id, args.get(0))
+                    ? id.getBytes(StandardCharsets.UTF_8)
+                    : hashes.getOrDefault(keys.get(1), Map.of()).get(id);
+            return delay(Mono.justOrEmpty((T) result)).flux();
+        }
+        if (source.contains("SET")) {
+            boolean current = Objects.equals(values.get(keys.get(0)), args.get(0));
+            if (current) {
+                values.put(keys.get(1), (String) args.get(0));
+            }
+            return delay(Mono.just((T) Long.valueOf(current ? 1 : 0))).flux();
+        }
+        throw new UnsupportedOperationException(source);
+    }
+
+    private <T> Mono<T> delay(Mono<T> value) {
+        return latency.isZero() ? value : value.delaySubscription(latency);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<?> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "toString":
+                    return "InMemoryRedis " + type.getSimpleName();
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    return handler.apply(method.getName(), args == null ? new Object[0] : args);
+            }
+        });
+    }
+
+    private interface Handler {
+        Object apply(String name, Object[] args);
+    }
+
+    private final class Template extends ReactiveStringRedisTemplate {
+
+        private final ReactiveValueOperations<String, String> valueOperations = valueOperations();
+        private final ReactiveSetOperations<String, String> setOperations = setOperations();
+        private final ReactiveRedisConnection connection = connection();
+
+        Template(ReactiveRedisConnectionFactory factory) {
+            super(factory);
+        }
+
+        @Override
+        public ReactiveValueOperations<String, String> opsForValue() {
+            return valueOperations;
+        }
+
+        @Override
+        public ReactiveSetOperations<String, String> opsForSet() {
+            return setOperations;
+        }
+
+        @Override
+        public Mono<Boolean> hasKey(String key) {
+            return delay(Mono.fromSupplier(() -> values.containsKey(key) || hashes.containsKey(key)
+                    || objects.containsKey(key) || sets.containsKey(key)));
+        }
+
+        @Override
+        public <T> Flux<T> execute(ReactiveRedisCallback<T> action) {
+            return Flux.from(action.doInRedis(connection));
+        }
+
+        @Override
+        public <T> Flux<T> execute(RedisScript<T> script, List<String> keys, List<?> args) {
+            return evaluate(script, keys, args);
+        }
+
+        @Override
+        public <T> Flux<T> execute(RedisScript<T> script, List<String> keys, List<?> args,
+                                   RedisElementWriter<?> argsWriter, RedisElementReader<T> resultReader) {
+            return evaluate(script, keys, args);
+        }
+
+        @Override
+        public Mono<Long> convertAndSend(String destination, String message) {
+            return Mono.just(0L);
+        }
+
+        @Override
+        public Flux<? extends ReactiveSubscription.Message<String, String>> listenTo(Topic... topics) {
+            return Flux.never();
+        }
+    }
+}
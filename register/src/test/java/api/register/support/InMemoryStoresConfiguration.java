@@ -0,0 +1,60 @@
+package api.register.support;
+
+import api.register.domain.ImeiSequenceRepository;
+import api.register.domain.User;
+import api.register.domain.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ReactiveValueOperations;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.time.Duration;
+
+/**
+ * Sustituye Mongo y Redis por los dobles en memoria para levantar la aplicacion completa sin infraestructura.
+ * Las latencias simuladas se ajustan con load.mongo-latency y load.redis-latency.
+ */
+@TestConfiguration
+public class InMemoryStoresConfiguration {
+
+    @Bean
+    public InMemoryRedis inMemoryRedis(@Value("${load.redis-latency:1ms}") Duration redisLatency) {
+        return new InMemoryRedis(redisLatency);
+    }
+
+    @Bean
+    @Primary
+    public UserRepository inMemoryUserRepository(@Value("${load.mongo-latency:5ms}") Duration mongoLatency) {
+        return InMemoryUserRepository.create(mongoLatency);
+    }
+
+    @Bean
+    @Primary
+    public ImeiSequenceRepository inMemoryImeiSequenceRepository() {
+        return new InMemoryImeiSequenceRepository();
+    }
+
+    @Bean
+    @Primary
+    public ReactiveStringRedisTemplate inMemoryRedisTemplate(InMemoryRedis inMemoryRedis) {
+        return inMemoryRedis.template();
+    }
+
+    @Bean
+    @Primary
+    public ReactiveHashOperations<String, String, User> inMemoryHashOperations(InMemoryRedis inMemoryRedis,
+                                                                             RedisSerializer<User> userRedisSerializer) {
+        return inMemoryRedis.hashOperations(userRedisSerializer);
+    }
+
+    @Bean
+    @Primary
+    public ReactiveValueOperations<String, User> inMemoryUserValueOperations(InMemoryRedis inMemoryRedis,
+                                                                           RedisSerializer<User> userRedisSerializer) {
+        return inMemoryRedis.userValueOperations(userRedisSerializer);
+    }
+}
@@ -0,0 +1,158 @@
+package api.register.support;
+
+import api.register.domain.User;
+import api.register.domain.UserRepository;
+import org.bson.types.ObjectId;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Pageable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * UserRepository en memoria para benchmarks y pruebas de carga; simula la latencia de Mongo con un retardo fijo.
+ * Solo implementa las operaciones que usa UserService.
+ */
+public final class InMemoryUserRepository {
+
+    private InMemoryUserRepository() {
+    }
+
+    public static UserRepository create(Duration latency) {
+        return create(new ConcurrentSkipListMap<>(), latency);
+    }
+
+    public static UserRepository create(Map<String, User> store, Duration latency) {
+        return (UserRepository) Proxy.newProxyInstance(UserRepository.class.getClassLoader(),
+                new Class<?>[]{UserRepository.class},
+                (proxy, method, args) -> invoke(store, latency, method, args));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object invoke(Map<String, User> store, Duration latency, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "findById":
+                return delay(Mono.justOrEmpty(store.get((String) args[0])), latency);
+            case "findByIdentityDni":
+                return delay(Mono.justOrEmpty(store.values().stream()
+                        .filter(user -> Objects.equals(user.getIdentityDni(), args[0]))
+                        .findFirst()), latency);
+            case "findAll":
+            case "streamAll":
+                return delay(Mono.just(store), latency).flatMapMany(users -> Flux.fromIterable(users.values()));
+            case "findAllById":
+                return delay(Flux.fromIterable((Iterable<String>) args[0]).mapNotNull(store::get).collectList(), latency)
+                        .flatMapMany(Flux::fromIterable);
+            case "save":
+            case "insert":
+                User user = (User) args[0];
+                if (user.getId() == null) {
+                    user.setId(new ObjectId().toHexString());
+                }
+                store.put(user.getId(), user);
+                return delay(Mono.just(user), latency);
+            case "insertUnordered":
+                ((List<User>) args[0]).forEach(u -> {
+                    u.setId(new ObjectId().toHexString());
+                    u.setVersion(0L);
+                    store.put(u.getId(), u);
+                });
+                return delay(Mono.just(Collections.emptyMap()), latency);
+            case "delete":
+                store.remove(((User) args[0]).getId());
+                return delay(Mono.empty(), latency);
+            case "findAndSet":
+                return delay(Mono.justOrEmpty(findAndSet(store, (String) args[0], (Long) args[1], (User) args[2])), latency);
+            case "findAndPatch":
+                return delay(Mono.justOrEmpty(findAndPatch(store, (String) args[0], (Long) args[1], (User) args[2],
+                        (Set<String>) args[3])), latency);
+            case "findAndRemoveById":
+                return delay(Mono.justOrEmpty(store.remove((String) args[0])), latency);
+            case "deleteById":
+                store.remove((String) args[0]);
+                return delay(Mono.empty(), latency);
+            case "count":
+                return delay(Mono.just((long) store.size()), latency);
+            case "findAllByOrderByIdAsc":
+            case "findByIdGreaterThanOrderByIdAsc":
+                String after = args.length == 2 ? (String) args[0] : null;
+                int size = ((Pageable) args[args.length - 1]).getPageSize();
+                return delay(Mono.just(store), latency).flatMapMany(users -> Flux.fromIterable(users.values())
+                        .filter(u -> after == null || u.getId().compareTo(after) > 0)
+                        .sort(Comparator.comparing(User::getId))
+                        .take(size));
+            case "toString":
+                return "InMemoryUserRepository";
+            case "hashCode":
+                return System.identityHashCode(store);
+            case "equals":
+                return args[0] == store;
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+    private static User findAndSet(Map<String, User> store, String id, Long expectedVersion, User changes) {
+        User previous = store.get(id);
+        if (previous == null) {
+            return null;
+        }
+        if (expectedVersion != null && !expectedVersion.equals(previous.getVersion())) {
+            throw new OptimisticLockingFailureException("User " + id + " is no longer at version " + expectedVersion);
+        }
+        User updated = User.builder()
+                .id(id)
+                .identityDni(changes.getIdentityDni())
+                .firstName(changes.getFirstName())
+                .lastName(changes.getLastName())
+                .address(changes.getAddress())
+                .phone(changes.getPhone())
+                .email(changes.getEmail())
+                .imei(previous.getImei())
+                .dateRegister(previous.getDateRegister())
+                .version(previous.getVersion() == null ? 1L : previous.getVersion() + 1)
+                .build();
+        store.put(id, updated);
+        return updated;
+    }
+
+    private static User findAndPatch(Map<String, User> store, String id, Long expectedVersion, User changes,
+                                     Set<String> fields) {
+        User previous = store.get(id);
+        if (previous == null || (expectedVersion != null && !expectedVersion.equals(previous.getVersion()))) {
+            return null;
+        }
+        BeanWrapper source = PropertyAccessorFactory.forBeanPropertyAccess(changes);
+        User patched = new User();
+        BeanUtils.copyProperties(previous, patched);
+        BeanWrapper target = PropertyAccessorFactory.forBeanPropertyAccess(patched);
+        boolean changed = false;
+        for (String field : fields) {
+            changed |= !Objects.equals(target.getPropertyValue(field), source.getPropertyValue(field));
+            target.setPropertyValue(field, source.getPropertyValue(field));
+        }
+        if (!changed) {
+            return null;
+        }
+        patched.setVersion(previous.getVersion() == null ? 1L : previous.getVersion() + 1);
+        store.put(id, patched);
+        return previous;
+    }
+
+    private static <T> Mono<T> delay(Mono<T> value, Duration latency) {
+        return latency.isZero() ? value : value.delaySubscription(latency);
+    }
+}